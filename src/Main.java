@@ -1,18 +1,54 @@
 import io.bus.DeviceManager;
+import io.bus.CardAuth;
 import io.bus.DeviceLink;
+import io.bus.StoreAndForward;
+import io.clock.Clock;
+import io.journal.Journal;
+import io.journal.ReceiptIndex;
+import io.journal.TxnRecord;
+import io.log.Log;
+import report.DayBook;
+import devices.FlowArchive;
+import devices.FlowTelemetry;
+import devices.Preset;
+import devices.StopPredictor;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.time.Duration;
 import java.util.Objects;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 public class Main {
-
+    private static final Log LOG = Log.named("main");
+    private static final Log SCREEN_LOG = Log.named("screen");
+    private static final Log TIMEOUT_LOG = Log.named("timeout");
+    // FUELING_NUM changes every 200 ms tick while dispensing
+    private static final Log.Limit SCREEN_LIMIT = Log.limit(5);
+    // -Dclock=virtual replays the session loop on virtual time (see io.clock.Clock)
+    private static final Clock CLOCK = Clock.fromProperties();
+    // Preset sales: learned stop latency, shared across sessions (see devices.StopPredictor)
+    private static final StopPredictor STOP_PREDICTOR = new StopPredictor(0.25);
+    private static final long PRESET_FAST_POLL_MS = 10;
+    // Every HOSE|STATUS sample of the fueling loop, off-heap with 1 s / 1 min rollups (see devices.FlowTelemetry)
+    private static final FlowTelemetry TELEMETRY = new FlowTelemetry(16);
+    private static final String PUMP_ID = "pump-01";
+    // Background timers (index sync, day roll, archive drain) that threw
+    private static final Log.Limit TIMER_LIMIT = Log.limit(1);
 
     // ---- Safe helpers ------------------------------------------------------
+    // A periodic CLOCK task that throws is cancelled for good (ScheduledExecutorService rules), so
+    // log it and let the next period try again, as TickEngine does for its after-tick tasks
+    private static Runnable guarded(String name, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.warn(TIMER_LIMIT, "%s failed: %s", name, e.toString());
+            }
+        };
+    }
+
     private static double parseField(String payload, String key) {
         try {
             int i = payload.indexOf(key + ":");
@@ -29,10 +65,31 @@ public class Main {
     private static void abortWithError(ScreenController sc, DeviceLink hose, String code) throws Exception {
         try { hose.request("HOSE|STOP|MAIN|None", Duration.ofSeconds(1)); } catch (Exception ignore) {}
         sc.show("ERROR:" + code);
-        Thread.sleep(2000); // dwell on ERROR
+        CLOCK.sleep(2000); // dwell on ERROR
         sc.showWelcome();
     }
 
+    // Pump motor follows the hose session; it only drives the pump display, so a lost reply is not fatal
+    private static void pumpCommand(DeviceLink pump, String line) {
+        try {
+            pump.request(line, Duration.ofMillis(500));
+        } catch (Exception e) {
+            LOG.warn("pump: %s failed: %s", line, e.getMessage());
+        }
+    }
+
+    // Polls until the dispenser reports no flow (valve closed), returns the final metered gallons
+    private static double settleDispensed(DeviceLink hose, double lastGal) throws Exception {
+        double gal = lastGal;
+        for (int i = 0; i < 20; i++) {
+            String p = extractQuoted(hose.request("HOSE|STATUS|MAIN|None", Duration.ofSeconds(1)));
+            gal = Math.max(gal, parseField(p, "DISP"));
+            if (parseField(p, "RATE") <= 0.0) break;
+            CLOCK.sleep(50);
+        }
+        return gal;
+    }
+
     private static String extractQuoted(String s) {
         if (s == null) return "";
         int q1 = s.indexOf('"');
@@ -60,7 +117,7 @@ public class Main {
         synchronized void show(String payload) throws IOException {
             if (Objects.equals(last, payload)) return;
             screen.request("SCREEN|DISPLAY|MAIN|\"" + payload + "\"", Duration.ofSeconds(1));
-            System.out.println("[screen] state -> " + payload);
+            SCREEN_LOG.info(SCREEN_LIMIT, "state -> %s", payload);
             last = payload;
         }
 
@@ -70,13 +127,14 @@ public class Main {
     // -----------------------------------------------------------------------
 
     private static final class AuthTimeouts {
-        private final ScheduledExecutorService ses = Executors.newSingleThreadScheduledExecutor();
+        private final Clock clock;
         private final ScreenController sc;
         private final Runnable resetSession;
-        private ScheduledFuture<?> pending;
+        private Clock.Timer pending;
         private long seq = 0;
 
-        AuthTimeouts(ScreenController sc, Runnable resetSession) {
+        AuthTimeouts(Clock clock, ScreenController sc, Runnable resetSession) {
+            this.clock = clock;
             this.sc = sc;
             this.resetSession = resetSession;
         }
@@ -84,11 +142,11 @@ public class Main {
         synchronized void start(String label) {
             cancel("rearm:" + label);
             long id = ++seq;
-            long firesAt = System.currentTimeMillis() + (long) 30000;
-            System.out.printf("-> start #%d %s delay=%dms firesAt=%tT%n", id, label, (long) 30000, firesAt);
-            pending = ses.schedule(() -> {
+            long firesAt = clock.currentTimeMillis() + (long) 30000;
+            TIMEOUT_LOG.info("-> start #%d %s firesAt=%tT", id, label, firesAt);
+            pending = clock.schedule(() -> {
                 try {
-                    System.out.printf("-> fire  #%d %s%n", id, label);
+                    TIMEOUT_LOG.info("-> fire  #%d %s", id, label);
                     resetSession.run();
                     sc.showWelcome();
                 } catch (IOException e) {
@@ -96,13 +154,13 @@ public class Main {
                 } finally {
                     clear();
                 }
-            }, 30000, TimeUnit.MILLISECONDS);
+            }, 30000);
         }
 
         synchronized void cancel(String reason) {
             if (pending != null) {
-                System.out.println("-> cancel " + reason);
-                pending.cancel(false);
+                TIMEOUT_LOG.info("-> cancel %s", reason);
+                pending.cancel();
                 pending = null;
             }
         }
@@ -110,12 +168,125 @@ public class Main {
         private synchronized void clear() { pending = null; }
     }
 
+    // -----------------------------------------------------------------------
+
+    // One authorised session in the journal: OPEN, a STEP per transition and per second of fueling,
+    // then SALE for whatever was delivered, or VOID if nothing was. What a crash leaves open is settled on the next start.
+    // An offline approval (saf != null) also reports its close to store-and-forward.
+    private static final class JournaledSession {
+        private static final long CHECKPOINT_MS = 1_000;
+        private final Journal journal;
+        private final StoreAndForward saf;
+        private TxnRecord last;
+        private long lastCheckpointMs;
+        private boolean closed = false;
+
+        JournaledSession(Journal journal, long sessionId, long cardToken, StoreAndForward saf) {
+            this.journal = journal;
+            this.saf = saf;
+            this.last = TxnRecord.open(sessionId, PUMP_ID, cardToken, sessionId);
+            if (saf != null) last.flags = TxnRecord.OFFLINE;
+            journal.append(last);
+        }
+
+        void step(byte phase, String grade, double pricePerGal, double gallons) {
+            lastCheckpointMs = CLOCK.currentTimeMillis();
+            last = last.step(phase, grade, pricePerGal, gallons, lastCheckpointMs);
+            journal.append(last);
+        }
+
+        // While fueling: the metered gallons so far, at most once a second
+        void checkpoint(double gallons) {
+            if (CLOCK.currentTimeMillis() - lastCheckpointMs < CHECKPOINT_MS) return;
+            step(TxnRecord.FUELING, last.grade, last.pricePerGal(), gallons);
+        }
+
+        long sale(double gallons, double dollars) {
+            closed = true;
+            TxnRecord done = last.close(gallons, dollars, CLOCK.currentTimeMillis(), (byte) 0);
+            long seq = journal.append(done);
+            if (saf != null) saf.complete(done.sessionId, done.cents);
+            return seq;
+        }
+
+        void leaveOpen() { closed = true; }
+
+        boolean isOpen() { return !closed; }
+
+        void voidIfOpen() {
+            if (closed) return;
+            closed = true;
+            journal.append(last.voided(CLOCK.currentTimeMillis()));
+            if (saf != null) saf.complete(last.sessionId, 0);
+        }
+    }
+
+    // Fueling that ended without the FULL/preset sale (disarmed, bad reading, nozzle never back) still
+    // delivered what DISP says: charge it as crash recovery would. Nothing delivered -> voidIfOpen().
+    private static void chargeDelivered(JournaledSession session, DeviceLink hose, double lastGal, double pricePerGal, Preset preset) {
+        double gallons = lastGal;
+        try {
+            gallons = settleDispensed(hose, lastGal);
+        } catch (Exception e) {
+            LOG.warn("no final meter reading, charging the last one (%.3f gal): %s", lastGal, e.getMessage());
+        }
+        if (gallons <= 0.0) return;
+        double dollars = preset != null ? preset.chargeDollars(gallons, pricePerGal) : gallons * pricePerGal;
+        long seq = session.sale(gallons, dollars);
+        LOG.info("Fueling ended early, %.3f gal charged as #%d", gallons, seq);
+    }
+
+    // Sessions a crash left open: make the dispenser safe, then charge what the meter says was delivered
+    private static void settleOpenSessions(Journal journal, DeviceLink hose, DeviceLink pump, StoreAndForward saf) {
+        List<TxnRecord> open = journal.openSessions();
+        if (open.isEmpty()) return;
+        try { hose.request("HOSE|STOP|MAIN|None", Duration.ofSeconds(1)); } catch (Exception ignore) {}
+        pumpCommand(pump, "PUMP|STOP|MAIN|None");
+        // The dispenser meter (DISP) only holds the last session's delivery; older ones left open by
+        // earlier crashes settle from their own checkpoint
+        TxnRecord newest = null;
+        for (TxnRecord r : open) {
+            if (r.phase >= TxnRecord.FUELING && (newest == null || r.sessionId > newest.sessionId)) newest = r;
+        }
+        for (TxnRecord r : open) {
+            double gallons = 0.0;
+            if (r.phase >= TxnRecord.FUELING) {
+                gallons = r.gallons();
+                if (r == newest) {
+                    try {
+                        // The dispenser meter outlives us, take it when it is ahead of the last checkpoint
+                        gallons = Math.max(gallons, settleDispensed(hose, gallons));
+                    } catch (Exception e) {
+                        LOG.warn("recovery: no meter reading for session %d, using checkpoint: %s", r.sessionId, e.getMessage());
+                    }
+                }
+            }
+            TxnRecord done = r.close(gallons, gallons * r.pricePerGal(), CLOCK.currentTimeMillis(), TxnRecord.RECOVERED);
+            journal.append(done);
+            saf.complete(done.sessionId, done.cents);
+            LOG.info("recovery: settled %s", done);
+        }
+    }
+
+    // Offline approvals whose close never reached the store-and-forward log: charge what the journal did
+    private static void settleOffline(StoreAndForward saf, ReceiptIndex receipts) {
+        for (Map.Entry<Long, Long> e : saf.unsettled().entrySet()) {
+            // Its own sale however many the card has had since (session ids are start times, sales end after)
+            List<TxnRecord> sale = receipts.find(new ReceiptIndex.Query().session(e.getKey()).card(e.getValue())
+                    .between(e.getKey(), Long.MAX_VALUE).limit(1)).records;
+            long cents = sale.isEmpty() ? 0 : sale.get(0).cents;
+            saf.complete(e.getKey(), cents);
+            LOG.info("recovery: offline session %d closed at %d cents", e.getKey(), cents);
+        }
+    }
+
     // -----------------------------------------------------------------------
     public static void main(String[] args) throws Exception {
         var entries = List.of(
                 new DeviceManager.Entry("screen",        "127.0.0.1", 5001, "screen-01",  "screen"),
                 new DeviceManager.Entry("cardreader",    "127.0.0.1", 5201, "cardr-01",   "cardreader"),
                 new DeviceManager.Entry("cardserver",    "127.0.0.1", 5301, "cards-01",   "cardserver"),
+                new DeviceManager.Entry("cardserver-saf", "127.0.0.1", 5301, "cards-01",  "cardserver"),
                 new DeviceManager.Entry("stationserver", "127.0.0.1", 5401, "station-01", "stationserver"),
                 new DeviceManager.Entry("hose",          "127.0.0.1", 5101, "hose-01",    "hose"),
                 new DeviceManager.Entry("pump", "127.0.0.1", 5501, "pump-01", "pump"),
@@ -127,39 +298,60 @@ public class Main {
         final int DETACH_TIMEOUT_MS = 30_000;
         final int THANK_YOU_DWELL_MS = 5_000;
 
-        try (DeviceManager dm = new DeviceManager(entries)) {
+        // Every session step, sale and decline, appended without waiting for the disk (see io.journal.Journal);
+        // sales also go to the receipt index for lookups (io.journal.ReceiptLookup)
+        try (DeviceManager dm = new DeviceManager(entries);
+             Journal journal = Journal.open(Path.of(System.getProperty("journal.dir", "journal")));
+             ReceiptIndex receipts = ReceiptIndex.open(journal.dir().resolve("receipts"), journal::read, true);
+             FlowArchive archive = FlowArchive.open(journal.dir().resolve("archive"), TELEMETRY);
+             // Taps from every position share one card server client, batched per round trip (see io.bus.CardAuth)
+             CardAuth cardAuth = new CardAuth(dm.link("cardserver"));
+             // Card server slow or down: approve offline up to the floor limit, forward the sales later (see io.bus.StoreAndForward)
+             StoreAndForward saf = StoreAndForward.open(journal.dir().resolve("saf.log"), dm.link("cardserver-saf"), CLOCK)) {
+            receipts.catchUp(journal);
+            journal.listen(receipts::add);
+            CLOCK.scheduleAtFixedRate(guarded("receipt index sync", receipts::sync), 1_000, 1_000); // forces the index off the session thread
+            // Today's totals as sessions close, the report is written the moment the day ends (see report.DayBook)
+            DayBook book = DayBook.open(journal, journal.dir().resolve("reports"), CLOCK.currentTimeMillis());
+            journal.listen(book::accept);
+            CLOCK.scheduleAtFixedRate(guarded("day book roll", () -> book.roll(CLOCK.currentTimeMillis())), 1_000, 1_000);
+            // Every flow sample to per-pump, per-day column files (see devices.FlowArchive, io.archive.ArchiveQuery)
+            CLOCK.scheduleAtFixedRate(guarded("flow archive drain", archive::drain), 5_000, 5_000);
             DeviceLink screen   = dm.link("screen");
             DeviceLink reader   = dm.link("cardreader");
-            DeviceLink cardSrv  = dm.link("cardserver");
             DeviceLink station  = dm.link("stationserver");
             DeviceLink hose     = dm.link("hose");
             DeviceLink pump = dm.link("pump");
             DeviceLink flowmeter = dm.link("flowmeter");
 
+            final int flowSlot = TELEMETRY.register(PUMP_ID);
             ScreenController sc = new ScreenController(screen);
-            AuthTimeouts timeouts = new AuthTimeouts(sc, () -> {
+            AuthTimeouts timeouts = new AuthTimeouts(CLOCK, sc, () -> {
             });
+            settleOpenSessions(journal, hose, pump, saf);
+            settleOffline(saf, receipts);
 
             while (true) {
 
-                System.out.println("[main] initializing Screen...");
+                LOG.info("initializing Screen...");
                 String allow = screen.request("SCREEN|READY|MAIN|None", Duration.ofSeconds(1));
-                System.out.println("[screen] replied: " + allow);
-                System.out.println("[main] we are ready for payment, show WELCOME screen");
+                SCREEN_LOG.info("replied: %s", allow);
+                LOG.info("we are ready for payment, show WELCOME screen");
                 sc.showWelcome();
 
-                System.out.println("[main] Waiting for CARD_TAP...");
+                LOG.info("Waiting for CARD_TAP...");
                 String tap;
                 while (true) {
                     tap = reader.request("CARDREADER|CHECK|MAIN|None", Duration.ofSeconds(1));
                     if (tap.startsWith("MAIN|EVENT|CARDREADER|\"CARDTAP:")) break;
-                    Thread.sleep(250);
+                    CLOCK.sleep(250);
                 }
-                System.out.println("[main] Tap raw: " + tap);
+                LOG.info("Tap raw: %s", tap);
+                final long sessionStartMs = CLOCK.currentTimeMillis();
 
                 String tapPayload = extractQuoted(tap);
                 String cc         = afterColon(tapPayload).trim();
-                System.out.println("[main] CC digit = " + cc);
+                LOG.info("CC digit = %s", cc);
 
                 int ccVal;
 
@@ -175,197 +367,251 @@ public class Main {
                     continue;
                 }
 
-                String auth = cardSrv.request("CARDSERVER|AUTH|MAIN|" + cc, Duration.ofSeconds(1));
-                System.out.println("[main] " + auth);
-
-                if (auth.contains("AUTH:YES")) {
-
-                    String list = station.request("STATIONSERVER|LIST|MAIN|None", Duration.ofSeconds(1));
-                    String listPayload = extractQuoted(list);
-                    String menuCsv     = afterColon(listPayload);
-
-                    sc.show("GRADE_MENU:" + menuCsv);
-                    timeouts.start("post-auth idle");
-
-                    final long deadline = System.currentTimeMillis() + INACTIVITY_MS;
-                    String sel;
-                    boolean timedOut = false;
-                    while (true) {
-                        sel = screen.request("SCREEN|CHECK|MAIN|None", java.time.Duration.ofSeconds(1));
-                        if (sel.startsWith("MAIN|EVENT|SCREEN|\"GRADE_SELECTED:")) break;
-                        if (System.currentTimeMillis() > deadline) { timedOut = true; break; }
-                        Thread.sleep(200);
-                    }
-                    if (timedOut) {
-                        timeouts.cancel("manual-timeout");
-                        sc.showWelcome();
-                        continue;
+                String auth = null;
+                if (saf.online(CLOCK.currentTimeMillis())) {
+                    try {
+                        auth = cardAuth.authorize(cc, Duration.ofSeconds(1));
+                        saf.authOk();
+                    } catch (IOException e) {
+                        LOG.warn("card auth failed: %s", e.getMessage());
+                        saf.authFailed(CLOCK.currentTimeMillis());
                     }
-                    timeouts.cancel("activity:grade_selected");
-
-                    String payload = extractQuoted(sel);
-                    String fuel    = afterColon(payload).trim();
+                }
+                final boolean offline = auth == null && saf.approve(sessionStartMs, ccVal, PUMP_ID, CLOCK.currentTimeMillis());
+                if (auth == null) auth = offline ? "OFFLINE:AUTH:YES" : "OFFLINE:AUTH:NO";
+                LOG.info("%s", auth);
 
-                    sc.show("FUEL_SELECTED:" + fuel);
+                if (auth.contains("AUTH:YES")) {
+                    JournaledSession session = new JournaledSession(journal, sessionStartMs, ccVal, offline ? saf : null);
+                    try {
+                        String list = station.request("STATIONSERVER|LIST|MAIN|None", Duration.ofSeconds(1));
+                        String listPayload = extractQuoted(list);
+                        String menuCsv     = afterColon(listPayload);
+
+                        sc.show("GRADE_MENU:" + menuCsv);
+                        timeouts.start("post-auth idle");
+
+                        final long deadline = CLOCK.currentTimeMillis() + INACTIVITY_MS;
+                        String sel;
+                        boolean timedOut = false;
+                        while (true) {
+                            sel = screen.request("SCREEN|CHECK|MAIN|None", java.time.Duration.ofSeconds(1));
+                            if (sel.startsWith("MAIN|EVENT|SCREEN|\"GRADE_SELECTED:")) break;
+                            if (CLOCK.currentTimeMillis() > deadline) { timedOut = true; break; }
+                            CLOCK.sleep(200);
+                        }
+                        if (timedOut) {
+                            timeouts.cancel("manual-timeout");
+                            sc.showWelcome();
+                            continue;
+                        }
+                        timeouts.cancel("activity:grade_selected");
+
+                        String payload = extractQuoted(sel);
+                        String fuel    = afterColon(payload).trim();
+                        // GRADE_SELECTED:Regular;PRESET:USD:20.00 -> preset sale
+                        Preset preset = null;
+                        int pi = fuel.indexOf(";PRESET:");
+                        if (pi >= 0) {
+                            preset = Preset.parse(fuel.substring(pi + ";PRESET:".length()));
+                            fuel = fuel.substring(0, pi).trim();
+                        }
 
-                    sc.show("ATTACH_HOSE");
-                    timeouts.start("attach-hose idle");
+                        sc.show("FUEL_SELECTED:" + fuel);
+                        session.step(TxnRecord.GRADE_SELECTED, fuel, 0.0, 0.0);
 
-                    while (true) {
-                        String r = hose.request("HOSE|GET|MAIN|None", Duration.ofSeconds(1));
-                        String state = afterColon(extractQuoted(r)).trim();
-                        if ("1".equals(state)) break;
                         sc.show("ATTACH_HOSE");
-                        Thread.sleep(200);
-                    }
-
-                    timeouts.cancel("activity:hose_attached");
-
-                    hose.request("HOSE|START|MAIN|None", Duration.ofSeconds(1));
-                    sc.show("FUELING");
-
-                    String hs = hose.request("HOSE|STATUS|MAIN|None", Duration.ofSeconds(1));
-                    String hsp = extractQuoted(hs); // e.g., STATE:1,ARMED:1,FULL:0,CAP:15.000,CUR:3.200
-
-                    double capGal = parseField(hsp, "CAP");
-                    double curGal = parseField(hsp, "CUR");
-                    double remainingTargetGal = Math.max(0.0, capGal - curGal); // how many gallons *this* session can deliver
-
-                    //capGal = -1; // ERROR TESTING
-                    //curGal = -1; // ERROR TESTING
-                    //curGal = 10; capGal = 20; // ERROR TESTING
-
-                    if (capGal < 0 || curGal < 0) {
-                        abortWithError(sc, hose, "BAD_TANK");
-                        continue;
-                    }
-                    if (curGal > capGal) {
-                        abortWithError(sc, hose, "OVERFILL");
-                        continue;
-                    }
-
-                    String pr = station.request("STATIONSERVER|GETPRICE|MAIN|" + fuel, Duration.ofSeconds(1));
-                    double pricePerGal = parseField(extractQuoted(pr), "PRICE");
-
-                    //pricePerGal = -1; // ERROR TESTING
-                    //pricePerGal = 0; // ERROR TESTING
+                        timeouts.start("attach-hose idle");
+
+                        while (true) {
+                            String r = hose.request("HOSE|GET|MAIN|None", Duration.ofSeconds(1));
+                            String state = afterColon(extractQuoted(r)).trim();
+                            if ("1".equals(state)) break;
+                            sc.show("ATTACH_HOSE");
+                            CLOCK.sleep(200);
+                        }
 
-                    if (pricePerGal < 0) {
-                        abortWithError(sc, hose, "NEG_PRICE");
-                        continue;
-                    }
-                    if (pricePerGal == 0 || pricePerGal < 0.01) {
-                        abortWithError(sc, hose, "BAD_PRICE");
-                        continue;
-                    }
+                        timeouts.cancel("activity:hose_attached");
 
-                    int kEst = (capGal > 0.0) ? (int)Math.floor((curGal / capGal) * 11.0) : 0;
-                    kEst = Math.max(0, Math.min(10, kEst));
-                    int framesRemaining = Math.max(1, 10 - kEst);           // seconds HoseGUI needs (1 frame/sec)
-                    double gps = remainingTargetGal / framesRemaining;
+                        hose.request("HOSE|START|MAIN|None", Duration.ofSeconds(1));
+                        sc.show("FUELING");
 
-                    long detachDeadline = Long.MAX_VALUE;
+                        String hs = hose.request("HOSE|STATUS|MAIN|None", Duration.ofSeconds(1));
+                        String hsp = extractQuoted(hs); // e.g., STATE:1,ARMED:1,FULL:0,CAP:15.000,CUR:3.200,RATE:0.000,DISP:0.0000
 
-                    long lastTick = System.currentTimeMillis();
-                    double dispensedGal = 0.0;
+                        double capGal = parseField(hsp, "CAP");
+                        double curGal = parseField(hsp, "CUR");
 
-                    while (true) {
-                        String rs = hose.request("HOSE|STATUS|MAIN|None", Duration.ofSeconds(1));
-                        String statusPayload = extractQuoted(rs);
-                        boolean isAttached = statusPayload.contains("STATE:1");
-                        boolean isArmed    = statusPayload.contains("ARMED:1");
-                        boolean isFull     = statusPayload.contains("FULL:1");
+                        //capGal = -1; // ERROR TESTING
+                        //curGal = -1; // ERROR TESTING
+                        //curGal = 10; capGal = 20; // ERROR TESTING
 
-                        if (!isArmed) {
-                            sc.showWelcome();
-                            break;
+                        if (capGal < 0 || curGal < 0) {
+                            abortWithError(sc, hose, "BAD_TANK");
+                            continue;
+                        }
+                        if (curGal > capGal) {
+                            abortWithError(sc, hose, "OVERFILL");
+                            continue;
                         }
 
-                        long now = System.currentTimeMillis();
-                        double dt = (now - lastTick) / 1000.0;
-                        lastTick = now;
-
-                        if (isAttached && !isFull) {
+                        String pr = station.request("STATIONSERVER|GETPRICE|MAIN|" + fuel, Duration.ofSeconds(1));
+                        double pricePerGal = parseField(extractQuoted(pr), "PRICE");
 
-                            dispensedGal += gps * dt;
+                        //pricePerGal = -1; // ERROR TESTING
+                        //pricePerGal = 0; // ERROR TESTING
 
-                            //dispensedGal = -1; // ERROR TESTING
+                        if (pricePerGal < 0) {
+                            abortWithError(sc, hose, "NEG_PRICE");
+                            continue;
+                        }
+                        if (pricePerGal == 0 || pricePerGal < 0.01) {
+                            abortWithError(sc, hose, "BAD_PRICE");
+                            continue;
+                        }
 
-                            if (dispensedGal < 0) {
-                                abortWithError(sc, hose, "NEG_GAL");
+                        long detachDeadline = Long.MAX_VALUE;
+                        double dispensedGal = 0.0;
+                        if (offline) {
+                            // Offline approvals stop at the floor limit, like a preset the customer cannot raise
+                            Preset floor = new Preset(Preset.Kind.DOLLARS, saf.floorUsd());
+                            if (preset == null || preset.targetGallons(pricePerGal) > floor.targetGallons(pricePerGal)) preset = floor;
+                        }
+                        final double presetGal = preset == null ? Double.POSITIVE_INFINITY : preset.targetGallons(pricePerGal);
+                        boolean presetStop = false;
+                        double rateAtStop = 0.0, galAtStop = 0.0;
+                        long lastDisplayMs = 0L;
+                        if (preset != null) LOG.info("Preset %s -> %.3f gal", preset, presetGal);
+                        session.step(TxnRecord.FUELING, fuel, pricePerGal, 0.0);
+                        pumpCommand(pump, "PUMP|START|MAIN|" + fuel);
+                        final long fuelStartMs = CLOCK.currentTimeMillis();
+
+                        while (true) {
+                            String rs = hose.request("HOSE|STATUS|MAIN|None", Duration.ofSeconds(1));
+                            String statusPayload = extractQuoted(rs);
+                            boolean isAttached = statusPayload.contains("STATE:1");
+                            boolean isArmed    = statusPayload.contains("ARMED:1");
+                            boolean isFull     = statusPayload.contains("FULL:1");
+
+                            if (!isArmed) {
+                                sc.showWelcome();
                                 break;
                             }
 
-                            if (dispensedGal >= remainingTargetGal) {
-                                dispensedGal = remainingTargetGal;
-                                // We hit the computed target; treat as complete.
-                                isFull = true;
-                            }
-                        }
+                            // The dispenser meters what it delivered this session (DISP), nozzle shutoff sets FULL
+                            double disp = parseField(statusPayload, "DISP");
 
-                        double galShown = Math.min(dispensedGal, remainingTargetGal);
-                        double usdShown = galShown * pricePerGal;
-                        String galsFmt = String.format(java.util.Locale.US, "%.3f", galShown);
-                        String usdFmt  = String.format(java.util.Locale.US, "%.2f", usdShown);
-                        sc.show("FUELING_NUM:" + galsFmt + "," + usdFmt);
-
-                        try {
-                            // S:1 while fueling, S:0 otherwise
-                            flowmeter.request(
-                                    String.format(java.util.Locale.US,
-                                            "FLOWMETER|UPDATE|MAIN|G:%.3f,S:%d", galShown, (isAttached && !isFull) ? 1 : 0),
-                                    Duration.ofMillis(500));
-                        } catch (Exception ignore) {}
-
-                        if (isFull) {
-                            // Compute/Clamp the final numbers you want to show
-                            double finalGallons = Math.min(dispensedGal, remainingTargetGal); // or whatever your accumulator is named
-                            double finalDollars = finalGallons * pricePerGal;
-
-                            galsFmt = String.format(java.util.Locale.US, "%.3f", finalGallons);
-                            usdFmt  = String.format(java.util.Locale.US, "%.2f",  finalDollars);
-
-                            // 1) Show THANK_YOU with the final numbers
-                            sc.show("THANK_YOU_NUM:" + galsFmt + "," + usdFmt);
-
-                            // 2) Stop devices
-                            hose.request("HOSE|STOP|MAIN|None", Duration.ofSeconds(1));
-
-                            // 3) Linger 5s on the receipt-style screen
-                            Thread.sleep(THANK_YOU_DWELL_MS);
-
-                            try {
-                                flowmeter.request(
-                                        String.format(java.util.Locale.US,
-                                                "FLOWMETER|UPDATE|MAIN|G:%.3f,S:0", finalGallons),
-                                        Duration.ofMillis(500));
-                            } catch (Exception ignore) {}
-
-                            // 4) Back to welcome
-                            sc.showWelcome();
-                            break;
-                        }
+                            //disp = -1; // ERROR TESTING
 
-                        if (!isAttached) {
-                            if (detachDeadline == Long.MAX_VALUE) {
-                                detachDeadline = System.currentTimeMillis() + DETACH_TIMEOUT_MS;
+                            if (disp < 0) {
+                                abortWithError(sc, hose, "NEG_GAL"); // dispensedGal keeps the last good reading
+                                break;
                             }
-                            if (System.currentTimeMillis() > detachDeadline) {
+                            dispensedGal = disp;
+                            session.checkpoint(dispensedGal);
+
+                            // Preset: stop early by the gallons that will still flow while the valve closes
+                            double rate = parseField(statusPayload, "RATE");
+                            TELEMETRY.record(flowSlot, CLOCK.currentTimeMillis(), dispensedGal, rate);
+                            double remaining = presetGal - dispensedGal;
+                            if (preset != null && !isFull && STOP_PREDICTOR.shouldStop(remaining, rate)) {
                                 hose.request("HOSE|STOP|MAIN|None", Duration.ofSeconds(1));
+                                presetStop = true;
+                                rateAtStop = rate;
+                                galAtStop = dispensedGal;
+                            }
+                            boolean fastPoll = preset != null && !presetStop && STOP_PREDICTOR.nearTarget(remaining, rate);
+
+                            // Fast polling near the preset must not flood the screen/flowmeter, keep those at ~200 ms
+                            long nowMs = CLOCK.currentTimeMillis();
+                            if (!fastPoll || nowMs - lastDisplayMs >= 200) {
+                                lastDisplayMs = nowMs;
+                                double usdShown = dispensedGal * pricePerGal;
+                                String galsFmt = String.format(java.util.Locale.US, "%.3f", dispensedGal);
+                                String usdFmt  = String.format(java.util.Locale.US, "%.2f", usdShown);
+                                sc.show("FUELING_NUM:" + galsFmt + "," + usdFmt);
+
+                                try {
+                                    // S:1 while fueling, S:0 otherwise
+                                    flowmeter.request(
+                                            String.format(java.util.Locale.US,
+                                                    "FLOWMETER|UPDATE|MAIN|G:%.3f,S:%d", dispensedGal, (isAttached && !isFull) ? 1 : 0),
+                                            Duration.ofMillis(500));
+                                } catch (Exception ignore) {}
+                            }
+
+                            if (isFull || presetStop) {
+                                // 1) Stop devices, let the valve close before reading the final meter
+                                if (!presetStop) hose.request("HOSE|STOP|MAIN|None", Duration.ofSeconds(1));
+                                pumpCommand(pump, "PUMP|STOP|MAIN|None");
+                                double finalGallons = settleDispensed(hose, dispensedGal);
+                                double finalDollars = finalGallons * pricePerGal;
+                                if (preset != null) {
+                                    if (presetStop) STOP_PREDICTOR.observe(rateAtStop, finalGallons - galAtStop);
+                                    finalDollars = preset.chargeDollars(finalGallons, pricePerGal);
+                                    LOG.info("Preset %s done: overshoot %.4f gal, coast now %.3fs",
+                                            preset, finalGallons - presetGal, STOP_PREDICTOR.coastSec());
+                                }
+                                long seq = session.sale(finalGallons, finalDollars);
+                                LOG.info("Sale journaled as #%d", seq);
+                                String galsFmt, usdFmt;
+
+                                galsFmt = String.format(java.util.Locale.US, "%.3f", finalGallons);
+                                usdFmt  = String.format(java.util.Locale.US, "%.2f",  finalDollars);
+
+                                // 2) Show THANK_YOU with the final numbers
+                                sc.show("THANK_YOU_NUM:" + galsFmt + "," + usdFmt);
+
+                                // 3) Linger 5s on the receipt-style screen
+                                CLOCK.sleep(THANK_YOU_DWELL_MS);
+
+                                try {
+                                    flowmeter.request(
+                                            String.format(java.util.Locale.US,
+                                                    "FLOWMETER|UPDATE|MAIN|G:%.3f,S:0", finalGallons),
+                                            Duration.ofMillis(500));
+                                } catch (Exception ignore) {}
+
+                                // 4) Back to welcome
                                 sc.showWelcome();
                                 break;
                             }
-                        } else {
-                            detachDeadline = Long.MAX_VALUE; // resume window
-                        }
 
-                        Thread.sleep(200);
-                    }
+                            if (!isAttached) {
+                                if (detachDeadline == Long.MAX_VALUE) {
+                                    detachDeadline = CLOCK.currentTimeMillis() + DETACH_TIMEOUT_MS;
+                                }
+                                if (CLOCK.currentTimeMillis() > detachDeadline) {
+                                    hose.request("HOSE|STOP|MAIN|None", Duration.ofSeconds(1));
+                                    sc.showWelcome();
+                                    break;
+                                }
+                            } else {
+                                detachDeadline = Long.MAX_VALUE; // resume window
+                            }
 
+                            CLOCK.sleep(fastPoll ? PRESET_FAST_POLL_MS : 200);
+                        }
+                        pumpCommand(pump, "PUMP|STOP|MAIN|None");
+                        if (session.isOpen()) chargeDelivered(session, hose, dispensedGal, pricePerGal, preset);
+                        long fuelEndMs = CLOCK.currentTimeMillis();
+                        TELEMETRY.end(flowSlot, fuelEndMs);
+                        FlowTelemetry.Summary flow = TELEMETRY.summarize(flowSlot, FlowTelemetry.SECONDS, fuelStartMs - fuelStartMs % 1_000, Long.MAX_VALUE);
+                        LOG.info("Flow: %s", flow);
+                        if (flow.samples > 0) archive.session(PUMP_ID, fuelEndMs, (fuelEndMs - fuelStartMs) / 1000.0, flow);
+                        for (String finding : TELEMETRY.diagnose(fuelEndMs, 15)) LOG.warn("flow: %s", finding);
+
+                    } catch (Throwable t) {
+                        session.leaveOpen(); // dying mid-session: the next start settles it from the meter
+                        throw t;
+                    } finally {
+                        session.voidIfOpen();
+                    }
                 } else {
+                    journal.append(TxnRecord.decline(sessionStartMs, PUMP_ID, ccVal, sessionStartMs, CLOCK.currentTimeMillis()));
                     sc.show("AUTH_NO");
-                    System.out.println("[main] Declined - dwell " + (DECLINE_DWELL_MS / 1000.0) + "s, then reset.");
-                    Thread.sleep(DECLINE_DWELL_MS);
+                    LOG.info("Declined - dwell %.1fs, then reset.", DECLINE_DWELL_MS / 1000.0);
+                    CLOCK.sleep(DECLINE_DWELL_MS);
                 }
             }
         }
@@ -0,0 +1,197 @@
+package devices;
+
+import io.archive.ColumnFile;
+import io.log.Log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/*Flow Archive
+* Long-term home of the FlowTelemetry samples: drain() follows every pump's raw ring with a
+* cursor and appends each sample to a column file per pump and day,
+*
+*   <dir>/<pump>/<yyyy-mm-dd>.flow.col       t, gallons, gpm             every sample
+*   <dir>/<pump>/<yyyy-mm-dd>.sessions.col   t, seconds, gallons, meanGpm, maxGpm   one row per sale
+*
+* so months of flow stay on disk at a few bytes a sample and io.archive.ArchiveQuery scans a year
+* reading only the columns it needs. Each file has a footer beside it (<name>.idx). Rows are sealed
+* into the file a block (4096) at a time; the block still open goes into a new footer every
+* -Darchive.flushMs (60 s), when the day rolls and on close(), so a crash loses at most that much
+* flow and never what was already there. Drain often enough
+* that the ring (-Dtelemetry.raw samples per pump) does not lap the cursor, lapped samples are
+* counted and logged.
+* */
+
+
+/* USAGE
+* FlowArchive archive = FlowArchive.open(Path.of("journal/archive"), tm);
+* CLOCK.scheduleAtFixedRate(archive::drain, 5_000, 5_000);
+* archive.session("pump-01", endMs, seconds, tm.summarize(slot, FlowTelemetry.SECONDS, startMs, endMs));
+* archive.close();                                     // drains and writes the open blocks
+* */
+
+
+public final class FlowArchive implements AutoCloseable {
+    private static final Log LOG = Log.named("archive");
+    public static final String[] FLOW = { "gallons", "gpm" };
+    public static final String[] SESSIONS = { "seconds", "gallons", "meanGpm", "maxGpm" };
+    private static final int BATCH = 1024;
+    private static final long FLUSH_NS = Long.getLong("archive.flushMs", 60_000L) * 1_000_000L;
+
+    private final Path dir;
+    private final FlowTelemetry tm;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final List<Pump> pumps = new ArrayList<>();
+    private final long[] t = new long[BATCH];
+    private final float[] gal = new float[BATCH], gpm = new float[BATCH];
+    private long archived = 0;
+    private long flushedNs = System.nanoTime();
+
+    private FlowArchive(Path dir, FlowTelemetry tm) {
+        this.dir = dir;
+        this.tm = tm;
+    }
+
+    public static FlowArchive open(Path dir, FlowTelemetry tm) throws IOException {
+        Files.createDirectories(dir);
+        return new FlowArchive(dir, tm);
+    }
+
+    public Path dir() { return dir; }
+
+    /** Samples appended so far. */
+    public synchronized long archived() { return archived; }
+
+    /** Appends every raw sample recorded since the last drain; call it on a timer. */
+    public synchronized void drain() {
+        for (int slot = pumps.size(); slot < tm.pumps(); slot++) pumps.add(new Pump(tm.name(slot), tm.cursor(slot)));
+        for (Pump p : pumps) {
+            long lostBefore = p.cursor.lost();
+            int n;
+            try {
+                while ((n = p.cursor.read(t, gal, gpm)) > 0) {
+                    for (int i = 0; i < n; i++) {
+                        ColumnFile.Writer w = p.flow.writer(t[i]);
+                        if (w != null) w.append(t[i], gal[i], gpm[i]);
+                    }
+                    archived += n;
+                    if (n < BATCH) break;
+                }
+            } catch (UncheckedIOException e) {
+                LOG.warn("%s: flow archive write failed: %s", p.name, e.getMessage());
+            }
+            if (p.cursor.lost() > lostBefore) {
+                LOG.warn("%s: %d flow samples lapped before archiving (drain more often or raise -Dtelemetry.raw)",
+                        p.name, p.cursor.lost() - lostBefore);
+            }
+        }
+        if (System.nanoTime() - flushedNs >= FLUSH_NS) {
+            flushedNs = System.nanoTime();
+            for (Pump p : pumps) {
+                p.flow.flush();
+                p.sessions.flush();
+            }
+        }
+    }
+
+    /** One row per sale: when it ended, how long fuel flowed, and its flow summary. */
+    public synchronized void session(String pump, long endMs, double seconds, FlowTelemetry.Summary s) {
+        Pump p = pump(pump);
+        ColumnFile.Writer w = p.sessions.writer(endMs);
+        if (w != null) w.append(endMs, (float) seconds, (float) s.gallons, (float) s.meanGpm, (float) s.maxGpm);
+    }
+
+    @Override
+    public synchronized void close() {
+        drain();
+        for (Pump p : pumps) {
+            p.flow.close();
+            p.sessions.close();
+        }
+    }
+
+    private Pump pump(String name) {
+        drain(); // registers new pumps in slot order
+        for (Pump p : pumps) if (p.name.equals(name)) return p;
+        throw new IllegalArgumentException("unknown pump " + name);
+    }
+
+    private final class Pump {
+        final String name;
+        final FlowTelemetry.Cursor cursor;
+        final Table flow, sessions;
+
+        Pump(String name, FlowTelemetry.Cursor cursor) {
+            this.name = name;
+            this.cursor = cursor;
+            this.flow = new Table(name, "flow", FLOW);
+            this.sessions = new Table(name, "sessions", SESSIONS);
+        }
+    }
+
+    // One pump's files of one kind, the current day's open
+    private final class Table {
+        private final String pump, kind;
+        private final String[] columns;
+        private LocalDate day;
+        private ColumnFile.Writer writer;
+
+        Table(String pump, String kind, String[] columns) {
+            this.pump = pump;
+            this.kind = kind;
+            this.columns = columns;
+        }
+
+        // Writer for the day of timeMs, rolling to it; null if the file cannot be opened
+        ColumnFile.Writer writer(long timeMs) {
+            LocalDate d = Instant.ofEpochMilli(timeMs).atZone(zone).toLocalDate();
+            if (d.equals(day)) return writer; // null once this day failed to open
+            close();
+            day = d;
+            Path file = dir.resolve(pump).resolve(d + "." + kind + ".col");
+            try {
+                writer = ColumnFile.Writer.open(file, columns);
+            } catch (IOException e) {
+                // Unreadable (a footer damaged outside the writer, or data lost beneath it): keep both
+                // for inspection, start the day over
+                String bad = ".bad-" + System.currentTimeMillis();
+                Path idx = ColumnFile.footerOf(file);
+                LOG.warn("cannot append to %s (%s), moved aside", file, e.getMessage());
+                try {
+                    if (Files.exists(idx)) Files.move(idx, idx.resolveSibling(idx.getFileName() + bad));
+                    if (Files.exists(file)) Files.move(file, file.resolveSibling(file.getFileName() + bad));
+                    writer = ColumnFile.Writer.open(file, columns);
+                } catch (IOException e2) {
+                    LOG.error("archive %s unavailable: %s", file, e2.getMessage());
+                }
+            }
+            return writer;
+        }
+
+        void flush() {
+            if (writer == null) return;
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                LOG.warn("flushing %s archive: %s", pump + "/" + kind, e.getMessage());
+            }
+        }
+
+        void close() {
+            if (writer == null) return;
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.warn("closing %s archive: %s", pump + "/" + kind, e.getMessage());
+            }
+            writer = null;
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package devices;
 
 import io.bus.*;
+import io.clock.Clock;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /*Flow Meter Communicator
 * Sends -> Flow Rates -> Main
 * Receives -> Fuel Start/Pause/Resume/Stop from Main
 *          -> Receive Reset Signals from Main
 *          -> Receive Price for selected Fuel from Main
+*
+* Nothing in this tree constructs it: Main drives the flowmeter display itself (FLOWMETER|UPDATE
+* from its HOSE|STATUS loop) and the simulated flowmeter does not answer METER:RATE?, so the rate
+* sampler and getMetrics() only run for a caller that talks to a real meter.
 * */
 
 
@@ -22,10 +30,24 @@ import java.util.concurrent.*;
 * FlowMeter.State state = fm.,getState
 *   -> USE to update ui
 *
+* fm.close() // stops the rate sampler
+*
+* Other threads (UI, metrics) should not call getState() in a hot loop, instead:
+* FlowMeter.Snapshot snap = new FlowMeter.Snapshot(); // reuse it
+* fm.snapshot(snap);                                   // consistent, no allocation
+* fm.addListener(s -> ...)                             // or get pushed every change
+*   (no subscriber in this tree yet: the GUIs get their numbers from the simulator's topics)
+*
+* fm.setPreset(Preset.parse("USD:20")) // after setPricePerGal, before Start
+*   -> loop() samples fast near the target and calls stop() at the predicted point
+*   -> fm.presetReached() tells the controller why it stopped
+*
+* loop() never touches the link: METER:RATE? is sampled on its own task
+* (setSamplePeriodMillis, default 250) and commands are sent asynchronously.
 * */
 
 
-public final class FlowMeter{
+public final class FlowMeter implements AutoCloseable {
     //Inner State class for recording
     public static final class State {
         public final boolean running;
@@ -55,8 +77,61 @@ public final class FlowMeter{
         }
     }
 
+    //Reusable, mutable view filled by snapshot()/listeners, never shared between threads
+    public static final class Snapshot {
+        public boolean running;
+        public boolean paused;
+        public double gallons;
+        public double price;
+        public double currGPM;
+        public long elapsedNanos;
+        public long version;
+
+        public State toState() {
+            return new State(running, paused, gallons, price, currGPM, Duration.ofNanos(elapsedNanos));
+        }
+    }
+
+    //Called on the loop() thread after every published change, must not keep the snapshot
+    public interface Listener {
+        void onState(Snapshot s);
+    }
+
+    //Rate sampler health, lost = failed (timeout/bad reply) + skipped (previous sample still in flight)
+    public static final class Metrics {
+        public final long samples;
+        public final long failed;
+        public final long skipped;
+        public final long lastSampleAgeMs;
+
+        Metrics(long samples, long failed, long skipped, long lastSampleAgeMs) {
+            this.samples = samples;
+            this.failed = failed;
+            this.skipped = skipped;
+            this.lastSampleAgeMs = lastSampleAgeMs;
+        }
+
+        public long lost() { return failed + skipped; }
+
+        @Override
+        public String toString() {
+            return String.format("samples=%d  failed=%d  skipped=%d  lastSampleAge=%dms",
+                    samples, failed, skipped, lastSampleAgeMs);
+        }
+    }
+
     //IO
     private final DeviceLink link;
+    private final Clock clock;
+    //Seqlock, odd while the owner thread is mid-update, readers retry
+    private static final VarHandle SEQ;
+    static {
+        try { SEQ = MethodHandles.lookup().findVarHandle(FlowMeter.class, "seq", long.class); }
+        catch (ReflectiveOperationException e) { throw new ExceptionInInitializerError(e); }
+    }
+    private long seq = 0L;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Snapshot published = new Snapshot(); //owner thread only, handed to listeners
     //States, Config
     private boolean running = false;
     private boolean paused = false;
@@ -69,11 +144,38 @@ public final class FlowMeter{
     private long startNan = 0L;
     private long lastNan = 0L;
     //test helper
-    private boolean useDeviceRate = true;
+    private volatile boolean useDeviceRate = true;
+    //Preset sale
+    private static final long FAST_SAMPLE_MS = 25L;
+    private Preset preset;
+    private double presetGal = Double.POSITIVE_INFINITY;
+    private StopPredictor predictor = new StopPredictor(0.25);
+    private boolean presetReached = false;
+    private long normalSamplePeriodMs = -1L;
+    //Rate Sampler, latest sample published lock-free for loop()
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "flowmeter-io");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean sampleInFlight = new AtomicBoolean(false);
+    private final LongAdder samplesOk = new LongAdder();
+    private final LongAdder samplesFailed = new LongAdder();
+    private final LongAdder samplesSkipped = new LongAdder();
+    private volatile double sampledGPM = Double.NaN;
+    private volatile long lastSampleNan = 0L;
+    private long samplePeriodMs = 250L;
+    private volatile Clock.Timer sampler;
 
     //Constructor
     public FlowMeter(DeviceLink link) {
+        this(link, Clock.system());
+    }
+
+    //Clock lets tests and replays drive the integration on virtual time
+    public FlowMeter(DeviceLink link, Clock clock) {
         this.link = link;
+        this.clock = clock;
     }
 
     //Setters
@@ -84,86 +186,214 @@ public final class FlowMeter{
         this.currGPM = Math.abs(rate); //Assume all pos
     }
     public void useDeviceRate () {this.useDeviceRate = true;}
+    //null clears it
+    public void setPreset(Preset p) {
+        this.preset = p;
+        this.presetGal = p == null ? Double.POSITIVE_INFINITY : p.targetGallons(pricePerGal);
+    }
+    public void setStopPredictor(StopPredictor p) { this.predictor = p; }
+    public boolean presetReached() { return presetReached; }
+    public synchronized void setSamplePeriodMillis(long ms) {
+        this.samplePeriodMs = Math.max(10L, ms);
+        if (sampler != null) { sampler.cancel(); sampler = null; startSampler(); }
+    }
 
     public void Start() {
         if (running) return;
+        presetReached = false;
+        beginWrite();
         running = true;
         paused = false;
         runningGals = 0.0;
         runningPrice = 0.0;
 
-        startNan = System.nanoTime();
+        startNan = clock.nanoTime();
         lastNan = startNan;
+        endWrite();
         //Send Starting Message
-        try {send("Meter:start"); } catch (Exception ignored) {}
-        if (useDeviceRate) {currGPM = tryReadRate(currGPM);}
+        sendAsync("Meter:start");
+        startSampler();
     }
 
     public void resume() {
         if (!running || !paused) return;
+        beginWrite();
         paused = false;
-        lastNan = System.nanoTime();
-        try {send("METER:RESUME"); } catch (Exception ignored) {}
+        lastNan = clock.nanoTime();
+        endWrite();
+        sendAsync("METER:RESUME");
     }
 
     public void pause() {
         if (!running || paused) return;
+        beginWrite();
         paused = true;
-        try {send("METER:PAUSE"); } catch (Exception ignored) {}
+        endWrite();
+        sendAsync("METER:PAUSE");
     }
 
     public void stop() {
         if (!running) return;
+        beginWrite();
         running = false;
-        try {send("METER:STOP"); } catch (Exception ignored) {}
+        endWrite();
+        if (normalSamplePeriodMs > 0) { setSamplePeriodMillis(normalSamplePeriodMs); normalSamplePeriodMs = -1L; }
+        sendAsync("METER:STOP");
     }
 
     //controller should call this, should get time difference between calls
     //Computes Price and other info
     public void loop(){
-        final long now = System.nanoTime();
+        final long now = clock.nanoTime();
         final long prev = lastNan == 0L ? now : lastNan;
+
+        //Latest published sample, the sampler keeps running while stopped
+        if (sampler == null) startSampler();
+        double rate = currGPM;
+        if (useDeviceRate) {
+            final double sampled = sampledGPM;
+            if (!Double.isNaN(sampled)) rate = sampled;
+        }
+
+        beginWrite();
         lastNan = now;
+        currGPM = rate;
+        if(running && !paused){
+            //Use Loop Mechanism
+            final double deltaSec = (now-prev)/1_000_000_000.0;
+            //ensure time change is not neg
+            if (deltaSec > 0){
+                final double deltaGal = currGPM*(deltaSec/60);
+                runningGals += deltaGal;
+                runningPrice += deltaGal*pricePerGal;
+            }
+        }
+        endWrite();
+        if (preset != null && running && !paused) checkPreset();
+    }
 
-        //Look For Next Rate when Stopped
-        if(!running||paused){
-            if (useDeviceRate) currGPM = tryReadRate(currGPM);
+    private void checkPreset() {
+        final double remaining = presetGal - runningGals;
+        if (predictor.shouldStop(remaining, currGPM)) {
+            presetReached = true;
+            stop();
+        } else if (normalSamplePeriodMs < 0 && predictor.nearTarget(remaining, currGPM)) {
+            normalSamplePeriodMs = samplePeriodMs;
+            setSamplePeriodMillis(FAST_SAMPLE_MS);
+        }
+    }
+
+    //Allocates, fine for occasional use. Hot readers use snapshot()
+    public State getState() {
+        final Snapshot s = new Snapshot();
+        snapshot(s);
+        return s.toState();
+    }
+
+    //Safe from any thread, spins only while the owner is mid-update
+    public void snapshot(Snapshot into) {
+        while (true) {
+            final long s1 = (long) SEQ.getAcquire(this);
+            if ((s1 & 1L) != 0L) { Thread.onSpinWait(); continue; }
+            final boolean r = running, p = paused;
+            final double g = runningGals, pr = runningPrice, gpm = currGPM;
+            final long start = startNan, last = lastNan;
+            VarHandle.loadLoadFence();
+            if ((long) SEQ.getOpaque(this) != s1) continue;
+
+            //Timing
+            final long ref = start == 0L ? clock.nanoTime() : start;
+            final long end = (r ? clock.nanoTime() : last);
+            into.running = r;
+            into.paused = p;
+            into.gallons = g;
+            into.price = pr;
+            into.currGPM = gpm;
+            into.elapsedNanos = Math.max(0L, end - ref);
+            into.version = s1 >>> 1;
             return;
         }
+    }
 
-        //refresh rate
-        if (useDeviceRate) currGPM = tryReadRate(currGPM);
+    public void addListener(Listener l) { listeners.add(l); }
+    public void removeListener(Listener l) { listeners.remove(l); }
 
-        //Use Loop Mechanism
-        final double deltaSec = (now-prev)/1_000_000_000.0;
-        //ensure time change is not neg
-        if (deltaSec > 0){
-            final double deltaGal = currGPM*(deltaSec/60);
-            runningGals += deltaGal;
-            runningPrice += deltaGal*pricePerGal;
+    // Seqlock writer side, owner thread only
+    private void beginWrite() {
+        SEQ.setOpaque(this, seq + 1L);
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        SEQ.setRelease(this, seq + 1L);
+        if (!listeners.isEmpty()) {
+            snapshot(published);
+            for (Listener l : listeners) l.onState(published);
         }
     }
 
-    public State getState() {
-        //Timing
-        final long ref = startNan == 0L ? System.nanoTime() : startNan;
-        final long end = (running ? System.nanoTime() : lastNan);
-        final Duration elapsed = (end >= ref) ? Duration.ofNanos(end - ref) : Duration.ZERO;
-        return new  State(running, paused, runningGals, runningPrice, currGPM,  elapsed);
+    public Metrics getMetrics() {
+        final long last = lastSampleNan;
+        final long age = last == 0L ? -1L : (clock.nanoTime() - last) / 1_000_000L;
+        return new Metrics(samplesOk.sum(), samplesFailed.sum(), samplesSkipped.sum(), age);
     }
 
-    // Communication Helpers
-    private double tryReadRate(double ignore) {
+    @Override
+    public synchronized void close() {
+        if (sampler != null) sampler.cancel();
+        sampler = null;
+        io.shutdown();
+    }
+
+    // Rate Sampler
+    private synchronized void startSampler() {
+        if (sampler != null || link == null || io.isShutdown()) return;
+        sampler = clock.scheduleAtFixedRate(this::requestSample, 0L, samplePeriodMs);
+    }
+
+    //Timer thread, only hands off to the io thread
+    private void requestSample() {
+        if (!useDeviceRate) return;
+        if (!sampleInFlight.compareAndSet(false, true)) {
+            samplesSkipped.increment();
+            return;
+        }
         try {
-            final String reply = send("METER:RATE?");
-            final String s = reply.contains(":") ?
-                    reply.substring(reply.indexOf(':') + 1) : reply;
-            return Math.abs(Double.parseDouble(s.trim()));
-        } catch (Exception e){
-            return ignore;
+            io.execute(() -> {
+                try {
+                    final double rate = readRate();
+                    sampledGPM = rate;
+                    lastSampleNan = clock.nanoTime();
+                    samplesOk.increment();
+                } catch (Exception e) {
+                    samplesFailed.increment();
+                } finally {
+                    sampleInFlight.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sampleInFlight.set(false);
         }
     }
 
+    // Communication Helpers
+    private double readRate() throws Exception {
+        final String reply = send("METER:RATE?");
+        final String s = reply.contains(":") ?
+                reply.substring(reply.indexOf(':') + 1) : reply;
+        return Math.abs(Double.parseDouble(s.trim()));
+    }
+
+    //Commands keep their order, they share the io thread with the sampler
+    private void sendAsync(String cmd) {
+        if (link == null) return;
+        try {
+            io.execute(() -> {
+                try { send(cmd); } catch (Exception ignored) {}
+            });
+        } catch (RejectedExecutionException ignored) {}
+    }
+
     private String send(String cmd) throws Exception {
         if (link == null) { return "";}
         return link.request(cmd,Duration.ofSeconds(7));
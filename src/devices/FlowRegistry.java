@@ -0,0 +1,176 @@
+package devices;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/*Station Flow Registry
+* Site-wide live totals across every meter on the forecourt (one slot per pump position).
+*
+* Per meter (one slot each, written only by the thread that owns it):
+*   gpm[slot], gallons[slot], dollars[slot], grade[slot], active[slot]   -> plain primitive arrays
+* Per grade (written by all meters):
+*   DoubleAdder gallons / dollars                                         -> striped, no CAS hot spot
+*
+* Readers (dashboards, reports) never lock and never touch the meters.
+*
+* The simulator's forecourt (sim.Forecourt) is the producer: its tick thread owns every position's
+* slot. Its SITEFLOW topic pushes totals() to ui.ForecourtDashboard a few times a second.
+* */
+
+
+/* USAGE
+* FlowRegistry site = new FlowRegistry(64);
+* int slot = site.register();          // per meter, once
+* site.begin(slot, site.gradeIndex("Regular"));            // the meter's own thread, per sale
+* site.publish(slot, dGal, dUsd, gallons, dollars, gpm);   // every reading
+* site.end(slot);
+*
+* double[] gal = new double[FlowRegistry.MAX_GRADES], usd = new double[FlowRegistry.MAX_GRADES];
+* double gpm = site.totals(gal, usd);  // reuse the arrays
+* site.gradeName(i)                    // label for gal[i]/usd[i]
+* */
+
+
+public final class FlowRegistry {
+    public static final int MAX_GRADES = 8;
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle INTS  = MethodHandles.arrayElementVarHandle(int[].class);
+
+    //Structure of arrays, doubles kept as raw long bits so single slots publish atomically
+    private final long[] gpmBits;
+    private final long[] gallonBits;
+    private final long[] dollarBits;
+    private final int[] grade;
+    private final int[] active;
+
+    private final DoubleAdder[] gallonsByGrade = new DoubleAdder[MAX_GRADES];
+    private final DoubleAdder[] dollarsByGrade = new DoubleAdder[MAX_GRADES];
+    private final LongAdder sessions = new LongAdder();
+    private final String[] gradeNames = new String[MAX_GRADES];
+    private final Map<String, Integer> gradeIdx = new ConcurrentHashMap<>();
+    private final AtomicInteger nextGrade = new AtomicInteger();
+
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Integer> freeSlots = new ConcurrentLinkedQueue<>();
+
+    public FlowRegistry(int capacity) {
+        gpmBits = new long[capacity];
+        gallonBits = new long[capacity];
+        dollarBits = new long[capacity];
+        grade = new int[capacity];
+        active = new int[capacity];
+        for (int i = 0; i < MAX_GRADES; i++) {
+            gallonsByGrade[i] = new DoubleAdder();
+            dollarsByGrade[i] = new DoubleAdder();
+        }
+    }
+
+    // ---- Registration (rare) -------------------------------------------------
+    public int register() {
+        Integer reused = freeSlots.poll();
+        if (reused != null) return reused;
+        int slot = nextSlot.getAndIncrement();
+        if (slot >= active.length) {
+            nextSlot.decrementAndGet();
+            throw new IllegalStateException("FlowRegistry full (" + active.length + " meters)");
+        }
+        return slot;
+    }
+
+    public void unregister(int slot) {
+        INTS.setRelease(active, slot, 0);
+        LONGS.setRelease(gpmBits, slot, Double.doubleToRawLongBits(0.0));
+        freeSlots.add(slot);
+    }
+
+    public int gradeIndex(String name) {
+        return gradeIdx.computeIfAbsent(name, n -> {
+            int i = nextGrade.getAndIncrement();
+            if (i >= MAX_GRADES) throw new IllegalStateException("too many grades: " + n);
+            gradeNames[i] = n;
+            return i;
+        });
+    }
+
+    public String gradeName(int idx) { return gradeNames[idx]; }
+
+    public int gradeCount() { return Math.min(nextGrade.get(), MAX_GRADES); }
+
+    // ---- Writers (owning meter thread) ----------------------------------------
+    /** New sale on this meter: per-meter counters restart, grade totals keep accumulating. */
+    public void begin(int slot, int gradeIdx) {
+        grade[slot] = gradeIdx;
+        LONGS.setRelease(gallonBits, slot, Double.doubleToRawLongBits(0.0));
+        LONGS.setRelease(dollarBits, slot, Double.doubleToRawLongBits(0.0));
+        INTS.setRelease(active, slot, 1);
+        sessions.increment();
+    }
+
+    public void publish(int slot, double dGal, double dUsd, double gallons, double dollars, double gpm) {
+        final int g = grade[slot];
+        if (dGal != 0.0) gallonsByGrade[g].add(dGal);
+        if (dUsd != 0.0) dollarsByGrade[g].add(dUsd);
+        LONGS.setRelease(gallonBits, slot, Double.doubleToRawLongBits(gallons));
+        LONGS.setRelease(dollarBits, slot, Double.doubleToRawLongBits(dollars));
+        LONGS.setRelease(gpmBits, slot, Double.doubleToRawLongBits(gpm));
+    }
+
+    public void end(int slot) {
+        LONGS.setRelease(gpmBits, slot, Double.doubleToRawLongBits(0.0));
+        INTS.setRelease(active, slot, 0);
+    }
+
+    // ---- Readers (any thread, lock-free) --------------------------------------
+    /** Fills per-grade gallons/dollars (arrays of at least MAX_GRADES), returns site GPM. */
+    public double totals(double[] gallonsOut, double[] dollarsOut) {
+        for (int i = 0; i < MAX_GRADES; i++) {
+            gallonsOut[i] = gallonsByGrade[i].sum();
+            dollarsOut[i] = dollarsByGrade[i].sum();
+        }
+        return aggregateGpm();
+    }
+
+    public double aggregateGpm() {
+        final int n = Math.min(nextSlot.get(), active.length);
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            if ((int) INTS.getAcquire(active, i) != 0) {
+                sum += Double.longBitsToDouble((long) LONGS.getAcquire(gpmBits, i));
+            }
+        }
+        return sum;
+    }
+
+    public int activeMeters() {
+        final int n = Math.min(nextSlot.get(), active.length);
+        int c = 0;
+        for (int i = 0; i < n; i++) c += (int) INTS.getAcquire(active, i);
+        return c;
+    }
+
+    public double meterGallons(int slot) { return Double.longBitsToDouble((long) LONGS.getAcquire(gallonBits, slot)); }
+    public double meterDollars(int slot) { return Double.longBitsToDouble((long) LONGS.getAcquire(dollarBits, slot)); }
+    public double meterGpm(int slot)     { return Double.longBitsToDouble((long) LONGS.getAcquire(gpmBits, slot)); }
+    public boolean meterActive(int slot) { return (int) INTS.getAcquire(active, slot) != 0; }
+
+    public long sessions() { return sessions.sum(); }
+
+    public double totalGallons() {
+        double s = 0.0;
+        for (DoubleAdder a : gallonsByGrade) s += a.sum();
+        return s;
+    }
+
+    public double totalDollars() {
+        double s = 0.0;
+        for (DoubleAdder a : dollarsByGrade) s += a.sum();
+        return s;
+    }
+}
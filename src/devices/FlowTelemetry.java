@@ -0,0 +1,363 @@
+package devices;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*Flow Telemetry
+* Every flow sample of every pump (time, metered gallons, gpm), kept in fixed-size rings in one
+* direct ByteBuffer, so a day of samples costs no heap and no GC:
+*
+* Per pump (one slot each, written only by that pump's loop thread):
+*   raw     RAW x 16 B   long timeMs, float gallons, float gpm          newest RAW samples
+*   seconds SEC x 32 B   one bucket per second that had samples         last SEC seconds of flow
+*   minutes MIN x 32 B   one bucket per minute                          last MIN minutes of flow
+*   bucket: long startMs, int samples, float min/max/mean gpm, float gallons delivered, int unused
+*
+* A sample folds into the open second; when the second changes that bucket is written to the
+* seconds ring and folded into the open minute, and so on. end() closes the open buckets, call it
+* when a sale ends so the last seconds show up.
+*
+* Readers on any thread: every ring has a write count published with release; a reader copies,
+* re-reads the count and drops whatever the writer may have lapped meanwhile. No locks.
+* */
+
+
+/* USAGE
+* FlowTelemetry tm = new FlowTelemetry(16);
+* int slot = tm.register("pump-01");
+* tm.record(slot, nowMs, dispensedGal, gpm);  // every sample, loop thread
+* tm.end(slot, nowMs);                         // sale done
+*
+* FlowTelemetry.Summary s = tm.summarize(slot, FlowTelemetry.SECONDS, fromMs, toMs);
+* for (String finding : tm.diagnose(nowMs, 15)) ...   // slow pumps, flow dips, last 15 min
+* FlowTelemetry.Cursor c = tm.cursor(slot); c.read(t, gal, gpm)  // every raw sample once (FlowArchive)
+*
+* -Dtelemetry.raw=4096  -Dtelemetry.seconds=3600  -Dtelemetry.minutes=1440
+* */
+
+
+public final class FlowTelemetry {
+    public static final int RAW = 0, SECONDS = 1, MINUTES = 2;
+
+    private static final int SAMPLE = 16, BUCKET = 32;
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    // Diagnostics
+    private static final double SLOW_RATIO = 0.75;
+    private static final double DIP_RATIO = 0.5;
+
+    private final int capacity;
+    private final int[] size = new int[3];      // entries per ring
+    private final int[] ringAt = new int[3];    // ring offset inside a slot
+    private final int slotBytes;
+    private final ByteBuffer mem;
+
+    // Write count per slot and ring, [slot * 3 + ring]
+    private final long[] written;
+    private final String[] names;
+    private final ConcurrentHashMap<String, Integer> byName = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    // Open buckets, owner thread only: [slot * 2 + (0 = second, 1 = minute)]
+    private final long[] openStart;
+    private final int[] openSamples;
+    private final float[] openMin, openMax, openGal;
+    private final double[] openSum;
+    private final float[] lastGal;
+
+    public FlowTelemetry(int capacity) {
+        this(capacity, Integer.getInteger("telemetry.raw", 4096),
+                Integer.getInteger("telemetry.seconds", 3600), Integer.getInteger("telemetry.minutes", 1440));
+    }
+
+    public FlowTelemetry(int capacity, int raw, int seconds, int minutes) {
+        this.capacity = capacity;
+        size[RAW] = raw;
+        size[SECONDS] = seconds;
+        size[MINUTES] = minutes;
+        ringAt[RAW] = 0;
+        ringAt[SECONDS] = raw * SAMPLE;
+        ringAt[MINUTES] = ringAt[SECONDS] + seconds * BUCKET;
+        slotBytes = ringAt[MINUTES] + minutes * BUCKET;
+        mem = ByteBuffer.allocateDirect(Math.multiplyExact(slotBytes, capacity)).order(ByteOrder.nativeOrder());
+
+        written = new long[capacity * 3];
+        names = new String[capacity];
+        openStart = new long[capacity * 2];
+        Arrays.fill(openStart, Long.MIN_VALUE);
+        openSamples = new int[capacity * 2];
+        openMin = new float[capacity * 2];
+        openMax = new float[capacity * 2];
+        openGal = new float[capacity * 2];
+        openSum = new double[capacity * 2];
+        lastGal = new float[capacity];
+    }
+
+    // ---- Registration (rare) -------------------------------------------------
+    /** Slot of {@code pump}, the same one every time it is asked for. */
+    public int register(String pump) {
+        return byName.computeIfAbsent(pump, p -> {
+            int slot = nextSlot.getAndIncrement();
+            if (slot >= capacity) {
+                nextSlot.decrementAndGet();
+                throw new IllegalStateException("FlowTelemetry full (" + capacity + " pumps)");
+            }
+            names[slot] = p;
+            return slot;
+        });
+    }
+
+    public int pumps() { return nextSlot.get(); }
+
+    public String name(int slot) { return names[slot]; }
+
+    /** Off-heap bytes in use. */
+    public long bytes() { return mem.capacity(); }
+
+    // ---- Writer (the pump's loop thread) ------------------------------------
+    public void record(int slot, long timeMs, double gallons, double gpm) {
+        float g = (float) gallons, r = (float) Math.max(0.0, gpm);
+        long n = written[slot * 3 + RAW];
+        int at = slot * slotBytes + ringAt[RAW] + (int) (n % size[RAW]) * SAMPLE;
+        mem.putLong(at, timeMs).putFloat(at + 8, g).putFloat(at + 12, r);
+        LONGS.setRelease(written, slot * 3 + RAW, n + 1);
+
+        // Metered gallons restart at 0 each sale
+        float delta = g >= lastGal[slot] ? g - lastGal[slot] : g;
+        lastGal[slot] = g;
+
+        int sec = slot * 2;
+        long secStart = timeMs - Math.floorMod(timeMs, 1_000L);
+        if (openStart[sec] != secStart) {
+            if (openSamples[sec] > 0) closeSecond(slot);
+            open(sec, secStart);
+        }
+        fold(sec, r, delta);
+    }
+
+    /** Closes the open second and minute, e.g. when a sale ends. */
+    public void end(int slot, long nowMs) {
+        if (openSamples[slot * 2] > 0) closeSecond(slot);
+        openStart[slot * 2] = Long.MIN_VALUE;
+        if (openSamples[slot * 2 + 1] > 0) flush(slot, MINUTES, slot * 2 + 1);
+        openSamples[slot * 2 + 1] = 0;
+        openStart[slot * 2 + 1] = Long.MIN_VALUE;
+        lastGal[slot] = 0f;
+    }
+
+    private void closeSecond(int slot) {
+        int sec = slot * 2, min = sec + 1;
+        flush(slot, SECONDS, sec);
+        long secStart = openStart[sec];
+        long minStart = secStart - Math.floorMod(secStart, 60_000L);
+        if (openStart[min] != minStart) {
+            if (openSamples[min] > 0) flush(slot, MINUTES, min);
+            open(min, minStart);
+        }
+        // A minute is a bucket of seconds, weighted by their samples
+        openSamples[min] += openSamples[sec];
+        openSum[min] += openSum[sec];
+        openMin[min] = Math.min(openMin[min], openMin[sec]);
+        openMax[min] = Math.max(openMax[min], openMax[sec]);
+        openGal[min] += openGal[sec];
+        openSamples[sec] = 0;
+    }
+
+    private void open(int b, long start) {
+        openStart[b] = start;
+        openSamples[b] = 0;
+        openSum[b] = 0.0;
+        openMin[b] = Float.MAX_VALUE;
+        openMax[b] = 0f;
+        openGal[b] = 0f;
+    }
+
+    private void fold(int b, float gpm, float gal) {
+        openSamples[b]++;
+        openSum[b] += gpm;
+        openMin[b] = Math.min(openMin[b], gpm);
+        openMax[b] = Math.max(openMax[b], gpm);
+        openGal[b] += gal;
+    }
+
+    private void flush(int slot, int ring, int b) {
+        long n = written[slot * 3 + ring];
+        int at = slot * slotBytes + ringAt[ring] + (int) (n % size[ring]) * BUCKET;
+        mem.putLong(at, openStart[b]).putInt(at + 8, openSamples[b])
+           .putFloat(at + 12, openMin[b]).putFloat(at + 16, openMax[b])
+           .putFloat(at + 20, (float) (openSum[b] / openSamples[b])).putFloat(at + 24, openGal[b]);
+        LONGS.setRelease(written, slot * 3 + ring, n + 1);
+    }
+
+    // ---- Readers (any thread) -----------------------------------------------
+    /** Bucket totals of {@code ring} (SECONDS or MINUTES) that start in [fromMs, toMs). */
+    public Summary summarize(int slot, int ring, long fromMs, long toMs) {
+        Summary s = new Summary();
+        long c1 = (long) LONGS.getAcquire(written, slot * 3 + ring);
+        int cap = size[ring];
+        double sum = 0.0;
+        // Newest first, stop at the first bucket before the range (buckets are in time order)
+        for (long i = c1 - 1; i >= Math.max(0, c1 - cap); i--) {
+            int at = slot * slotBytes + ringAt[ring] + (int) (i % cap) * BUCKET;
+            long start = mem.getLong(at);
+            int samples = mem.getInt(at + 8);
+            float min = mem.getFloat(at + 12), max = mem.getFloat(at + 16), mean = mem.getFloat(at + 20), gal = mem.getFloat(at + 24);
+            if ((long) LONGS.getAcquire(written, slot * 3 + ring) - cap >= i) break; // lapped while reading
+            if (start >= toMs) continue;
+            if (start < fromMs) break;
+            s.buckets++;
+            s.samples += samples;
+            s.minGpm = Math.min(s.minGpm, min);
+            s.maxGpm = Math.max(s.maxGpm, max);
+            sum += (double) mean * samples;
+            s.gallons += gal;
+        }
+        s.meanGpm = s.samples == 0 ? 0.0 : sum / s.samples;
+        if (s.samples == 0) s.minGpm = 0.0;
+        return s;
+    }
+
+    /** Copies up to {@code timeMs.length} newest raw samples, oldest first; returns how many. */
+    public int raw(int slot, long[] timeMs, float[] gallons, float[] gpm) {
+        long c1 = (long) LONGS.getAcquire(written, slot * 3 + RAW);
+        int cap = size[RAW];
+        long from = Math.max(Math.max(0, c1 - cap), c1 - timeMs.length);
+        int n = 0;
+        for (long i = from; i < c1; i++, n++) {
+            int at = slot * slotBytes + ringAt[RAW] + (int) (i % cap) * SAMPLE;
+            timeMs[n] = mem.getLong(at);
+            gallons[n] = mem.getFloat(at + 8);
+            gpm[n] = mem.getFloat(at + 12);
+        }
+        // Drop the oldest ones the writer overwrote meanwhile
+        long lapped = (long) LONGS.getAcquire(written, slot * 3 + RAW) - cap + 1 - from;
+        if (lapped <= 0) return n;
+        int drop = (int) Math.min(n, lapped);
+        System.arraycopy(timeMs, drop, timeMs, 0, n - drop);
+        System.arraycopy(gallons, drop, gallons, 0, n - drop);
+        System.arraycopy(gpm, drop, gpm, 0, n - drop);
+        return n - drop;
+    }
+
+    /** Reads the raw ring of {@code slot} in order, from the oldest sample it still holds, e.g. to archive every sample. */
+    public Cursor cursor(int slot) { return new Cursor(slot, Math.max(0, (long) LONGS.getAcquire(written, slot * 3 + RAW) - size[RAW])); }
+
+    /** Position in one pump's raw ring; single reader, samples the writer laps first are counted, not seen. */
+    public final class Cursor {
+        private final int slot;
+        private long next;
+        private long lost;
+
+        private Cursor(int slot, long next) {
+            this.slot = slot;
+            this.next = next;
+        }
+
+        /** Copies the samples written since the last read, oldest first, up to the arrays' length; returns how many. */
+        public int read(long[] timeMs, float[] gallons, float[] gpm) {
+            long c1 = (long) LONGS.getAcquire(written, slot * 3 + RAW);
+            int cap = size[RAW];
+            long from = Math.max(next, c1 - cap);
+            long to = Math.min(c1, from + timeMs.length);
+            int n = 0;
+            for (long i = from; i < to; i++, n++) {
+                int at = slot * slotBytes + ringAt[RAW] + (int) (i % cap) * SAMPLE;
+                timeMs[n] = mem.getLong(at);
+                gallons[n] = mem.getFloat(at + 8);
+                gpm[n] = mem.getFloat(at + 12);
+            }
+            long drop = Math.max(0, Math.min(n, (long) LONGS.getAcquire(written, slot * 3 + RAW) - cap + 1 - from));
+            lost += from - next + drop;
+            next = to;
+            if (drop == 0) return n;
+            int d = (int) drop;
+            System.arraycopy(timeMs, d, timeMs, 0, n - d);
+            System.arraycopy(gallons, d, gallons, 0, n - d);
+            System.arraycopy(gpm, d, gpm, 0, n - d);
+            return n - d;
+        }
+
+        public int slot() { return slot; }
+        /** Samples overwritten before this cursor got to them. */
+        public long lost() { return lost; }
+    }
+
+    /**
+     * Findings over the last {@code minutes} (closed buckets only): pumps whose mean flow is under
+     * 75% of the station median, and seconds mid-flow under half the pump's own mean.
+     */
+    public List<String> diagnose(long nowMs, int minutes) {
+        int pumps = pumps();
+        long from = nowMs - minutes * 60_000L;
+        double[] mean = new double[pumps];
+        List<Double> active = new ArrayList<>();
+        for (int i = 0; i < pumps; i++) {
+            Summary s = summarize(i, MINUTES, from, Long.MAX_VALUE);
+            mean[i] = s.samples == 0 ? Double.NaN : s.meanGpm;
+            if (s.samples > 0) active.add(s.meanGpm);
+        }
+        List<String> out = new ArrayList<>();
+        if (active.isEmpty()) return out;
+        active.sort(null);
+        double median = active.get(active.size() / 2);
+        for (int i = 0; i < pumps; i++) {
+            if (Double.isNaN(mean[i])) continue;
+            if (active.size() > 1 && mean[i] < SLOW_RATIO * median) {
+                out.add(String.format(Locale.US, "%s slow: %.2f gpm vs station median %.2f", names[i], mean[i], median));
+            }
+            int dips = countDips(i, from, DIP_RATIO * mean[i]);
+            if (dips > 0) {
+                out.add(String.format(Locale.US, "%s flow dips: %d s under %.2f gpm", names[i], dips, DIP_RATIO * mean[i]));
+            }
+        }
+        return out;
+    }
+
+    // Slow seconds with steady flow on both sides (back-to-back seconds), so the ramp at the start
+    // of a sale and the taper before the nozzle shuts off are not dips
+    private int countDips(int slot, long fromMs, double limit) {
+        long c1 = (long) LONGS.getAcquire(written, slot * 3 + SECONDS);
+        int cap = size[SECONDS];
+        int dips = 0, run = 0;
+        boolean steadyBefore = false;
+        long prevStart = Long.MIN_VALUE;
+        for (long i = Math.max(0, c1 - cap); i < c1; i++) {
+            int at = slot * slotBytes + ringAt[SECONDS] + (int) (i % cap) * BUCKET;
+            long start = mem.getLong(at);
+            if (start < fromMs) continue;
+            if (start - prevStart != 1_000L) { steadyBefore = false; run = 0; } // a gap ends any run
+            prevStart = start;
+            if (mem.getFloat(at + 20) < limit) {
+                run++;
+            } else {
+                if (steadyBefore) dips += run;
+                steadyBefore = true;
+                run = 0;
+            }
+        }
+        return dips;
+    }
+
+    /** Totals over a time range of buckets. */
+    public static final class Summary {
+        public int buckets;
+        public long samples;
+        public double minGpm = Double.MAX_VALUE;
+        public double maxGpm;
+        public double meanGpm;
+        public double gallons;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d samples in %d buckets, gpm min %.2f / mean %.2f / max %.2f, %.3f gal",
+                    samples, buckets, minGpm, meanGpm, maxGpm, gallons);
+        }
+    }
+}
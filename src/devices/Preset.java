@@ -0,0 +1,49 @@
+package devices;
+
+import java.util.Locale;
+
+/*Preset Sale
+* Customer picks an amount up front, either dollars or gallons.
+* Wire form (screen event suffix):  USD:20.00  |  GAL:5.000
+* */
+
+public final class Preset {
+    public enum Kind { DOLLARS, GALLONS }
+
+    public final Kind kind;
+    public final double amount;
+
+    public Preset(Kind kind, double amount) {
+        if (!(amount > 0.0)) throw new IllegalArgumentException("preset must be > 0: " + amount);
+        this.kind = kind;
+        this.amount = amount;
+    }
+
+    //null when the text is not a valid preset
+    public static Preset parse(String s) {
+        if (s == null) return null;
+        String t = s.trim().toUpperCase(Locale.ROOT);
+        try {
+            if (t.startsWith("USD:")) return new Preset(Kind.DOLLARS, Double.parseDouble(t.substring(4)));
+            if (t.startsWith("GAL:")) return new Preset(Kind.GALLONS, Double.parseDouble(t.substring(4)));
+        } catch (IllegalArgumentException ignored) {}
+        return null;
+    }
+
+    public double targetGallons(double pricePerGal) {
+        return kind == Kind.GALLONS ? amount : amount / pricePerGal;
+    }
+
+    //What the customer pays, overshoot past the preset is on the station
+    public double chargeDollars(double gallons, double pricePerGal) {
+        double dollars = gallons * pricePerGal;
+        return kind == Kind.DOLLARS ? Math.min(dollars, amount) : Math.min(gallons, amount) * pricePerGal;
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.DOLLARS
+                ? String.format(Locale.US, "USD:%.2f", amount)
+                : String.format(Locale.US, "GAL:%.3f", amount);
+    }
+}
@@ -0,0 +1,48 @@
+package devices;
+
+/*Predictive Shutoff
+* After a stop is commanded fuel keeps coming for a while (command latency, valve closing).
+* We model that as "coast seconds" at the rate seen when the stop was sent:
+*     coastGal = gpm / 60 * coastSec
+* and stop as soon as the remaining preset volume is within coastGal.
+*
+* coastSec is learned: every finished preset stop feeds back its real overshoot (EWMA).
+* Near the target the caller should sample fast, nearTarget() says when.
+* */
+
+public final class StopPredictor {
+    private static final double ALPHA = 0.3;
+    private static final double NEAR_HORIZON_S = 1.5;
+
+    private volatile double coastSec;
+
+    public StopPredictor(double initialCoastSec) {
+        this.coastSec = Math.max(0.0, initialCoastSec);
+    }
+
+    public double coastSec() { return coastSec; }
+
+    public double coastGallons(double gpm) { return Math.max(0.0, gpm) / 60.0 * coastSec; }
+
+    //Time to stop now?
+    public boolean shouldStop(double remainingGal, double gpm) {
+        return remainingGal <= coastGallons(gpm);
+    }
+
+    //Within NEAR_HORIZON_S of the stop point at the current rate -> switch to fast sampling
+    public boolean nearTarget(double remainingGal, double gpm) {
+        return remainingGal <= coastGallons(gpm) + Math.max(0.0, gpm) / 60.0 * NEAR_HORIZON_S;
+    }
+
+    /**
+     * Feeds back one real stop.
+     * @param gpmAtStop rate when the stop was commanded
+     * @param coastedGal gallons delivered after the stop was commanded
+     */
+    public void observe(double gpmAtStop, double coastedGal) {
+        if (gpmAtStop <= 0.01 || coastedGal < 0.0) return;
+        double seen = coastedGal / (gpmAtStop / 60.0);
+        if (seen > 5.0) return; // hose trip or detach mixed in, not a clean stop
+        coastSec = coastSec + ALPHA * (seen - coastSec);
+    }
+}
@@ -0,0 +1,130 @@
+package io.archive;
+
+import io.log.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/* Archive Query
+* Statistics of one column over a time range of the flow archive (devices.FlowArchive), e.g. a
+* year of gpm for one pump. Files outside the range are skipped by name (<pump>/<date>.<table>.col),
+* blocks by the footer's time range, and only the time chunk plus the asked column is read.
+* */
+
+
+/* USAGE
+* java -cp out io.archive.ArchiveQuery --pump pump-01 --column gpm --from 2026-01-01 --to 2026-12-31
+* java -cp out io.archive.ArchiveQuery --table sessions --column meanGpm --below 6
+*
+* --dir DIR        archive directory               (default: <-Djournal.dir or journal>/archive)
+* --pump ID        one pump                        (default: all)
+* --table T        flow | sessions                 (default flow)
+* --column C       column to summarize             (default gpm)
+* --from / --to    local date (inclusive) or date-time (2026-03-01T08:00)   (default: everything)
+* --below X        also count rows under X (slow flow)
+* */
+
+
+public final class ArchiveQuery {
+    private static final Log LOG = Log.named("archive");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = parseArgs(args);
+        Path dir = Path.of(opt.getOrDefault("dir",
+                Path.of(System.getProperty("journal.dir", "journal")).resolve("archive").toString()));
+        String table = opt.getOrDefault("table", "flow");
+        String column = opt.getOrDefault("column", "gpm");
+        long from = opt.containsKey("from") ? millis(opt.get("from"), false) : Long.MIN_VALUE;
+        long to = opt.containsKey("to") ? millis(opt.get("to"), true) : Long.MAX_VALUE;
+        double below = opt.containsKey("below") ? Double.parseDouble(opt.get("below")) : Double.NaN;
+
+        List<Path> files = files(dir, opt.get("pump"), table, from, to);
+        Stats s = new Stats(below);
+        long bytesRead = 0, fileBytes = 0;
+        long t0 = System.nanoTime();
+        for (Path f : files) {
+            try (ColumnFile.Reader r = ColumnFile.Reader.open(f)) {
+                r.scan(from, to, new String[] { column }, (t, v) -> s.add(v[0]));
+                bytesRead += r.bytesRead();
+                fileBytes += r.fileBytes();
+            } catch (IOException e) {
+                LOG.warn("skipping %s: %s", f, e.getMessage());
+            }
+        }
+        double ms = (System.nanoTime() - t0) / 1_000_000.0;
+
+        LOG.info("%s.%s: %d rows, min %.3f / mean %.3f / max %.3f",
+                table, column, s.rows, s.rows == 0 ? 0.0 : s.min, s.mean(), s.rows == 0 ? 0.0 : s.max);
+        if (!Double.isNaN(below)) {
+            LOG.info("under %.3f: %d rows (%.2f%%)", below, s.under, s.rows == 0 ? 0.0 : 100.0 * s.under / s.rows);
+        }
+        LOG.info("%d files, read %d of %d bytes in %.1f ms", files.size(), bytesRead, fileBytes, ms);
+    }
+
+    // <dir>/<pump>/<date>.<table>.col whose date may overlap [fromMs, toMs)
+    static List<Path> files(Path dir, String pump, String table, long fromMs, long toMs) throws IOException {
+        List<Path> out = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return out;
+        ZoneId zone = ZoneId.systemDefault();
+        String suffix = "." + table + ".col";
+        try (Stream<Path> pumps = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) pumps.sorted()::iterator) {
+                if (!Files.isDirectory(p) || (pump != null && !p.getFileName().toString().equals(pump))) continue;
+                try (Stream<Path> days = Files.list(p)) {
+                    for (Path f : (Iterable<Path>) days.sorted()::iterator) {
+                        String name = f.getFileName().toString();
+                        if (!name.endsWith(suffix) || !Files.exists(ColumnFile.footerOf(f))) continue; // nothing flushed yet
+                        LocalDate d = LocalDate.parse(name.substring(0, name.length() - suffix.length()));
+                        long start = d.atStartOfDay(zone).toInstant().toEpochMilli();
+                        long end = d.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+                        if (end > fromMs && start < toMs) out.add(f);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private static final class Stats {
+        final double below;
+        long rows, under;
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, sum;
+
+        Stats(double below) { this.below = below; }
+
+        void add(float v) {
+            rows++;
+            sum += v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            if (v < below) under++;
+        }
+
+        double mean() { return rows == 0 ? 0.0 : sum / rows; }
+    }
+
+    // A date (whole day, inclusive) or a local date-time; the range end is exclusive
+    private static long millis(String s, boolean end) {
+        ZoneId zone = ZoneId.systemDefault();
+        if (s.contains("T")) return LocalDateTime.parse(s).atZone(zone).toInstant().toEpochMilli();
+        LocalDate d = LocalDate.parse(s);
+        return (end ? d.plusDays(1) : d).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> m = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("--")) m.put(args[i].substring(2), args[i + 1]);
+        }
+        return m;
+    }
+}
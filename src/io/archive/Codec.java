@@ -0,0 +1,159 @@
+package io.archive;
+
+import java.util.Arrays;
+
+/* Column Codecs
+* Bit-packed encodings for one column chunk of a block (Gorilla-style):
+*
+*   LONG   (timestamps, counters) delta-of-delta:
+*          first value 64 bits, first delta zigzag in 64 bits, then per value the change of the delta
+*          '0' = same delta   '10' + 8 bits   '110' + 13 bits   '1110' + 20 bits   '1111' + 64 bits
+*          Samples on a steady period cost one bit each.
+*   FLOAT  XOR with the previous value's bits:
+*          first value 32 bits, then '0' = same value
+*          '10' + meaningful bits inside the previous value's leading/trailing-zero window
+*          '11' + 5 bits leading zeros + 5 bits (length - 1) + the meaningful bits
+*          Slowly changing readings (gallons, gpm) share sign, exponent and high mantissa bits.
+* */
+
+final class Codec {
+    private Codec() {}
+
+    // ---- LONG: delta of delta --------------------------------------------------
+    static byte[] encodeLongs(long[] v, int n) {
+        BitWriter w = new BitWriter(n * 2 + 32);
+        if (n == 0) return w.toBytes();
+        w.write(v[0], 64);
+        if (n == 1) return w.toBytes();
+        long delta = v[1] - v[0];
+        w.write(zigzag(delta), 64);
+        for (int i = 2; i < n; i++) {
+            long d = v[i] - v[i - 1];
+            long dod = d - delta;
+            delta = d;
+            long z = zigzag(dod);
+            if (dod == 0)              w.write(0b0, 1);
+            else if (z < (1L << 8))    { w.write(0b10, 2);   w.write(z, 8); }
+            else if (z < (1L << 13))   { w.write(0b110, 3);  w.write(z, 13); }
+            else if (z < (1L << 20))   { w.write(0b1110, 4); w.write(z, 20); }
+            else                       { w.write(0b1111, 4); w.write(z, 64); }
+        }
+        return w.toBytes();
+    }
+
+    static void decodeLongs(byte[] b, int n, long[] out) {
+        if (n == 0) return;
+        BitReader r = new BitReader(b);
+        out[0] = r.read(64);
+        if (n == 1) return;
+        long delta = unzigzag(r.read(64));
+        out[1] = out[0] + delta;
+        for (int i = 2; i < n; i++) {
+            long dod;
+            if (r.read(1) == 0)      dod = 0;
+            else if (r.read(1) == 0) dod = unzigzag(r.read(8));
+            else if (r.read(1) == 0) dod = unzigzag(r.read(13));
+            else if (r.read(1) == 0) dod = unzigzag(r.read(20));
+            else                     dod = unzigzag(r.read(64));
+            delta += dod;
+            out[i] = out[i - 1] + delta;
+        }
+    }
+
+    // ---- FLOAT: XOR with the previous value -------------------------------------
+    static byte[] encodeFloats(float[] v, int n) {
+        BitWriter w = new BitWriter(n * 3 + 16);
+        if (n == 0) return w.toBytes();
+        int prev = Float.floatToRawIntBits(v[0]);
+        w.write(prev & 0xFFFFFFFFL, 32);
+        int lead = -1, trail = 0; // window of the last '11' block, none yet
+        for (int i = 1; i < n; i++) {
+            int bits = Float.floatToRawIntBits(v[i]);
+            int x = bits ^ prev;
+            prev = bits;
+            if (x == 0) { w.write(0b0, 1); continue; }
+            int l = Math.min(31, Integer.numberOfLeadingZeros(x)), t = Integer.numberOfTrailingZeros(x);
+            if (lead >= 0 && l >= lead && t >= trail) {
+                w.write(0b10, 2);
+                w.write((x >>> trail) & mask(32 - lead - trail), 32 - lead - trail);
+            } else {
+                lead = l;
+                trail = t;
+                int len = 32 - lead - trail;
+                w.write(0b11, 2);
+                w.write(lead, 5);
+                w.write(len - 1, 5);
+                w.write((x >>> trail) & mask(len), len);
+            }
+        }
+        return w.toBytes();
+    }
+
+    static void decodeFloats(byte[] b, int n, float[] out) {
+        if (n == 0) return;
+        BitReader r = new BitReader(b);
+        int prev = (int) r.read(32);
+        out[0] = Float.intBitsToFloat(prev);
+        int lead = 0, trail = 0;
+        for (int i = 1; i < n; i++) {
+            if (r.read(1) == 0) { out[i] = Float.intBitsToFloat(prev); continue; }
+            if (r.read(1) == 1) {
+                lead = (int) r.read(5);
+                int len = (int) r.read(5) + 1;
+                trail = 32 - lead - len;
+            }
+            int x = (int) (r.read(32 - lead - trail) << trail);
+            prev ^= x;
+            out[i] = Float.intBitsToFloat(prev);
+        }
+    }
+
+    private static long mask(int bits) { return bits >= 64 ? -1L : (1L << bits) - 1; }
+    private static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+    private static long unzigzag(long z) { return (z >>> 1) ^ -(z & 1); }
+
+    // ---- Bits --------------------------------------------------------------------
+    static final class BitWriter {
+        private byte[] buf;
+        private long bitPos = 0;
+
+        BitWriter(int bytes) { buf = new byte[Math.max(16, bytes)]; }
+
+        // Low {@code bits} bits of v, most significant first
+        void write(long v, int bits) {
+            for (int i = bits - 1; i >= 0; ) {
+                int byteAt = (int) (bitPos >>> 3);
+                if (byteAt >= buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                int free = 8 - (int) (bitPos & 7);
+                int take = Math.min(free, i + 1);
+                int chunk = (int) ((v >>> (i + 1 - take)) & ((1 << take) - 1));
+                buf[byteAt] |= (byte) (chunk << (free - take));
+                bitPos += take;
+                i -= take;
+            }
+        }
+
+        byte[] toBytes() { return Arrays.copyOf(buf, (int) ((bitPos + 7) >>> 3)); }
+    }
+
+    static final class BitReader {
+        private final byte[] buf;
+        private long bitPos = 0;
+
+        BitReader(byte[] buf) { this.buf = buf; }
+
+        long read(int bits) {
+            long v = 0;
+            for (int left = bits; left > 0; ) {
+                int b = buf[(int) (bitPos >>> 3)] & 0xFF;
+                int avail = 8 - (int) (bitPos & 7);
+                int take = Math.min(avail, left);
+                int chunk = (b >>> (avail - take)) & ((1 << take) - 1);
+                v = (v << take) | chunk;
+                bitPos += take;
+                left -= take;
+            }
+            return v;
+        }
+    }
+}
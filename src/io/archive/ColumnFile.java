@@ -0,0 +1,410 @@
+package io.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/* Column File
+* Columnar rows (long timeMs, float c1, float c2, ...), for telemetry kept long after the live
+* rings have moved on, in two files:
+*
+*   <name>        [block 0: time chunk | c1 chunk | c2 chunk ...] [block 1 ...] ...   append only
+*   <name>.idx    footer: every block's index entry, plus the open (tail) block's chunks
+*
+* A block holds BLOCK_ROWS rows, each column encoded on its own (Codec: delta-of-delta for time,
+* XOR for floats), so a scan reads the time chunk plus only the columns it asks for. The footer
+* indexes every block: rows, min/max time, and per column the chunk's offset, length and min/max.
+*
+* Rows that do not fill a block yet live in the footer as the tail block: flush() re-encodes the
+* whole tail into a new footer, so the tail grows in place until it reaches BLOCK_ROWS and seals
+* into the data file as a full block. A footer is written to <name>.idx.tmp, forced and renamed
+* over <name>.idx, and a sealed block is forced before the footer that points at it, so a crash
+* at any point leaves the previous footer, which only refers to data already on disk. open()
+* cuts off a block sealed after it.
+* */
+
+
+/* USAGE
+* try (ColumnFile.Writer w = ColumnFile.Writer.open(path, "gallons", "gpm")) {
+*     w.append(timeMs, gal, gpm);                        // buffered, sealed a block at a time
+*     w.flush();                                         // now and then: the open rows become durable
+* }
+* ColumnFile.Reader r = ColumnFile.Reader.open(path);
+* r.scan(fromMs, toMs, new String[] { "gpm" }, (t, v) -> ...);   // v[0] = gpm, reused
+* r.bytesRead()                                                   // what the scans cost
+* */
+
+
+public final class ColumnFile {
+    static final int MAGIC = 0x32464F43; // "COF2"
+    public static final int BLOCK_ROWS = 4096;
+    private static final int BLOCK_ENTRY = 20;  // rows, minT, maxT
+    private static final int CHUNK_ENTRY = 20;  // offset, length, min, max
+
+    private ColumnFile() {}
+
+    /** Gets each row of a scan; {@code values} is reused between rows. */
+    public interface RowSink { void row(long timeMs, float[] values); }
+
+    /** The footer that goes with data file {@code file}; no footer means nothing written yet. */
+    public static Path footerOf(Path file) { return file.resolveSibling(file.getFileName() + ".idx"); }
+
+    static final class Block {
+        int rows;
+        long minT, maxT;
+        long[] offset;  // per column, 0 = time; for the tail, into its chunk bytes in the footer
+        int[] length;
+        float[] min, max;
+        byte[][] inline; // the tail's chunks, null for a block in the data file
+
+        Block(int cols) {
+            offset = new long[cols];
+            length = new int[cols];
+            min = new float[cols];
+            max = new float[cols];
+        }
+
+        // Encodes rows [0, rows) of time/vals; offsets start at {@code at}
+        static Block encode(long[] time, float[][] vals, int rows, long at) {
+            Block b = new Block(vals.length + 1);
+            b.rows = rows;
+            b.minT = Long.MAX_VALUE;
+            b.maxT = Long.MIN_VALUE;
+            for (int i = 0; i < rows; i++) { b.minT = Math.min(b.minT, time[i]); b.maxT = Math.max(b.maxT, time[i]); }
+            b.inline = new byte[vals.length + 1][];
+            b.inline[0] = Codec.encodeLongs(time, rows);
+            for (int c = 0; c < vals.length; c++) {
+                float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+                for (int i = 0; i < rows; i++) { lo = Math.min(lo, vals[c][i]); hi = Math.max(hi, vals[c][i]); }
+                b.min[c + 1] = lo;
+                b.max[c + 1] = hi;
+                b.inline[c + 1] = Codec.encodeFloats(vals[c], rows);
+            }
+            for (int c = 0; c < b.inline.length; c++) {
+                b.offset[c] = at;
+                b.length[c] = b.inline[c].length;
+                at += b.length[c];
+            }
+            return b;
+        }
+
+        long bytes() {
+            long n = 0;
+            for (int len : length) n += len;
+            return n;
+        }
+    }
+
+    // ---- Writer ----------------------------------------------------------------
+    public static final class Writer implements AutoCloseable {
+        private final Path footer;
+        private final FileChannel ch;
+        private final String[] columns;
+        private final List<Block> blocks;
+        private long dataBytes;
+        private final long[] time = new long[BLOCK_ROWS];
+        private final float[][] vals;
+        private int rows = 0;
+        private boolean dirty = false; // rows appended since the last footer
+
+        private Writer(Path file, FileChannel ch, String[] columns, List<Block> blocks, long dataBytes) {
+            this.footer = footerOf(file);
+            this.ch = ch;
+            this.columns = columns;
+            this.blocks = blocks;
+            this.dataBytes = dataBytes;
+            this.vals = new float[columns.length][BLOCK_ROWS];
+        }
+
+        /** Opens {@code file} to append, creating it; an existing file must have the same columns. */
+        public static Writer open(Path file, String... columns) throws IOException {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Footer f = Footer.read(footerOf(file));
+            if (f != null && !Arrays.equals(f.columns, columns)) {
+                throw new IOException(file + " has columns " + Arrays.toString(f.columns) + ", not " + Arrays.toString(columns));
+            }
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long covered = f == null ? 0L : f.dataBytes;
+                if (f == null && ch.size() > 0) throw new IOException("data without a footer");
+                if (ch.size() < covered) throw new IOException("data shorter than its footer");
+                if (ch.size() > covered) ch.truncate(covered); // sealed, but the crash came before its footer
+                Writer w = new Writer(file, ch, columns.clone(), f == null ? new ArrayList<>() : f.blocks, covered);
+                if (f != null && f.tail != null) w.reopen(f.tail);
+                return w;
+            } catch (IOException e) {
+                ch.close();
+                throw e;
+            }
+        }
+
+        // The footer's tail block back into the buffers, appends go on after it
+        private void reopen(Block tail) {
+            Codec.decodeLongs(tail.inline[0], tail.rows, time);
+            for (int c = 0; c < columns.length; c++) Codec.decodeFloats(tail.inline[c + 1], tail.rows, vals[c]);
+            rows = tail.rows;
+        }
+
+        public void append(long timeMs, float... values) {
+            if (rows == BLOCK_ROWS) sealNow(); // the last seal failed, the block is still here
+            time[rows] = timeMs;
+            for (int c = 0; c < columns.length; c++) vals[c][rows] = values[c];
+            dirty = true;
+            if (++rows == BLOCK_ROWS) sealNow();
+        }
+
+        private void sealNow() {
+            try {
+                seal();
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }
+
+        public long rowsWritten() {
+            long n = rows;
+            for (Block b : blocks) n += b.rows;
+            return n;
+        }
+
+        /** Makes every appended row durable: a new footer carries the open block. No-op if nothing came since. */
+        public void flush() throws IOException {
+            if (!dirty) return;
+            if (rows == BLOCK_ROWS) { seal(); return; }
+            writeFooter(rows > 0 ? Block.encode(time, vals, rows, 0L) : null);
+        }
+
+        // Full block to the data file, forced before the footer that indexes it
+        private void seal() throws IOException {
+            Block b = Block.encode(time, vals, rows, dataBytes);
+            long at = dataBytes;
+            for (byte[] chunk : b.inline) {
+                ByteBuffer buf = ByteBuffer.wrap(chunk);
+                while (buf.hasRemaining()) at += ch.write(buf, at);
+            }
+            ch.force(false);
+            b.inline = null;
+            blocks.add(b);
+            dataBytes = at;
+            rows = 0;
+            writeFooter(null);
+        }
+
+        private void writeFooter(Block tail) throws IOException {
+            ByteBuffer f = Footer.encode(columns, blocks, dataBytes, tail);
+            Path tmp = footer.resolveSibling(footer.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (f.hasRemaining()) out.write(f);
+                out.force(false);
+            }
+            Files.move(tmp, footer, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory(footer.toAbsolutePath().getParent());
+            dirty = false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                ch.close();
+            }
+        }
+    }
+
+    // The rename itself is only durable once the directory is; not every platform can force one
+    private static void forceDirectory(Path dir) {
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        } catch (IOException ignored) {}
+    }
+
+    // ---- Reader ----------------------------------------------------------------
+    public static final class Reader implements AutoCloseable {
+        private final FileChannel ch;
+        private final String[] columns;
+        private final List<Block> blocks; // sealed, then the tail if it has rows
+        private final long fileBytes;
+        private long bytesRead = 0;
+
+        private Reader(FileChannel ch, Footer f, long fileBytes) {
+            this.ch = ch;
+            this.columns = f.columns;
+            this.blocks = f.blocks;
+            if (f.tail != null) blocks.add(f.tail);
+            this.fileBytes = fileBytes;
+        }
+
+        /** Reads what the footer says is there; a writer may go on appending meanwhile. */
+        public static Reader open(Path file) throws IOException {
+            Path idx = footerOf(file);
+            Footer f = Footer.read(idx);
+            if (f == null) throw new IOException("not a column file (no footer)");
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                if (ch.size() < f.dataBytes) throw new IOException("data shorter than its footer");
+                return new Reader(ch, f, f.dataBytes + Files.size(idx));
+            } catch (IOException e) {
+                ch.close();
+                throw e;
+            }
+        }
+
+        public String[] columns() { return columns.clone(); }
+        public long rows() { long n = 0; for (Block b : blocks) n += b.rows; return n; }
+        public long minTime() { return blocks.isEmpty() ? Long.MAX_VALUE : blocks.get(0).minT; }
+        public long maxTime() { return blocks.isEmpty() ? Long.MIN_VALUE : blocks.get(blocks.size() - 1).maxT; }
+        /** Data plus footer. */
+        public long fileBytes() { return fileBytes; }
+        /** Chunk bytes read by scans so far (the footer is read once on open). */
+        public long bytesRead() { return bytesRead; }
+
+        /** Rows with timeMs in [fromMs, toMs); values in the order of {@code wanted}. Returns the rows. */
+        public long scan(long fromMs, long toMs, String[] wanted, RowSink sink) throws IOException {
+            int[] cols = new int[wanted.length];
+            for (int i = 0; i < wanted.length; i++) {
+                cols[i] = Arrays.asList(columns).indexOf(wanted[i]) + 1;
+                if (cols[i] == 0) throw new IllegalArgumentException("no column " + wanted[i]);
+            }
+            long[] t = new long[BLOCK_ROWS];
+            float[][] v = new float[wanted.length][BLOCK_ROWS];
+            float[] row = new float[wanted.length];
+            long n = 0;
+            for (Block b : blocks) {
+                if (b.maxT < fromMs || b.minT >= toMs) continue;
+                Codec.decodeLongs(readChunk(b, 0), b.rows, t);
+                for (int i = 0; i < cols.length; i++) Codec.decodeFloats(readChunk(b, cols[i]), b.rows, v[i]);
+                for (int r = 0; r < b.rows; r++) {
+                    if (t[r] < fromMs || t[r] >= toMs) continue;
+                    for (int i = 0; i < cols.length; i++) row[i] = v[i][r];
+                    sink.row(t[r], row);
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        private byte[] readChunk(Block b, int col) throws IOException {
+            bytesRead += b.length[col];
+            if (b.inline != null) return b.inline[col];
+            byte[] bytes = new byte[b.length[col]];
+            readFully(ch, ByteBuffer.wrap(bytes), b.offset[col]);
+            return bytes;
+        }
+
+        @Override
+        public void close() throws IOException { ch.close(); }
+    }
+
+    // ---- Footer ----------------------------------------------------------------
+    //   int MAGIC, long dataBytes, int ncols, ncols x (short len, UTF-8 name), int nblocks,
+    //   nblocks x entry, then the tail: entry (rows 0 if none) and its chunk bytes, then int CRC32
+    //   entry = int rows, long minT, long maxT, (ncols + 1) x (long offset, int length, float min, float max)
+    private static final class Footer {
+        String[] columns;
+        List<Block> blocks;
+        Block tail;      // null if no open rows
+        long dataBytes;  // the data file up to here is indexed, anything after it is not
+
+        // null if there is no footer yet
+        static Footer read(Path idx) throws IOException {
+            if (!Files.exists(idx)) return null;
+            ByteBuffer f = ByteBuffer.wrap(Files.readAllBytes(idx)).order(ByteOrder.LITTLE_ENDIAN);
+            int end = f.limit() - 4;
+            if (end < 20 || f.getInt(end) != crc(f, end) || f.getInt(0) != MAGIC) throw new IOException("not a column file (footer)");
+            try {
+                f.position(4);
+                Footer out = new Footer();
+                out.dataBytes = f.getLong();
+                out.columns = new String[f.getInt()];
+                for (int c = 0; c < out.columns.length; c++) {
+                    byte[] name = new byte[f.getShort()];
+                    f.get(name);
+                    out.columns[c] = new String(name, java.nio.charset.StandardCharsets.UTF_8);
+                }
+                int n = f.getInt();
+                out.blocks = new ArrayList<>(n + 1);
+                for (int i = 0; i < n; i++) out.blocks.add(entry(f, out.columns.length + 1));
+                Block t = entry(f, out.columns.length + 1);
+                if (t.rows > 0) {
+                    t.inline = new byte[out.columns.length + 1][];
+                    for (int c = 0; c < t.inline.length; c++) {
+                        t.inline[c] = new byte[t.length[c]];
+                        f.get(t.inline[c]);
+                    }
+                    out.tail = t;
+                }
+                return out;
+            } catch (java.nio.BufferUnderflowException | NegativeArraySizeException e) {
+                throw new IOException("not a column file (footer)");
+            }
+        }
+
+        private static Block entry(ByteBuffer f, int cols) {
+            Block b = new Block(cols);
+            b.rows = f.getInt();
+            b.minT = f.getLong();
+            b.maxT = f.getLong();
+            for (int c = 0; c < cols; c++) {
+                b.offset[c] = f.getLong();
+                b.length[c] = f.getInt();
+                b.min[c] = f.getFloat();
+                b.max[c] = f.getFloat();
+            }
+            return b;
+        }
+
+        static ByteBuffer encode(String[] columns, List<Block> blocks, long dataBytes, Block tail) {
+            int size = 20;
+            byte[][] names = new byte[columns.length][];
+            for (int c = 0; c < columns.length; c++) {
+                names[c] = columns[c].getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                size += 2 + names[c].length;
+            }
+            int entry = BLOCK_ENTRY + (columns.length + 1) * CHUNK_ENTRY;
+            size += (blocks.size() + 1) * entry + (tail == null ? 0 : (int) tail.bytes()) + 4;
+            ByteBuffer f = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            f.putInt(MAGIC).putLong(dataBytes).putInt(columns.length);
+            for (byte[] name : names) f.putShort((short) name.length).put(name);
+            f.putInt(blocks.size());
+            for (Block b : blocks) put(f, b, columns.length + 1);
+            if (tail == null) {
+                f.position(f.position() + entry); // rows 0
+            } else {
+                put(f, tail, columns.length + 1);
+                for (byte[] chunk : tail.inline) f.put(chunk);
+            }
+            f.putInt(crc(f, f.position()));
+            return f.flip();
+        }
+
+        private static void put(ByteBuffer f, Block b, int cols) {
+            f.putInt(b.rows).putLong(b.minT).putLong(b.maxT);
+            for (int c = 0; c < cols; c++) f.putLong(b.offset[c]).putInt(b.length[c]).putFloat(b.min[c]).putFloat(b.max[c]);
+        }
+
+        private static int crc(ByteBuffer b, int end) {
+            CRC32 crc = new CRC32();
+            crc.update(b.slice(0, end));
+            return (int) crc.getValue();
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) {
+            int k = ch.read(buf, at);
+            if (k < 0) throw new IOException("chunk past end of file");
+            at += k;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package io.bus;
+
+import io.log.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Card Auth
+* One client for the card server shared by every pump position: authorize() queues the tap and
+* waits; a single sender thread takes what queued up within auth.windowMs (and whatever piled up
+* while the previous batch was out) and sends it as one message,
+*
+*   CARDSERVER|MAUTH|MAIN|<id>:<cc>,<id>:<cc>,...     ->   MAIN|REPLY|CARDSERVER|"MAUTH:<id>=YES,<id>=NO,..."
+*
+* then completes each waiter with its own answer. Ids are per request, so the same card tapped at
+* two pumps gets two answers, and a late reply to a batch that timed out is recognised and skipped.
+* A card server that answers MAUTH with ERR:UNKNOWN_COMMAND gets the plain one-per-tap AUTH, and
+* MAUTH is tried again after auth.reprobeMs (it may have been upgraded). Any other reply that is
+* not MAUTH only sends that one batch tap by tap.
+* */
+
+
+/* USAGE
+* CardAuth auth = new CardAuth(dm.link("cardserver"));
+* String reply = auth.authorize("4", Duration.ofSeconds(1));   // MAIN|REPLY|CARDSERVER|"AUTH:YES", any thread
+* auth.toString()                                              // requests, batches, largest batch
+*
+* -Dauth.windowMs=5  -Dauth.maxBatch=32  -Dauth.timeoutMs=1000   (one round trip to the card server)
+* -Dauth.reprobeMs=600000                                        (MAUTH again after an unknown-command reply)
+* */
+
+
+public final class CardAuth implements AutoCloseable {
+    private static final Log LOG = Log.named("auth");
+    private static final String MAUTH = "MAUTH:";
+    private static final String UNKNOWN = "ERR:UNKNOWN_COMMAND";
+    private static final long REPROBE_NS = Long.getLong("auth.reprobeMs", 600_000L) * 1_000_000L;
+    private static final Log.Limit FAIL_LIMIT = Log.limit(1);
+
+    private final DeviceLink link;
+    private final long windowNs;
+    private final int maxBatch;
+    private final Duration roundTrip;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Thread sender;
+    private volatile boolean batched = true;
+    private long unbatchedAt; // sender thread, when the card server last refused MAUTH
+    private volatile boolean closed = false;
+    // Stats, sender thread writes
+    private volatile long requests, batches, largest;
+
+    private static final class Pending {
+        final long id;
+        final String cc;
+        final CompletableFuture<String> reply = new CompletableFuture<>();
+
+        Pending(long id, String cc) {
+            this.id = id;
+            this.cc = cc;
+        }
+    }
+
+    public CardAuth(DeviceLink link) {
+        this(link, Long.getLong("auth.windowMs", 5L), Integer.getInteger("auth.maxBatch", 32),
+                Duration.ofMillis(Long.getLong("auth.timeoutMs", 1_000L)));
+    }
+
+    public CardAuth(DeviceLink link, long windowMs, int maxBatch, Duration roundTrip) {
+        this.link = link;
+        this.windowNs = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.roundTrip = roundTrip;
+        this.sender = new Thread(this::sendLoop, "card-auth");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /** The card server's answer for {@code cc}, in the single-AUTH reply form; throws like DeviceLink.request on timeout. */
+    public String authorize(String cc, Duration timeout) throws IOException {
+        if (closed) throw new IOException("CardAuth closed");
+        Pending p = new Pending(nextId.getAndIncrement(), cc.trim());
+        queue.add(p);
+        try {
+            return p.reply.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            p.reply.cancel(false); // still sent if already taken, the answer is dropped
+            throw new SocketTimeoutException("card auth timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for card auth");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // ---- Sender thread ---------------------------------------------------------
+    private void sendLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNs;
+                while (batch.size() < maxBatch) {
+                    long left = deadline - System.nanoTime();
+                    Pending p = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (p == null) break;
+                    batch.add(p);
+                }
+                batch.removeIf(p -> p.reply.isDone()); // gave up waiting while queued
+                if (!batch.isEmpty()) send(batch);
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                LOG.warn(FAIL_LIMIT, "card auth sender: %s", e.toString());
+                for (Pending p : batch) p.reply.completeExceptionally(new IOException("card auth failed", e));
+            } finally {
+                batch.clear();
+            }
+        }
+        for (Pending p; (p = queue.poll()) != null; ) p.reply.completeExceptionally(new IOException("CardAuth closed"));
+    }
+
+    private void send(List<Pending> batch) {
+        requests += batch.size();
+        batches++;
+        largest = Math.max(largest, batch.size());
+        try {
+            if (!batched && System.nanoTime() - unbatchedAt >= REPROBE_NS) batched = true; // try MAUTH again
+            if (batched && sendBatch(batch)) return;
+            for (Pending p : batch) {
+                if (!p.reply.isDone()) p.reply.complete(link.request("CARDSERVER|AUTH|MAIN|" + p.cc, roundTrip));
+            }
+        } catch (IOException e) {
+            for (Pending p : batch) p.reply.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            // A bug must not take the sender down with it: fail this batch, keep serving the others
+            LOG.warn(FAIL_LIMIT, "card auth batch failed: %s", e.toString());
+            for (Pending p : batch) p.reply.completeExceptionally(new IOException("card auth failed", e));
+        }
+    }
+
+    // False if this batch has to go tap by tap
+    private boolean sendBatch(List<Pending> batch) throws IOException {
+        StringBuilder line = new StringBuilder("CARDSERVER|MAUTH|MAIN|");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) line.append(',');
+            line.append(batch.get(i).id).append(':').append(batch.get(i).cc);
+        }
+        long deadline = System.nanoTime() + roundTrip.toNanos();
+        String reply = link.request(line.toString(), roundTrip);
+        Map<Long, String> answers;
+        // A late reply to an earlier batch that timed out comes first, ours is behind it
+        while ((answers = parse(reply)) != null && !answers.isEmpty() && answers.keySet().stream().allMatch(id -> id < batch.get(0).id)) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) throw new SocketTimeoutException("Read timed out");
+            reply = link.poll(Duration.ofNanos(left));
+        }
+        if (answers == null) {
+            if (reply.contains(UNKNOWN)) {
+                batched = false;
+                unbatchedAt = System.nanoTime();
+                LOG.warn("card server does not batch (%s), one AUTH per tap for %d s", reply, REPROBE_NS / 1_000_000_000L);
+            } else {
+                LOG.warn(FAIL_LIMIT, "unexpected reply to MAUTH (%s), this batch of %d goes tap by tap", reply, batch.size());
+            }
+            return false;
+        }
+        for (Pending p : batch) {
+            String a = answers.get(p.id);
+            if (a == null) p.reply.completeExceptionally(new IOException("no answer for card auth " + p.id));
+            else p.reply.complete("MAIN|REPLY|CARDSERVER|\"AUTH:" + a + "\"");
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("batch of %d answered: %s", batch.size(), reply);
+        return true;
+    }
+
+    // MAIN|REPLY|CARDSERVER|"MAUTH:17=YES,18=NO" -> {17=YES, 18=NO}; null if not a MAUTH reply
+    static Map<Long, String> parse(String reply) {
+        int at = reply.indexOf(MAUTH);
+        if (at < 0) return null;
+        int end = reply.indexOf('"', at);
+        String body = reply.substring(at + MAUTH.length(), end < 0 ? reply.length() : end);
+        Map<Long, String> out = new HashMap<>();
+        for (String item : body.split(",")) {
+            int eq = item.indexOf('=');
+            if (eq <= 0) continue;
+            try {
+                out.put(Long.parseLong(item.substring(0, eq).trim()), item.substring(eq + 1).trim());
+            } catch (NumberFormatException ignore) {}
+        }
+        return out;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        sender.interrupt();
+    }
+
+    @Override
+    public String toString() {
+        long b = batches;
+        return String.format(java.util.Locale.US, "%d auths in %d round trips (%.2f per trip, largest %d)%s",
+                requests, b, b == 0 ? 0.0 : (double) requests / b, largest, batched ? "" : ", unbatched");
+    }
+}
@@ -4,14 +4,37 @@ import java.io.*;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/* Request/reply link to one device port.
+* After subscribe() the link also carries pushes: a reader thread splits
+*   MAIN|PUSH|<DEVICE>|"..."   -> every subscriber for <DEVICE> (several panes may share one link)
+*   everything else           -> the reply to the pending request()
+* Push handlers run on the reader thread and must not block or call request() on this link.
+* */
 
 public final class DeviceLink implements AutoCloseable {
     private static final String PROTO_VERSION = "v1";
+    private static final String PUSH_PREFIX = "MAIN|PUSH|";
+    private static final String EOF = new String("EOF"); // identity sentinel, the reader hit end of stream
+
     private final Socket socket;
     private final BufferedReader in;
     private final BufferedWriter out;
     private final String deviceId;
 
+    private final Map<String, List<Consumer<String>>> subscribers = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+    private Thread reader; // null until the first subscribe()
+    private volatile boolean eof = false;
+
     public DeviceLink(String host, int port, String expectedDeviceId) throws IOException {
         this.socket = new Socket();
         this.socket.connect(new InetSocketAddress(host, port), /*connectTimeoutMs*/ 3000);
@@ -37,14 +60,82 @@ public final class DeviceLink implements AutoCloseable {
     }
 
     public synchronized String request(String line, Duration timeout) throws IOException {
+        if (reader != null) return awaitReply(line, timeout);
         writeLine(line);
         String resp = readLine(timeout);
         if (resp == null) throw new EOFException("Device closed connection");
         return resp;
     }
 
+    /**
+     * Sends {@code <device>|SUBSCRIBE|MAIN|None} and routes every later {@code MAIN|PUSH|<device>|...}
+     * line to {@code onPush}. The server pushes the current state right after the reply.
+     */
+    public synchronized String subscribe(String device, Consumer<String> onPush) throws IOException {
+        List<Consumer<String>> hs = subscribers.computeIfAbsent(device, d -> new CopyOnWriteArrayList<>());
+        hs.add(onPush);
+        if (reader == null) {
+            reader = new Thread(this::readLoop, deviceId + "-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+        // Always re-sent: the server answers with a fresh push of the current state for the new handler
+        return request(device + "|SUBSCRIBE|MAIN|None", Duration.ofSeconds(1));
+    }
+
+    private String awaitReply(String line, Duration timeout) throws IOException {
+        if (eof) throw new EOFException("Device closed connection");
+        replies.clear(); // a reply that arrived after its request timed out
+        writeLine(line);
+        return takeReply(timeout);
+    }
+
+    private String takeReply(Duration timeout) throws IOException {
+        String resp;
+        try {
+            resp = replies.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for reply");
+        }
+        if (resp == null) throw new SocketTimeoutException("Read timed out");
+        if (resp == EOF) throw new EOFException("Device closed connection");
+        return resp;
+    }
+
+    private void readLoop() {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.startsWith(PUSH_PREFIX)) {
+                    replies.add(line);
+                    continue;
+                }
+                int end = line.indexOf('|', PUSH_PREFIX.length());
+                String device = end < 0 ? "" : line.substring(PUSH_PREFIX.length(), end);
+                List<Consumer<String>> hs = subscribers.get(device);
+                if (hs == null) continue;
+                for (Consumer<String> h : hs) {
+                    try { h.accept(line); } catch (RuntimeException ignored) {}
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            eof = true;
+            replies.add(EOF);
+        }
+    }
+
     public synchronized void send(String line) throws IOException { writeLine(line); }
 
+    /** Next reply without sending anything, e.g. the real one behind a late reply to a timed-out request. */
+    public synchronized String poll(Duration timeout) throws IOException {
+        if (reader != null) return takeReply(timeout);
+        String resp = readLine(timeout);
+        if (resp == null) throw new EOFException("Device closed connection");
+        return resp;
+    }
+
     private void writeLine(String line) throws IOException {
         out.write(line);
         out.write('\n');
@@ -0,0 +1,293 @@
+package io.bus;
+
+import io.clock.Clock;
+import io.log.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Store and Forward
+* Offline approvals for when the card server is slow or down. A tap whose AUTH fails (timeout,
+* lost link) is approved locally, capped at the floor limit (-Dsaf.floorUsd), once the approval is
+* on disk; the sale amount follows when the session closes. A forwarder thread then sends each
+* finished offline sale to the card server as an advice, at most -Dsaf.perSecond, backing off while
+* the server is still unreachable:
+*
+*   CARDSERVER|ADVICE|MAIN|<session>:<cc>:<cents>   ->   MAIN|REPLY|CARDSERVER|"ADVICE:<session>=YES|NO"
+*
+* After -Dsaf.failures auth failures in a row taps go straight to offline for -Dsaf.offlineMs (or
+* until an advice gets through), so a dead processor costs each customer nothing, not a timeout.
+* Limits on the exposure: one unforwarded offline sale per card, at most -Dsaf.maxPending in all.
+*
+* The log (saf.log) is text, one fsynced line per event, replayed on open:
+*   A <session> <cc> <pump> <approvedMs>     approved offline
+*   S <session> <cents>                      session closed (0 = nothing sold, not forwarded)
+*   F <session> <YES|NO|VOID>                forwarded, NO = the issuer refused it (a loss)
+* It is emptied whenever nothing is pending. Sessions a crash left without an S line are settled
+* by the caller on start (unsettled(), then complete() with what the journal charged).
+*
+* Offline windows and the forwarder's pacing (the gap between advices, the backoff) run on the
+* caller's Clock, like the auth path. The forwarder never sleeps on it: a clock timer wakes it, so
+* under a VirtualClock it is not a driving party. Only the socket read timeout is wall time.
+* */
+
+
+/* USAGE
+* StoreAndForward saf = StoreAndForward.open(journalDir.resolve("saf.log"), dm.link("cardserver-saf"), CLOCK);
+* if (saf.online(now)) try { reply = cardAuth.authorize(cc, t); saf.authOk(); } catch (IOException e) { saf.authFailed(now); }
+* if (reply == null && saf.approve(sessionId, cc, "pump-01", now)) ...   // fuel up to saf.floorUsd()
+* saf.complete(sessionId, cents);                                        // when the session closes
+*
+* -Dsaf.floorUsd=50  -Dsaf.maxPending=200  -Dsaf.perSecond=5  -Dsaf.failures=2  -Dsaf.offlineMs=30000
+* */
+
+
+public final class StoreAndForward implements AutoCloseable {
+    private static final Log LOG = Log.named("saf");
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final Path file;
+    private final FileChannel ch;
+    private final DeviceLink link;
+    private final Clock clock;
+    private final double floorUsd = Double.parseDouble(System.getProperty("saf.floorUsd", "50.00"));
+    private final int maxPending = Integer.getInteger("saf.maxPending", 200);
+    private final long gapMs = 1_000L / Math.max(1, Integer.getInteger("saf.perSecond", 5));
+    private final int failuresToOffline = Integer.getInteger("saf.failures", 2);
+    private final long offlineMs = Long.getLong("saf.offlineMs", 30_000L);
+
+    // Guarded by this
+    private final Map<Long, Entry> pending = new LinkedHashMap<>();
+    private long forwarded, refused;
+    private int failures;
+    private long notBeforeNs = Long.MIN_VALUE; // clock.nanoTime() the next advice may go at
+    private Clock.Timer wake;
+    private volatile long offlineUntilMs = Long.MIN_VALUE;
+    private volatile boolean closed = false;
+    private final Thread forwarder;
+
+    private static final class Entry {
+        final long session;
+        final long cc;
+        final String pump;
+        final long approvedMs;
+        long cents = -1; // -1 while the session is open
+
+        Entry(long session, long cc, String pump, long approvedMs) {
+            this.session = session;
+            this.cc = cc;
+            this.pump = pump;
+            this.approvedMs = approvedMs;
+        }
+    }
+
+    private StoreAndForward(Path file, FileChannel ch, DeviceLink link, Clock clock) {
+        this.file = file;
+        this.ch = ch;
+        this.link = link;
+        this.clock = clock;
+        this.forwarder = new Thread(this::forwardLoop, "saf-forward");
+        forwarder.setDaemon(true);
+    }
+
+    public static StoreAndForward open(Path file, DeviceLink link, Clock clock) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        StoreAndForward saf = new StoreAndForward(file, ch, link, clock);
+        saf.replay();
+        saf.forwarder.start();
+        return saf;
+    }
+
+    public double floorUsd() { return floorUsd; }
+
+    // ---- Auth path (session threads) -------------------------------------------
+    /** False while taps should skip the card server and go offline right away. */
+    public boolean online(long nowMs) { return nowMs >= offlineUntilMs; }
+
+    public synchronized void authOk() { failures = 0; }
+
+    public synchronized void authFailed(long nowMs) {
+        if (++failures >= failuresToOffline && online(nowMs)) {
+            offlineUntilMs = nowMs + offlineMs;
+            LOG.warn("card server unreachable (%d failures), approving offline up to $%.2f", failures, floorUsd);
+        }
+    }
+
+    /** Approves {@code cc} offline if the limits allow and the approval is on disk. */
+    public synchronized boolean approve(long session, long cc, String pump, long nowMs) {
+        if (floorUsd <= 0 || closed) return false;
+        if (pending.size() >= maxPending) {
+            LOG.warn("offline refused for card %d: %d sales waiting to forward", cc, pending.size());
+            return false;
+        }
+        for (Entry e : pending.values()) {
+            if (e.cc == cc) {
+                LOG.warn("offline refused for card %d: sale %d not forwarded yet", cc, e.session);
+                return false;
+            }
+        }
+        try {
+            write("A " + session + " " + cc + " " + pump + " " + nowMs);
+        } catch (IOException e) {
+            LOG.error("offline refused, cannot record it: %s", e.getMessage());
+            return false;
+        }
+        pending.put(session, new Entry(session, cc, pump, nowMs));
+        return true;
+    }
+
+    /** The offline session closed with {@code cents} charged; ignored for sessions not approved offline. */
+    public synchronized void complete(long session, long cents) {
+        Entry e = pending.get(session);
+        if (e == null || e.cents >= 0) return;
+        try {
+            write("S " + session + " " + cents);
+        } catch (IOException ex) {
+            LOG.error("cannot record close of %d: %s", session, ex.getMessage()); // left open, settled on the next start
+            return;
+        }
+        e.cents = cents;
+        notifyAll();
+    }
+
+    /** Offline sessions with no close on record (session -> card), e.g. after a crash; settle each with complete(). */
+    public synchronized Map<Long, Long> unsettled() {
+        Map<Long, Long> out = new LinkedHashMap<>();
+        for (Entry e : pending.values()) if (e.cents < 0) out.put(e.session, e.cc);
+        return out;
+    }
+
+    // ---- Forwarder thread --------------------------------------------------------
+    private void forwardLoop() {
+        long backoffMs = gapMs;
+        while (!closed) {
+            Entry next;
+            synchronized (this) {
+                next = firstClosed();
+                if (next == null || clock.nanoTime() < notBeforeNs) {
+                    try { wait(); } catch (InterruptedException e) { return; } // complete(), the wake timer or close()
+                    continue;
+                }
+            }
+            String result;
+            try {
+                result = next.cents == 0 ? "VOID" : advise(next);
+                backoffMs = gapMs;
+            } catch (IOException e) {
+                LOG.debug("advice %s not sent: %s", next.session, e.getMessage());
+                backoffMs = Math.min(MAX_BACKOFF_MS, backoffMs * 2);
+                pause(backoffMs);
+                continue;
+            }
+            synchronized (this) {
+                try {
+                    write("F " + next.session + " " + result);
+                } catch (IOException e) {
+                    LOG.error("cannot record forward of %d: %s", next.session, e.getMessage()); // sent again on restart
+                }
+                pending.remove(next.session);
+                if (!"VOID".equals(result)) {
+                    forwarded++;
+                    failures = 0;
+                    offlineUntilMs = Long.MIN_VALUE; // the card server answers again
+                }
+                if ("NO".equals(result)) {
+                    refused++;
+                    LOG.warn("offline sale %d refused by the issuer: card %d, $%.2f lost",
+                            next.session, next.cc, next.cents / 100.0);
+                }
+                if (pending.isEmpty()) truncate();
+            }
+            if (!"VOID".equals(result)) pause(gapMs);
+        }
+    }
+
+    private Entry firstClosed() {
+        for (Entry e : pending.values()) if (e.cents >= 0) return e;
+        return null;
+    }
+
+    // YES or NO from the card server
+    private String advise(Entry e) throws IOException {
+        String line = "CARDSERVER|ADVICE|MAIN|" + e.session + ":" + e.cc + ":" + e.cents;
+        String tag = "ADVICE:" + e.session + "=";
+        Duration timeout = Duration.ofSeconds(1);
+        // A socket timeout, so wall time: virtual time does not move while this thread waits on the link
+        long deadline = System.nanoTime() + timeout.toNanos();
+        String reply = link.request(line, timeout);
+        // A late answer to an earlier advice that timed out comes first
+        while (reply.contains("ADVICE:") && !reply.contains(tag)) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) throw new java.net.SocketTimeoutException("Read timed out");
+            reply = link.poll(Duration.ofNanos(left));
+        }
+        int at = reply.indexOf(tag);
+        if (at < 0) throw new IOException("card server does not take advices: " + reply);
+        return reply.startsWith("YES", at + tag.length()) ? "YES" : "NO";
+    }
+
+    // No advice for ms of clock time; a timer wakes the forwarder then
+    private synchronized void pause(long ms) {
+        notBeforeNs = clock.nanoTime() + ms * 1_000_000L;
+        if (wake != null) wake.cancel();
+        wake = clock.schedule(this::wakeUp, ms);
+    }
+
+    private synchronized void wakeUp() { notifyAll(); }
+
+    // ---- Log ---------------------------------------------------------------------
+    private void write(String line) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (b.hasRemaining()) ch.write(b);
+        ch.force(false);
+    }
+
+    private void truncate() {
+        try {
+            ch.truncate(0);
+        } catch (IOException e) {
+            LOG.warn("cannot empty %s: %s", file, e.getMessage());
+        }
+    }
+
+    private void replay() throws IOException {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] f = line.trim().split(" ");
+            try {
+                switch (f[0]) {
+                    case "A" -> pending.put(Long.parseLong(f[1]), new Entry(Long.parseLong(f[1]), Long.parseLong(f[2]), f[3], Long.parseLong(f[4])));
+                    case "S" -> { Entry e = pending.get(Long.parseLong(f[1])); if (e != null) e.cents = Long.parseLong(f[2]); }
+                    case "F" -> pending.remove(Long.parseLong(f[1]));
+                    default -> {}
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("skipping torn line '%s'", line); // the last one, cut by a crash
+            }
+        }
+        if (!pending.isEmpty()) LOG.info("%d offline sales to forward", pending.size());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(java.util.Locale.US, "%d pending, %d forwarded, %d refused", pending.size(), forwarded, refused);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        forwarder.interrupt();
+        synchronized (this) {
+            if (wake != null) wake.cancel();
+            ch.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.clock;
+
+/* Time Source
+* Everything that reads the time, sleeps or schedules a timeout goes through a Clock,
+* so the same code can run on the wall clock or on a VirtualClock that jumps ahead.
+*
+* -Dclock=system            (default) real time
+* -Dclock=virtual           virtual time, advanced whenever the one driving thread sleeps
+* -Dclock=virtual:N         same, but time only advances once N driving threads are all asleep
+* -Dclock=virtual:0         virtual time that only moves on VirtualClock.advance(...) (SimDevices always uses this)
+* -Dclock.epoch=<millis>    virtual start time (default 2024-01-01T00:00Z)
+* */
+
+public interface Clock {
+    long nanoTime();
+    long currentTimeMillis();
+    void sleep(long millis) throws InterruptedException;
+
+    Timer schedule(Runnable task, long delayMillis);
+    Timer scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis);
+
+    interface Timer {
+        void cancel();
+    }
+
+    static Clock system() { return SystemClock.INSTANCE; }
+
+    static Clock fromProperties() {
+        String spec = System.getProperty("clock", "system").trim();
+        if (!spec.startsWith("virtual")) return system();
+        int parties = 1;
+        int i = spec.indexOf(':');
+        if (i >= 0) {
+            try { parties = Math.max(0, Integer.parseInt(spec.substring(i + 1).trim())); }
+            catch (NumberFormatException ignored) {}
+        }
+        long epoch = Long.getLong("clock.epoch", VirtualClock.DEFAULT_EPOCH_MILLIS);
+        return new VirtualClock(epoch, parties);
+    }
+}
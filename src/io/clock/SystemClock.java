@@ -0,0 +1,35 @@
+package io.clock;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/** Wall-clock time, timers run on one shared daemon thread. */
+public final class SystemClock implements Clock {
+    static final SystemClock INSTANCE = new SystemClock();
+
+    private final ScheduledExecutorService ses = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "clock-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private SystemClock() {}
+
+    @Override public long nanoTime() { return System.nanoTime(); }
+    @Override public long currentTimeMillis() { return System.currentTimeMillis(); }
+    @Override public void sleep(long millis) throws InterruptedException { if (millis > 0) Thread.sleep(millis); }
+
+    @Override
+    public Timer schedule(Runnable task, long delayMillis) {
+        ScheduledFuture<?> f = ses.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        return () -> f.cancel(false);
+    }
+
+    @Override
+    public Timer scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        ScheduledFuture<?> f = ses.scheduleAtFixedRate(task, initialDelayMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return () -> f.cancel(false);
+    }
+}
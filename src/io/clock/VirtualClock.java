@@ -0,0 +1,161 @@
+package io.clock;
+
+import java.util.PriorityQueue;
+
+/* Deterministic Virtual Time
+* Time never moves on its own. It jumps straight to the next due event when either
+*   -> all `parties` driving threads are blocked in sleep(), or
+*   -> someone calls advance(ms) (parties == 0 means manual only)
+*
+* Events with the same due time fire in the order they were scheduled, and timer
+* tasks run inline on the thread that advanced the clock, so a replay is repeatable.
+* Tasks run without the clock's lock held (other threads keep reading, scheduling and
+* going to sleep meanwhile); they may schedule/cancel but must not sleep().
+* */
+
+public final class VirtualClock implements Clock {
+    static final long DEFAULT_EPOCH_MILLIS = 1_704_067_200_000L; // 2024-01-01T00:00Z
+    private static final long NANO_ORIGIN = 1_000_000_000L;       // nanoTime() never reads 0
+
+    private static final class Event implements Timer {
+        final VirtualClock owner;
+        final long seq;
+        final long periodNanos;
+        final Runnable task; // null -> a sleeping thread
+        long due;
+        boolean done, cancelled;
+
+        Event(VirtualClock owner, long seq, long due, long periodNanos, Runnable task) {
+            this.owner = owner;
+            this.seq = seq;
+            this.due = due;
+            this.periodNanos = periodNanos;
+            this.task = task;
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (owner) {
+                cancelled = true;
+                owner.queue.remove(this);
+            }
+        }
+    }
+
+    private final long epochMillis;
+    private final int parties;
+    private final PriorityQueue<Event> queue = new PriorityQueue<>(
+            (a, b) -> a.due != b.due ? Long.compare(a.due, b.due) : Long.compare(a.seq, b.seq));
+    private volatile long nanos = NANO_ORIGIN;
+    private long seq = 0L;
+    private int sleeping = 0;
+    // One thread fires events at a time (in order, so a replay is repeatable), without holding the clock's lock
+    private final Object firing = new Object();
+
+    public VirtualClock(long epochMillis, int parties) {
+        this.epochMillis = epochMillis;
+        this.parties = parties;
+    }
+
+    @Override public long nanoTime() { return nanos; }
+    @Override public long currentTimeMillis() { return epochMillis + (nanos - NANO_ORIGIN) / 1_000_000L; }
+
+    public int parties() { return parties; }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (millis <= 0) return;
+        Event e;
+        boolean drive;
+        synchronized (this) {
+            e = new Event(this, seq++, nanos + millis * 1_000_000L, 0L, null);
+            queue.add(e);
+            sleeping++;
+            drive = parties > 0 && sleeping >= parties;
+        }
+        try {
+            if (drive) runUntilWake();
+        } finally {
+            synchronized (this) {
+                try {
+                    while (!e.done) wait();
+                } finally {
+                    if (!e.done) { queue.remove(e); sleeping--; }
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized Timer schedule(Runnable task, long delayMillis) {
+        Event e = new Event(this, seq++, nanos + Math.max(0, delayMillis) * 1_000_000L, 0L, task);
+        queue.add(e);
+        return e;
+    }
+
+    @Override
+    public synchronized Timer scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        if (periodMillis <= 0) throw new IllegalArgumentException("period must be > 0");
+        Event e = new Event(this, seq++, nanos + Math.max(0, initialDelayMillis) * 1_000_000L,
+                periodMillis * 1_000_000L, task);
+        queue.add(e);
+        return e;
+    }
+
+    /** Moves time forward by {@code millis}, firing everything due on the way. */
+    public void advance(long millis) {
+        synchronized (firing) {
+            long target;
+            synchronized (this) { target = nanos + Math.max(0, millis) * 1_000_000L; }
+            while (true) {
+                Event e;
+                synchronized (this) {
+                    if (queue.isEmpty() || queue.peek().due > target) { nanos = target; return; }
+                    e = due(queue.poll());
+                }
+                if (e != null) run(e);
+            }
+        }
+    }
+
+    // Keeps firing events until a sleeping party has been woken
+    private void runUntilWake() {
+        synchronized (firing) {
+            while (true) {
+                Event e;
+                synchronized (this) {
+                    if (sleeping < parties || queue.isEmpty()) return;
+                    e = due(queue.poll());
+                }
+                if (e != null) run(e);
+            }
+        }
+    }
+
+    // Lock held. Moves time to the event and wakes it if it is a sleeper; returns it if it is a task to run.
+    private Event due(Event e) {
+        if (e.cancelled) return null;
+        if (e.due > nanos) nanos = e.due;
+        if (e.task != null) return e;
+        e.done = true;
+        sleeping--;
+        notifyAll();
+        return null;
+    }
+
+    // Without the clock's lock, so a task doing I/O does not stall every sleep(), schedule() and cancel()
+    private void run(Event e) {
+        try {
+            e.task.run();
+        } catch (RuntimeException ex) {
+            synchronized (this) { e.cancelled = true; } // same as a ScheduledExecutorService: a throwing periodic task stops
+            return;
+        }
+        synchronized (this) {
+            if (e.periodNanos > 0 && !e.cancelled) {
+                e.due += e.periodNanos;
+                queue.add(e);
+            }
+        }
+    }
+}
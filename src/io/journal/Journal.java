@@ -0,0 +1,512 @@
+package io.journal;
+
+import io.log.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/* Transaction Journal
+* Append-only, memory-mapped segment files of fixed-size TxnRecords:
+*   journal/00000000000000000001.seg   records 1 .. RECORDS_PER_SEGMENT
+*   journal/00000000000000524289.seg   ...
+*   journal/sessions.idx               sessions still open, as of a durable seq (SessionIndex)
+*
+* append()  -> encodes the record straight into the mapped segment under a short lock and returns
+*              its seq; the caller never waits for the disk
+* committer -> one daemon thread; whenever records are pending it forces the dirty byte range of
+*              each touched segment once, then marks everything up to the newest record durable.
+*              Sessions appending while a force runs ride on the next one (group commit).
+*              It also maps the next segment ahead of time, so a roll-over is a pointer swap,
+*              and every journal.indexMs it stores the open-session index.
+*
+* whenDurable(seq) / awaitDurable(seq, ms) are for callers that must not go on before the disk has it.
+* listen(l) -> l sees every appended record, on the appending thread after the lock is released
+*              (ReceiptIndex, report.DayBook); a listener that throws is logged and skipped.
+*
+* Recovery (open): start from sessions.idx and scan only the records after its coveredSeq, to the
+* first empty or torn slot, so the cost is the last few hundred ms of appends, not the journal size.
+* If journal.recoveryMs runs out the scan only looks for the end, and openSessions() may miss
+* sessions that started in the unscanned tail (logged).
+* */
+
+
+/* USAGE
+* Journal j = Journal.open(Path.of("journal"));
+* for (TxnRecord s : j.openSessions()) ...        // settle what a crash left open
+* long seq = j.append(TxnRecord.sale(...));      // no I/O on this thread
+* j.whenDurable(seq).thenRun(...);                // optional
+*
+* -Djournal.dir=journal          (Main)
+* -Djournal.segmentMb=64         (segment size of new segments, rounded down to whole records)
+* -Djournal.groupUs=0            (extra wait before each force to gather more records)
+* -Djournal.indexMs=100          (how often the open-session index is stored)
+* -Djournal.recoveryMs=2000      (time budget for the scan on open)
+* */
+
+
+public final class Journal implements AutoCloseable {
+    private static final Log LOG = Log.named("journal");
+    static final String SUFFIX = ".seg";
+
+    private final Path dir;
+    private final int recordsPerSegment;
+    private final long groupNanos;
+    private final long indexNanos;
+    private final SessionIndex index;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pending = lock.newCondition();
+
+    private final List<Consumer<TxnRecord>> listeners = new CopyOnWriteArrayList<>();
+
+    // Every segment mapped so far, by first seq, for read(seq)
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // ---- guarded by lock ----
+    private Segment head;                                  // being appended to
+    private Segment spare;                                 // next segment, mapped by the committer
+    private final List<Segment> unforced = new ArrayList<>(); // rolled over, dirty bytes not forced yet
+    private long nextSeq;
+    private boolean closed = false;
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private final Map<Long, Long> open = new HashMap<>();  // session id -> seq of its latest record
+
+    // ---- committer ----
+    private volatile long durableSeq;
+    private volatile long forces = 0;
+    private long lastIndexNanos = 0L;
+    private boolean indexFull = false;
+    private final Thread committer;
+
+    private Journal(Path dir, int recordsPerSegment, long groupNanos, long indexNanos, long recoveryMs) throws IOException {
+        this.dir = dir;
+        this.recordsPerSegment = recordsPerSegment;
+        this.groupNanos = groupNanos;
+        this.indexNanos = indexNanos;
+        File d = dir.toFile();
+        if (!d.isDirectory() && !d.mkdirs()) throw new IOException("cannot create " + dir);
+
+        index = SessionIndex.open(dir);
+        recover(recoveryMs);
+        durableSeq = nextSeq - 1; // whatever survived on disk is as durable as it gets
+
+        committer = new Thread(this::commitLoop, "journal-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    public static Journal open(Path dir) throws IOException {
+        long bytes = Long.getLong("journal.segmentMb", 64L) * 1024 * 1024;
+        int records = (int) Math.max(1, Math.min(Integer.MAX_VALUE / TxnRecord.SIZE, bytes / TxnRecord.SIZE));
+        return new Journal(dir, records, Long.getLong("journal.groupUs", 0L) * 1_000L,
+                Long.getLong("journal.indexMs", 100L) * 1_000_000L, Long.getLong("journal.recoveryMs", 2_000L));
+    }
+
+    static Journal open(Path dir, int recordsPerSegment, long groupMicros) throws IOException {
+        return new Journal(dir, recordsPerSegment, groupMicros * 1_000L, 100_000_000L, 2_000L);
+    }
+
+    public Path dir() { return dir; }
+
+    /** Appends {@code r} (its seq is assigned here) and returns the seq. Never waits for the disk. */
+    public long append(TxnRecord r) {
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("journal closed");
+            if (nextSeq - head.firstSeq >= head.capacity()) roll();
+            r.seq = nextSeq++;
+            head.write(r);
+            track(r);
+            pending.signal();
+        } finally {
+            lock.unlock();
+        }
+        for (Consumer<TxnRecord> l : listeners) {
+            try {
+                l.accept(r);
+            } catch (RuntimeException e) {
+                LOG.warn("listener failed on #%d: %s", r.seq, e.toString());
+            }
+        }
+        return r.seq;
+    }
+
+    public void listen(Consumer<TxnRecord> listener) { listeners.add(listener); }
+
+    public void unlisten(Consumer<TxnRecord> listener) { listeners.remove(listener); }
+
+    /** The record at {@code seq}, null if there is none (not written yet, torn, or out of range). */
+    public TxnRecord read(long seq) {
+        Map.Entry<Long, Segment> e = segments.floorEntry(seq);
+        Segment s = e == null ? null : e.getValue();
+        if (s == null || seq - s.firstSeq >= s.capacity()) {
+            s = openExisting(seq);
+            if (s == null) return null;
+        }
+        TxnRecord r = TxnRecord.decode(s.map, (int) (seq - s.firstSeq) * TxnRecord.SIZE);
+        return r != null && r.seq == seq ? r : null;
+    }
+
+    /** Latest record of every session that was opened and not closed yet, oldest first. */
+    public List<TxnRecord> openSessions() {
+        long[] seqs;
+        lock.lock();
+        try {
+            seqs = open.values().stream().mapToLong(Long::longValue).sorted().toArray();
+        } finally {
+            lock.unlock();
+        }
+        List<TxnRecord> out = new ArrayList<>(seqs.length);
+        for (long seq : seqs) {
+            TxnRecord r = read(seq);
+            if (r != null) out.add(r);
+        }
+        return out;
+    }
+
+    /** Completes once {@code seq} is on disk. */
+    public CompletableFuture<Long> whenDurable(long seq) {
+        if (seq <= durableSeq) return CompletableFuture.completedFuture(seq);
+        lock.lock();
+        try {
+            if (seq <= durableSeq) return CompletableFuture.completedFuture(seq);
+            Waiter w = new Waiter(seq);
+            waiters.add(w);
+            return w.future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean awaitDurable(long seq, long timeoutMs) throws InterruptedException {
+        try {
+            whenDurable(seq).get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (java.util.concurrent.TimeoutException e) {
+            return false;
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public long lastSeq() {
+        lock.lock();
+        try { return nextSeq - 1; } finally { lock.unlock(); }
+    }
+
+    public long durableSeq() { return durableSeq; }
+
+    /** force() calls so far; lastSeq() / forces() is the average group size. */
+    public long forces() { return forces; }
+
+    // Caller holds lock (or is the constructor)
+    private void track(TxnRecord r) {
+        if (r.closesSession()) open.remove(r.sessionId);
+        else if (r.type == TxnRecord.OPEN || r.type == TxnRecord.STEP) open.put(r.sessionId, r.seq);
+    }
+
+    // Caller holds lock
+    private void roll() {
+        unforced.add(head);
+        if (spare != null && spare.firstSeq == nextSeq) {
+            head = spare;
+        } else {
+            try {
+                head = mapSegment(nextSeq); // committer fell behind, map it here
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        spare = null;
+    }
+
+    // Committer thread: map the segment after head before appends reach it
+    private void prepareSpare() {
+        long next;
+        lock.lock();
+        try {
+            if (closed || spare != null) return;
+            next = head.firstSeq + head.capacity();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            Segment s = mapSegment(next);
+            lock.lock();
+            try {
+                if (spare == null && !closed && head.firstSeq + head.capacity() == next) spare = s;
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            LOG.warn("cannot map segment %d ahead: %s", next, e.getMessage());
+        }
+    }
+
+    // ---- Recovery ------------------------------------------------------------
+    private void recover(long budgetMs) throws IOException {
+        long t0 = System.nanoTime();
+        long deadline = t0 + budgetMs * 1_000_000L;
+        long[] firsts = segmentStarts(dir);
+
+        long start;
+        if (index.found()) {
+            start = index.coveredSeq + 1;
+            open.putAll(index.open);
+        } else {
+            // No index yet: newest segment that has a first record, sessions before it are not tracked
+            int k = firsts.length - 1;
+            while (k > 0 && !validAt(firsts[k])) k--;
+            start = k < 0 ? 1 : firsts[k];
+        }
+
+        Segment seg = openExisting(start);
+        if (seg == null) seg = mapSegment(start);
+        long seq = start;
+        boolean tracking = true;
+        long scanned = 0;
+        while (true) {
+            if (seq - seg.firstSeq >= seg.capacity()) {
+                Segment next = segments.get(seq);
+                if (next == null && Arrays.binarySearch(firsts, seq) >= 0) next = mapSegment(seq);
+                if (next == null) break; // head is full, the first append rolls
+                seg = next;
+            }
+            int at = (int) (seq - seg.firstSeq) * TxnRecord.SIZE;
+            TxnRecord r = TxnRecord.decode(seg.map, at);
+            if (r == null || r.seq != seq) break;
+            if (tracking) track(r);
+            seq++;
+            scanned++;
+            if (tracking && (scanned & 1023) == 0 && System.nanoTime() > deadline) {
+                tracking = false;
+                LOG.warn("recovery budget of %d ms spent at seq %d, only looking for the end now", budgetMs, seq);
+            }
+        }
+        head = seg;
+        head.writtenTo = head.forcedTo = (int) (seq - head.firstSeq) * TxnRecord.SIZE;
+        nextSeq = seq;
+
+        double ms = (System.nanoTime() - t0) / 1_000_000.0;
+        if (nextSeq > 1 || !open.isEmpty()) {
+            LOG.info("recovered to seq %d in %.1f ms: %d records after the index, %d sessions open%s",
+                    nextSeq - 1, ms, scanned, open.size(), tracking ? "" : " (budget exceeded, tail not tracked)");
+        }
+    }
+
+    private boolean validAt(long firstSeq) {
+        try {
+            Segment s = mapSegment(firstSeq);
+            TxnRecord r = TxnRecord.decode(s.map, 0);
+            return r != null && r.seq == firstSeq;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Existing segment file that holds seq, mapped (and cached), or null
+    private Segment openExisting(long seq) {
+        Map.Entry<Long, Segment> e = segments.floorEntry(seq);
+        if (e != null && seq - e.getKey() < e.getValue().capacity()) return e.getValue();
+        long[] firsts = segmentStarts(dir);
+        int i = Arrays.binarySearch(firsts, seq);
+        if (i < 0) i = -i - 2;
+        if (i < 0) return null;
+        try {
+            Segment s = mapSegment(firsts[i]);
+            return seq - s.firstSeq < s.capacity() ? s : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private Segment mapSegment(long firstSeq) throws IOException {
+        Segment s = segments.get(firstSeq);
+        if (s != null) return s;
+        s = Segment.open(dir, firstSeq, recordsPerSegment);
+        Segment prev = segments.putIfAbsent(firstSeq, s);
+        if (prev != null) { s.close(); return prev; }
+        return s;
+    }
+
+    // ---- Group commit --------------------------------------------------------
+    private void commitLoop() {
+        while (true) {
+            long upTo;
+            List<Segment> toForce = new ArrayList<>(2);
+            Map<Long, Long> openSnapshot = null;
+            boolean last;
+            lock.lock();
+            try {
+                while (!closed && nextSeq - 1 == durableSeq) pending.awaitUninterruptibly();
+                last = closed && nextSeq - 1 == durableSeq;
+            } finally {
+                lock.unlock();
+            }
+            if (groupNanos > 0 && !last) {
+                java.util.concurrent.locks.LockSupport.parkNanos(groupNanos);
+            }
+            int[] from, to;
+            lock.lock();
+            try {
+                upTo = nextSeq - 1;
+                toForce.addAll(unforced);
+                unforced.clear();
+                toForce.add(head);
+                from = new int[toForce.size()];
+                to = new int[toForce.size()];
+                for (int i = 0; i < toForce.size(); i++) {
+                    Segment s = toForce.get(i);
+                    from[i] = s.forcedTo;
+                    to[i] = s.writtenTo;
+                    s.forcedTo = s.writtenTo;
+                }
+                // Same lock section as upTo, so the index describes exactly the records up to upTo
+                long now = System.nanoTime();
+                if (last || now - lastIndexNanos >= indexNanos) {
+                    openSnapshot = new HashMap<>(open);
+                    lastIndexNanos = now;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // The slow part, outside the lock: appends go on into the same pages meanwhile
+            for (int i = 0; i < toForce.size(); i++) {
+                Segment s = toForce.get(i);
+                if (to[i] > from[i]) s.map.force(from[i], to[i] - from[i]);
+            }
+            if (!last) forces++;
+            // Only after the records it covers are on disk
+            if (openSnapshot != null) {
+                try {
+                    boolean stored = index.store(upTo, openSnapshot);
+                    if (!stored && !indexFull) {
+                        LOG.warn("%d open sessions, more than the index holds; recovery scans from the last stored one", openSnapshot.size());
+                    }
+                    indexFull = !stored;
+                } catch (IOException e) {
+                    LOG.warn("cannot store session index: %s", e.getMessage());
+                }
+            }
+            if (last) return;
+
+            List<Waiter> done = new ArrayList<>();
+            lock.lock();
+            try {
+                durableSeq = upTo;
+                while (!waiters.isEmpty() && waiters.peek().seq <= upTo) done.add(waiters.poll());
+            } finally {
+                lock.unlock();
+            }
+            for (Waiter w : done) w.future.complete(w.seq);
+            prepareSpare();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            pending.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Segment s : segments.values()) s.close();
+        index.close();
+        LOG.info("closed at seq %d, %d forces", durableSeq, forces);
+    }
+
+    // ---- Segments ------------------------------------------------------------
+    static long[] segmentStarts(Path dir) {
+        String[] names = dir.toFile().list((d, n) -> n.endsWith(SUFFIX));
+        if (names == null) return new long[0];
+        long[] firsts = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            try {
+                firsts[n++] = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            } catch (NumberFormatException ignored) {}
+        }
+        firsts = Arrays.copyOf(firsts, n);
+        Arrays.sort(firsts);
+        return firsts;
+    }
+
+    static Path segmentPath(Path dir, long firstSeq) {
+        return dir.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+    }
+
+    static final class Segment {
+        final long firstSeq;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        int writtenTo = 0;   // bytes, guarded by the journal lock
+        int forcedTo = 0;
+
+        private Segment(long firstSeq, FileChannel channel, MappedByteBuffer map) {
+            this.firstSeq = firstSeq;
+            this.channel = channel;
+            this.map = map;
+        }
+
+        // An existing file keeps its size, so changing journal.segmentMb never re-slices old segments
+        static Segment open(Path dir, long firstSeq, int records) throws IOException {
+            FileChannel ch = FileChannel.open(segmentPath(dir, firstSeq),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = ch.size() >= TxnRecord.SIZE ? ch.size() / TxnRecord.SIZE * TxnRecord.SIZE
+                                                    : (long) records * TxnRecord.SIZE;
+            MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            m.order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(firstSeq, ch, m);
+        }
+
+        int capacity() { return map.capacity() / TxnRecord.SIZE; }
+
+        void write(TxnRecord r) {
+            int at = (int) (r.seq - firstSeq) * TxnRecord.SIZE;
+            r.encode(map, at);
+            writtenTo = at + TxnRecord.SIZE;
+        }
+
+        void close() {
+            try { channel.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+        final long seq;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        Waiter(long seq) { this.seq = seq; }
+
+        @Override
+        public int compareTo(Waiter o) { return Long.compare(seq, o.seq); }
+    }
+}
@@ -0,0 +1,70 @@
+package io.journal;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/* Journal Reader
+* Read-only random access to the segment files of a journal another process (Main) is appending
+* to: segments are mapped read-only on first use and never written, there is no commit thread and
+* no recovery. A record that is not fully written yet reads as null (MAGIC + CRC), like a torn one.
+* read() takes no lock once a segment is mapped, so parallel scans (report.EndOfDay) do not serialise.
+* */
+
+public final class JournalReader implements AutoCloseable {
+    private final Path dir;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> maps = new ConcurrentSkipListMap<>();
+    private final TreeMap<Long, FileChannel> channels = new TreeMap<>();
+
+    public JournalReader(Path dir) {
+        this.dir = dir;
+    }
+
+    /** The record at {@code seq}, null if there is none. */
+    public TxnRecord read(long seq) {
+        Map.Entry<Long, MappedByteBuffer> e = maps.floorEntry(seq);
+        if (e == null || (seq - e.getKey()) * TxnRecord.SIZE >= e.getValue().capacity()) {
+            e = map(seq);
+            if (e == null) return null;
+        }
+        TxnRecord r = TxnRecord.decode(e.getValue(), (int) (seq - e.getKey()) * TxnRecord.SIZE);
+        return r != null && r.seq == seq ? r : null;
+    }
+
+    private synchronized Map.Entry<Long, MappedByteBuffer> map(long seq) {
+        long[] firsts = Journal.segmentStarts(dir);
+        int i = Arrays.binarySearch(firsts, seq);
+        if (i < 0) i = -i - 2;
+        if (i < 0) return null;
+        long first = firsts[i];
+        if (!maps.containsKey(first)) {
+            try {
+                FileChannel ch = FileChannel.open(Journal.segmentPath(dir, first), StandardOpenOption.READ);
+                MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size() / TxnRecord.SIZE * TxnRecord.SIZE);
+                m.order(ByteOrder.LITTLE_ENDIAN);
+                maps.put(first, m);
+                channels.put(first, ch);
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+        Map.Entry<Long, MappedByteBuffer> e = maps.floorEntry(seq);
+        return (seq - e.getKey()) * TxnRecord.SIZE < e.getValue().capacity() ? e : null;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (FileChannel ch : channels.values()) {
+            try { ch.close(); } catch (IOException ignored) {}
+        }
+        channels.clear();
+        maps.clear();
+    }
+}
@@ -0,0 +1,378 @@
+package io.journal;
+
+import io.log.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.LongFunction;
+
+/* Receipt Index
+* Finds SALE records in the journal by time, pump, card token and amount without scanning it.
+* One mapped file per 65536 journal seqs (journal/receipts/<firstSeq>.rix), each:
+*
+*   header   64 B     MAGIC, firstSeq, indexedTo, min/max end millis of its sales
+*   bloom    16 KiB   card tokens, pump ids and amounts of its sales, blocked: all probes of a key fall
+*                     in one 64-byte line, so a miss costs one page
+*   blocks   1024 x 128 B, one per 64 consecutive seqs (the sparse index):
+*            0 long saleMask (bit i = seq first+i is a SALE)   8/16 long min/max end millis
+*            24/32 long min/max cents                          64 512-bit bloom of the block's keys
+*
+* A lookup skips files by time range and bloom, binary searches the candidate file's block summaries
+* for the newest block in the time range (sales are journaled in end-time order), walks back until a
+* block is older than the range and reads only the journal records whose block matched: a bounded
+* number of pages per candidate file however long the history is.
+*
+* Built as sales complete (Main has it listen to the journal, add() ignores all but SALEs). add() only
+* writes the mapped pages; sync(), on the owner's timer, forces them without holding the index lock and
+* then stores indexedTo, and catchUp() indexes whatever the journal has beyond it.
+* */
+
+
+/* USAGE
+* ReceiptIndex rx = ReceiptIndex.open(journal.dir().resolve("receipts"), journal::read, true);
+* rx.catchUp(journal);
+* journal.listen(rx::add);
+* CLOCK.scheduleAtFixedRate(rx::sync, 1_000, 1_000);   // forcing stays off the appending threads
+* ReceiptIndex.Lookup l = rx.find(new ReceiptIndex.Query().card(1234).between(fromMs, toMs).limit(5));
+*
+* java -cp out io.journal.ReceiptLookup --card 1234     (attendant lookup, read-only)
+* */
+
+
+public final class ReceiptIndex implements AutoCloseable {
+    private static final Log LOG = Log.named("receipts");
+    static final String SUFFIX = ".rix";
+
+    static final int SPAN = 1 << 16;          // journal seqs per file
+    static final int BLOCK = 64;              // seqs per block summary
+    static final int BLOCKS = SPAN / BLOCK;
+    private static final int MAGIC = 0x31584952; // "RIX1"
+    private static final int HEADER = 64;
+    private static final int LINE = 64;       // bytes of one bloom line, 512 bits
+    private static final int LINES = 256;
+    private static final int BLOOM_AT = HEADER;
+    private static final int BLOCK_BYTES = 128;
+    private static final int BLOCKS_AT = BLOOM_AT + LINES * LINE;
+    private static final int FILE_BYTES = BLOCKS_AT + BLOCKS * BLOCK_BYTES;
+    private static final int PROBES = 4;
+
+    private final Path dir;
+    private final LongFunction<TxnRecord> records;
+    private final boolean writable;
+    private final TreeMap<Long, Part> parts = new TreeMap<>();
+    private final Set<Part> dirty = new HashSet<>();
+    private long indexedTo = 0;     // every seq up to here is in the files (as of the last sync)
+    private long pendingTo = 0;     // ... in memory
+    private final Object syncLock = new Object(); // one sync() at a time, taken before this, never inside it
+
+    private ReceiptIndex(Path dir, LongFunction<TxnRecord> records, boolean writable) {
+        this.dir = dir;
+        this.records = records;
+        this.writable = writable;
+    }
+
+    /** {@code records} reads a journal record by seq (Journal::read, JournalReader::read). */
+    public static ReceiptIndex open(Path dir, LongFunction<TxnRecord> records, boolean writable) throws IOException {
+        File d = dir.toFile();
+        if (writable && !d.isDirectory() && !d.mkdirs()) throw new IOException("cannot create " + dir);
+        ReceiptIndex rx = new ReceiptIndex(dir, records, writable);
+        String[] names = d.list((x, n) -> n.endsWith(SUFFIX));
+        if (names != null) {
+            for (String n : names) {
+                long first;
+                try {
+                    first = Long.parseLong(n.substring(0, n.length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                Part p = rx.map(first);
+                if (p == null) continue;
+                rx.parts.put(first, p);
+                rx.indexedTo = Math.max(rx.indexedTo, p.map.getLong(16));
+            }
+        }
+        rx.pendingTo = rx.indexedTo;
+        return rx;
+    }
+
+    public synchronized long indexedTo() { return indexedTo; }
+
+    /** Indexes {@code r} if it is a SALE; records must come in seq order. */
+    public synchronized void add(TxnRecord r) {
+        if (r.type == TxnRecord.SALE) {
+            Part p = partFor(r.seq);
+            if (p == null) return;
+            p.add(r);
+            dirty.add(p);
+        }
+        pendingTo = Math.max(pendingTo, r.seq);
+    }
+
+    /** Indexes the journal records after indexedTo, e.g. after a crash between append and add. */
+    public int catchUp(Journal journal) {
+        long t0 = System.nanoTime();
+        long last = journal.lastSeq();
+        int sales = 0;
+        synchronized (this) {
+            for (long seq = pendingTo + 1; seq <= last; seq++) {
+                TxnRecord r = journal.read(seq);
+                if (r == null) continue;
+                if (r.type == TxnRecord.SALE) sales++;
+                add(r);
+            }
+            pendingTo = Math.max(pendingTo, last);
+        }
+        sync();
+        if (sales > 0) {
+            LOG.info("caught up %d sales to seq %d in %.1f ms",
+                    sales, last, (System.nanoTime() - t0) / 1_000_000.0);
+        }
+        return sales;
+    }
+
+    /** Forces the touched files, then records how far they go. add() and find() go on meanwhile. */
+    public void sync() {
+        synchronized (syncLock) {
+            List<Part> toForce;
+            long upTo;
+            Part head;
+            synchronized (this) {
+                if (!writable || pendingTo == indexedTo) return;
+                toForce = new ArrayList<>(dirty);
+                dirty.clear(); // a part touched during the force is dirty again for the next sync
+                upTo = pendingTo;
+                head = partFor(upTo);
+            }
+            // The slow part: everything up to upTo was written before the snapshot
+            for (Part p : toForce) p.map.force();
+            if (head == null) return;
+            synchronized (this) { head.map.putLong(16, upTo); }
+            head.map.force(0, HEADER);
+            synchronized (this) { indexedTo = upTo; }
+        }
+    }
+
+    // ---- Lookup --------------------------------------------------------------
+    public synchronized Lookup find(Query q) {
+        Lookup out = new Lookup();
+        long cardKey = q.card == null ? 0 : cardKey(q.card);
+        long pumpKey = q.pump == null ? 0 : pumpKey(q.pump);
+        boolean exact = q.minCents == q.maxCents;
+        long amountKey = amountKey(q.minCents);
+        for (Part p : parts.descendingMap().values()) {
+            if (out.records.size() >= q.limit) break;
+            long minEnd = p.map.getLong(24), maxEnd = p.map.getLong(32);
+            if (maxEnd == 0 || maxEnd < q.fromMs) {
+                if (maxEnd != 0) break; // every older file is older still
+                continue;
+            }
+            if (minEnd > q.toMs) continue;
+            out.files++;
+            if (q.card != null && !mayContain(p.map, BLOOM_AT + line(cardKey) * LINE, cardKey)) continue;
+            if (q.pump != null && !mayContain(p.map, BLOOM_AT + line(pumpKey) * LINE, pumpKey)) continue;
+            if (exact && !mayContain(p.map, BLOOM_AT + line(amountKey) * LINE, amountKey)) continue;
+
+            for (int b = p.newestUpTo(q.toMs); b >= 0 && out.records.size() < q.limit; b--) {
+                int at = BLOCKS_AT + b * BLOCK_BYTES;
+                long mask = p.map.getLong(at);
+                if (mask == 0) continue;
+                out.blocks++;
+                if (p.map.getLong(at + 16) < q.fromMs) break;
+                if (p.map.getLong(at + 8) > q.toMs) continue;
+                if (p.map.getLong(at + 32) < q.minCents || p.map.getLong(at + 24) > q.maxCents) continue;
+                if (q.card != null && !mayContain(p.map, at + 64, cardKey)) continue;
+                if (q.pump != null && !mayContain(p.map, at + 64, pumpKey)) continue;
+                if (exact && !mayContain(p.map, at + 64, amountKey)) continue;
+
+                for (int i = BLOCK - 1; i >= 0 && out.records.size() < q.limit; i--) {
+                    if ((mask & (1L << i)) == 0) continue;
+                    TxnRecord r = records.apply(p.first + (long) b * BLOCK + i);
+                    out.reads++;
+                    if (r != null && q.matches(r)) out.records.add(r);
+                }
+            }
+            if (out.records.size() >= q.limit) break;
+        }
+        return out;
+    }
+
+    /** What to look for; unset fields match anything. Newest sales first. */
+    public static final class Query {
+        Long card;
+        Long session;
+        String pump;
+        long fromMs = Long.MIN_VALUE, toMs = Long.MAX_VALUE;
+        long minCents = Long.MIN_VALUE, maxCents = Long.MAX_VALUE;
+        int limit = 20;
+
+        public Query card(long token) { card = token; return this; }
+        public Query session(long id) { session = id; return this; }
+        public Query pump(String device) { pump = device; return this; }
+        public Query between(long fromMs, long toMs) { this.fromMs = fromMs; this.toMs = toMs; return this; }
+        public Query cents(long min, long max) { minCents = min; maxCents = max; return this; }
+        public Query limit(int n) { limit = Math.max(1, n); return this; }
+
+        boolean matches(TxnRecord r) {
+            return r.type == TxnRecord.SALE
+                    && r.endMs >= fromMs && r.endMs <= toMs
+                    && r.cents >= minCents && r.cents <= maxCents
+                    && (card == null || r.cardToken == card)
+                    && (session == null || r.sessionId == session)
+                    && (pump == null || pump.equals(r.device));
+        }
+    }
+
+    /** The sales found, and what it took: files past the header, block summaries, journal records read. */
+    public static final class Lookup {
+        public final List<TxnRecord> records = new ArrayList<>();
+        public int files, blocks, reads;
+
+        @Override
+        public String toString() {
+            return String.format("%d found, %d files, %d blocks, %d records read", records.size(), files, blocks, reads);
+        }
+    }
+
+    // ---- Files ---------------------------------------------------------------
+    private Part partFor(long seq) {
+        long first = (seq - 1) / SPAN * SPAN + 1;
+        Part p = parts.get(first);
+        if (p == null && writable) {
+            p = map(first);
+            if (p != null) parts.put(first, p);
+        }
+        return p;
+    }
+
+    private Part map(long first) {
+        Path path = dir.resolve(String.format("%020d%s", first, SUFFIX));
+        try {
+            FileChannel ch = writable
+                    ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ);
+            if (!writable && ch.size() < FILE_BYTES) { ch.close(); return null; }
+            MappedByteBuffer m = ch.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, FILE_BYTES);
+            m.order(ByteOrder.LITTLE_ENDIAN);
+            if (m.getInt(0) != MAGIC || m.getLong(8) != first) {
+                if (!writable) { ch.close(); return null; }
+                for (int i = 0; i < FILE_BYTES; i += 8) m.putLong(i, 0L); // new, or not ours: start it over
+                m.putInt(0, MAGIC);
+                m.putLong(8, first);
+            }
+            Part p = new Part(first, ch, m);
+            for (int b = BLOCKS - 1; b >= 0; b--) {
+                if (m.getLong(BLOCKS_AT + b * BLOCK_BYTES) != 0) { p.lastBlock = b; break; }
+            }
+            return p;
+        } catch (IOException e) {
+            LOG.warn("cannot map %s: %s", path, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        sync();
+        synchronized (this) {
+            for (Part p : parts.values()) {
+                try { p.channel.close(); } catch (IOException ignored) {}
+            }
+            parts.clear();
+        }
+    }
+
+    private static final class Part {
+        final long first;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        int lastBlock = -1;
+
+        Part(long first, FileChannel channel, MappedByteBuffer map) {
+            this.first = first;
+            this.channel = channel;
+            this.map = map;
+        }
+
+        // Newest non-empty block whose earliest sale is not after toMs, -1 if none
+        int newestUpTo(long toMs) {
+            if (toMs == Long.MAX_VALUE || lastBlock < 0) return lastBlock;
+            int lo = -1, hi = lastBlock; // minEnd(lo) <= toMs < minEnd(hi + 1), lo = -1 meaning none
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                int b = mid;
+                while (b > lo && map.getLong(BLOCKS_AT + b * BLOCK_BYTES) == 0) b--; // empty: use the one below
+                if (b == lo) { lo = mid; continue; }  // nothing between lo and mid
+                if (map.getLong(BLOCKS_AT + b * BLOCK_BYTES + 8) <= toMs) lo = mid; else hi = b - 1;
+            }
+            return lo;
+        }
+
+        // Idempotent: adding a sale twice (catch-up after a crash) changes nothing
+        void add(TxnRecord r) {
+            int off = (int) (r.seq - first);
+            int b = off / BLOCK;
+            int at = BLOCKS_AT + b * BLOCK_BYTES;
+            long mask = map.getLong(at);
+            if (mask == 0) {
+                map.putLong(at + 8, r.endMs).putLong(at + 16, r.endMs);
+                map.putLong(at + 24, r.cents).putLong(at + 32, r.cents);
+            } else {
+                map.putLong(at + 8, Math.min(map.getLong(at + 8), r.endMs));
+                map.putLong(at + 16, Math.max(map.getLong(at + 16), r.endMs));
+                map.putLong(at + 24, Math.min(map.getLong(at + 24), r.cents));
+                map.putLong(at + 32, Math.max(map.getLong(at + 32), r.cents));
+            }
+            map.putLong(at, mask | (1L << (off % BLOCK)));
+            lastBlock = Math.max(lastBlock, b);
+
+            for (long key : new long[] { cardKey(r.cardToken), pumpKey(r.device), amountKey(r.cents) }) {
+                set(map, at + 64, key);
+                set(map, BLOOM_AT + line(key) * LINE, key);
+            }
+
+            long minEnd = map.getLong(24);
+            map.putLong(24, minEnd == 0 ? r.endMs : Math.min(minEnd, r.endMs));
+            map.putLong(32, Math.max(map.getLong(32), r.endMs));
+        }
+    }
+
+    // ---- Bloom ---------------------------------------------------------------
+    private static long cardKey(long token) { return mix(token << 2); }
+    private static long pumpKey(String device) { return mix(((long) device.hashCode() << 2) | 1L); }
+    private static long amountKey(long cents) { return mix((cents << 2) | 2L); }
+
+    private static int line(long key) { return (int) ((key >>> 40) % LINES); }
+
+    private static void set(MappedByteBuffer m, int lineAt, long key) {
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (int) (key >>> (9 * i)) & 511;
+            int at = lineAt + (bit >>> 3);
+            m.put(at, (byte) (m.get(at) | (1 << (bit & 7))));
+        }
+    }
+
+    private static boolean mayContain(MappedByteBuffer m, int lineAt, long key) {
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (int) (key >>> (9 * i)) & 511;
+            if ((m.get(lineAt + (bit >>> 3)) & (1 << (bit & 7))) == 0) return false;
+        }
+        return true;
+    }
+
+    // splitmix64 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,89 @@
+package io.journal;
+
+import io.log.Log;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/* Receipt Lookup
+* Attendant tool: finds sales in the journal through its ReceiptIndex, read-only, so it can run
+* while Main is appending (see JournalReader). Sales newer than the index's last sync (up to a
+* second) are not found until Main indexes them.
+* */
+
+
+/* USAGE
+* java -cp out io.journal.ReceiptLookup --card 1234
+* java -cp out io.journal.ReceiptLookup --from 2026-03-01T08:00 --to 2026-03-01T09:00 --pump pump-01
+* java -cp out io.journal.ReceiptLookup --amount 42.17
+*
+* --dir DIR        journal directory                     (default: -Djournal.dir or journal)
+* --card N         card token
+* --pump ID        pump device id
+* --from / --to    local date (2026-03-01) or date-time (2026-03-01T08:00), or epoch millis
+* --amount USD     exact sale amount
+* --min / --max    sale amount range in USD
+* --limit N        newest N matches                      (default 20)
+* */
+
+
+public final class ReceiptLookup {
+    private static final Log LOG = Log.named("receipts");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = parseArgs(args);
+        Path dir = Path.of(opt.getOrDefault("dir", System.getProperty("journal.dir", "journal")));
+
+        ReceiptIndex.Query q = new ReceiptIndex.Query().limit(Integer.parseInt(opt.getOrDefault("limit", "20")));
+        if (opt.containsKey("card")) q.card(Long.parseLong(opt.get("card")));
+        if (opt.containsKey("pump")) q.pump(opt.get("pump"));
+        if (opt.containsKey("from") || opt.containsKey("to")) {
+            q.between(opt.containsKey("from") ? millis(opt.get("from"), false) : Long.MIN_VALUE,
+                      opt.containsKey("to") ? millis(opt.get("to"), true) : Long.MAX_VALUE);
+        }
+        if (opt.containsKey("amount")) {
+            long c = cents(opt.get("amount"));
+            q.cents(c, c);
+        } else if (opt.containsKey("min") || opt.containsKey("max")) {
+            q.cents(opt.containsKey("min") ? cents(opt.get("min")) : Long.MIN_VALUE,
+                    opt.containsKey("max") ? cents(opt.get("max")) : Long.MAX_VALUE);
+        }
+
+        try (JournalReader reader = new JournalReader(dir);
+             ReceiptIndex rx = ReceiptIndex.open(dir.resolve("receipts"), reader::read, false)) {
+            long t0 = System.nanoTime();
+            ReceiptIndex.Lookup found = rx.find(q);
+            double ms = (System.nanoTime() - t0) / 1_000_000.0;
+            for (TxnRecord r : found.records) {
+                LOG.info("%tF %<tT  %s", r.endMs, r);
+            }
+            LOG.info("%s in %.2f ms (index to seq %d)", found, ms, rx.indexedTo());
+        }
+    }
+
+    // Epoch millis, a date (whole day) or a local date-time
+    private static long millis(String s, boolean end) {
+        if (s.chars().allMatch(Character::isDigit)) return Long.parseLong(s);
+        ZoneId zone = ZoneId.systemDefault();
+        if (s.contains("T")) return LocalDateTime.parse(s).atZone(zone).toInstant().toEpochMilli();
+        LocalDate d = LocalDate.parse(s);
+        return end ? d.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1
+                   : d.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static long cents(String usd) {
+        return Math.round(Double.parseDouble(usd) * 100);
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> m = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("--")) m.put(args[i].substring(2), args[i + 1]);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,96 @@
+package io.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/* Open-Session Index (journal/sessions.idx)
+* Which sessions were still open, and the seq of each one's latest record, as of a journal seq
+* that was already durable. Crash recovery starts from here and only scans the journal after
+* coveredSeq, however long the journal is.
+*
+* Two fixed slots written in turn, so a torn write leaves the other one intact:
+*   0  int  MAGIC    4  int  count    8  long generation    16 long coveredSeq
+*   24 count x (long sessionId, long seq)                   then int CRC32 of all of the above
+* */
+
+final class SessionIndex implements AutoCloseable {
+    static final String FILE = "sessions.idx";
+    static final int MAX_OPEN = 1024;
+    private static final int MAGIC = 0x4A495831; // "JIX1"
+    private static final int HEADER = 24;
+    private static final int SLOT_BYTES = HEADER + MAX_OPEN * 16 + 4;
+
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocate(SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private long generation;
+
+    // What load() found
+    long coveredSeq = 0;
+    final Map<Long, Long> open = new HashMap<>();
+
+    private SessionIndex(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    static SessionIndex open(Path dir) throws IOException {
+        SessionIndex idx = new SessionIndex(FileChannel.open(dir.resolve(FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        idx.load();
+        return idx;
+    }
+
+    boolean found() { return generation > 0; }
+
+    private void load() throws IOException {
+        for (int slot = 0; slot < 2; slot++) {
+            buf.clear();
+            channel.read(buf, (long) slot * SLOT_BYTES);
+            buf.flip();
+            if (buf.remaining() < HEADER + 4 || buf.getInt(0) != MAGIC) continue;
+            int count = buf.getInt(4);
+            if (count < 0 || count > MAX_OPEN || buf.remaining() < HEADER + count * 16 + 4) continue;
+            int end = HEADER + count * 16;
+            if (buf.getInt(end) != crc(buf, end)) continue;
+            long gen = buf.getLong(8);
+            if (gen <= generation) continue;
+
+            generation = gen;
+            coveredSeq = buf.getLong(16);
+            open.clear();
+            for (int i = 0; i < count; i++) open.put(buf.getLong(HEADER + i * 16), buf.getLong(HEADER + i * 16 + 8));
+        }
+    }
+
+    /** Writes and forces the next slot. False when there are more open sessions than fit. */
+    boolean store(long coveredSeq, Map<Long, Long> open) throws IOException {
+        if (open.size() > MAX_OPEN) return false;
+        long gen = generation + 1;
+        buf.clear();
+        buf.putInt(MAGIC).putInt(open.size()).putLong(gen).putLong(coveredSeq);
+        for (Map.Entry<Long, Long> e : open.entrySet()) buf.putLong(e.getKey()).putLong(e.getValue());
+        int end = buf.position();
+        buf.putInt(crc(buf, end));
+        buf.flip();
+        long at = (gen & 1) * SLOT_BYTES;
+        while (buf.hasRemaining()) at += channel.write(buf, at);
+        channel.force(false);
+        generation = gen;
+        return true;
+    }
+
+    private static int crc(ByteBuffer b, int end) {
+        CRC32 c = new CRC32();
+        c.update(b.slice(0, end));
+        return (int) c.getValue();
+    }
+
+    @Override
+    public void close() throws IOException { channel.close(); }
+}
@@ -0,0 +1,224 @@
+package io.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/* Journal Record
+* One transaction in a fixed 128-byte little-endian layout, so a record's offset in a segment is
+* (seq - firstSeq) * SIZE and a torn or stale slot is caught by MAGIC + CRC.
+*
+*   0  int   MAGIC                 56  long  cents
+*   4  byte  type                  64  char[16] grade (ASCII, zero padded)
+*   5  byte  auth                  80  char[16] device id
+*   6  byte  phase (OPEN/STEP)     96  long  session id
+*   7  byte  flags                 104 long  reserved
+*   8  long  seq                   112 long  reserved
+*   16 long  start millis          120 int   reserved
+*   24 long  end millis            124 int   CRC32 of bytes 0..123
+*   32 long  card token
+*   40 long  price, 1/1000 $ per gal
+*   48 long  gallons, 1/1000000 gal
+*
+* Amounts are fixed point, what is journaled is exactly what was charged.
+*
+* A session is OPEN (authorised), then a STEP checkpoint at every transition and every second of
+* fueling, and ends with a SALE, DECLINE or VOID. Journal keeps an index of the sessions still open.
+* */
+
+public final class TxnRecord {
+    public static final int SIZE = 128;
+    static final int MAGIC = 0x4A524E31; // "JRN1"
+
+    // type
+    public static final byte SALE = 1, DECLINE = 2, OPEN = 3, STEP = 4, VOID = 5;
+    // auth
+    public static final byte AUTH_NONE = 0, AUTH_YES = 1, AUTH_NO = 2;
+    // phase of an OPEN / STEP record
+    public static final byte AUTHORIZED = 1, GRADE_SELECTED = 2, FUELING = 3;
+    // flags
+    public static final byte RECOVERED = 1; // closed by crash recovery, not by the session itself
+    public static final byte OFFLINE = 2;   // approved locally under the floor limit, card server unreachable
+
+    private static final int TEXT = 16;
+    private static final int CRC_AT = 124;
+
+    public byte type;
+    public byte auth;
+    public byte phase;
+    public byte flags;
+    public long seq;          // assigned by Journal.append
+    public long startMs;
+    public long endMs;
+    public long cardToken;
+    public long priceMills;
+    public long gallonsMicro;
+    public long cents;
+    public String grade = "";
+    public String device = "";
+    public long sessionId;
+
+    public static TxnRecord sale(long sessionId, String device, long cardToken, String grade,
+                                 double pricePerGal, double gallons, double dollars, long startMs, long endMs) {
+        TxnRecord r = new TxnRecord();
+        r.type = SALE;
+        r.auth = AUTH_YES;
+        r.sessionId = sessionId;
+        r.device = device;
+        r.cardToken = cardToken;
+        r.grade = grade;
+        r.priceMills = Math.round(pricePerGal * 1_000);
+        r.gallonsMicro = Math.round(gallons * 1_000_000);
+        r.cents = Math.round(dollars * 100);
+        r.startMs = startMs;
+        r.endMs = endMs;
+        return r;
+    }
+
+    /** Session authorised: the first record of a session that may end in a SALE. */
+    public static TxnRecord open(long sessionId, String device, long cardToken, long startMs) {
+        TxnRecord r = new TxnRecord();
+        r.type = OPEN;
+        r.auth = AUTH_YES;
+        r.phase = AUTHORIZED;
+        r.sessionId = sessionId;
+        r.device = device;
+        r.cardToken = cardToken;
+        r.startMs = startMs;
+        r.endMs = startMs;
+        return r;
+    }
+
+    /** A checkpoint of this session: same identity, new phase and amounts so far. */
+    public TxnRecord step(byte phase, String grade, double pricePerGal, double gallons, long nowMs) {
+        TxnRecord r = copy();
+        r.type = STEP;
+        r.phase = phase;
+        r.grade = grade == null ? "" : grade;
+        r.priceMills = Math.round(pricePerGal * 1_000);
+        r.gallonsMicro = Math.round(gallons * 1_000_000);
+        r.cents = Math.round(gallons * pricePerGal * 100);
+        r.endMs = nowMs;
+        return r;
+    }
+
+    /** Ends this session: SALE when fuel was delivered, VOID otherwise. */
+    public TxnRecord close(double gallons, double dollars, long nowMs, byte flags) {
+        TxnRecord r = copy();
+        r.type = gallons > 0 ? SALE : VOID;
+        r.flags |= flags;
+        r.gallonsMicro = Math.round(gallons * 1_000_000);
+        r.cents = Math.round(dollars * 100);
+        r.endMs = nowMs;
+        return r;
+    }
+
+    /** Ends this session without a charge, keeping the last checkpoint's amounts for the audit trail. */
+    public TxnRecord voided(long nowMs) {
+        TxnRecord r = copy();
+        r.type = VOID;
+        r.endMs = nowMs;
+        return r;
+    }
+
+    /** True for the records that end a session (and take it out of the open index). */
+    public boolean closesSession() { return type == SALE || type == DECLINE || type == VOID; }
+
+    public TxnRecord copy() {
+        TxnRecord r = new TxnRecord();
+        r.type = type; r.auth = auth; r.phase = phase; r.flags = flags;
+        r.seq = seq; r.startMs = startMs; r.endMs = endMs; r.cardToken = cardToken;
+        r.priceMills = priceMills; r.gallonsMicro = gallonsMicro; r.cents = cents;
+        r.grade = grade; r.device = device; r.sessionId = sessionId;
+        return r;
+    }
+
+    public static TxnRecord decline(long sessionId, String device, long cardToken, long startMs, long endMs) {
+        TxnRecord r = new TxnRecord();
+        r.type = DECLINE;
+        r.auth = AUTH_NO;
+        r.sessionId = sessionId;
+        r.device = device;
+        r.cardToken = cardToken;
+        r.startMs = startMs;
+        r.endMs = endMs;
+        return r;
+    }
+
+    public double gallons() { return gallonsMicro / 1_000_000.0; }
+    public double dollars() { return cents / 100.0; }
+    public double pricePerGal() { return priceMills / 1_000.0; }
+
+    /** Writes this record at {@code at}; {@code buf} is little-endian. */
+    void encode(ByteBuffer buf, int at) {
+        buf.putInt(at, MAGIC);
+        buf.put(at + 4, type);
+        buf.put(at + 5, auth);
+        buf.put(at + 6, phase);
+        buf.put(at + 7, flags);
+        buf.putLong(at + 8, seq);
+        buf.putLong(at + 16, startMs);
+        buf.putLong(at + 24, endMs);
+        buf.putLong(at + 32, cardToken);
+        buf.putLong(at + 40, priceMills);
+        buf.putLong(at + 48, gallonsMicro);
+        buf.putLong(at + 56, cents);
+        putText(buf, at + 64, grade);
+        putText(buf, at + 80, device);
+        buf.putLong(at + 96, sessionId);
+        buf.putLong(at + 104, 0L);
+        buf.putLong(at + 112, 0L);
+        buf.putInt(at + 120, 0);
+        buf.putInt(at + CRC_AT, crc(buf, at));
+    }
+
+    /** Reads the record at {@code at}, null when the slot is empty, torn or not a record. */
+    static TxnRecord decode(ByteBuffer buf, int at) {
+        if (buf.getInt(at) != MAGIC || buf.getInt(at + CRC_AT) != crc(buf, at)) return null;
+        TxnRecord r = new TxnRecord();
+        r.type = buf.get(at + 4);
+        r.auth = buf.get(at + 5);
+        r.phase = buf.get(at + 6);
+        r.flags = buf.get(at + 7);
+        r.seq = buf.getLong(at + 8);
+        r.startMs = buf.getLong(at + 16);
+        r.endMs = buf.getLong(at + 24);
+        r.cardToken = buf.getLong(at + 32);
+        r.priceMills = buf.getLong(at + 40);
+        r.gallonsMicro = buf.getLong(at + 48);
+        r.cents = buf.getLong(at + 56);
+        r.grade = getText(buf, at + 64);
+        r.device = getText(buf, at + 80);
+        r.sessionId = buf.getLong(at + 96);
+        return r;
+    }
+
+    private static int crc(ByteBuffer buf, int at) {
+        CRC32 c = new CRC32();
+        c.update(buf.slice(at, CRC_AT));
+        return (int) c.getValue();
+    }
+
+    private static void putText(ByteBuffer buf, int at, String s) {
+        byte[] b = s == null ? new byte[0] : s.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < TEXT; i++) buf.put(at + i, i < b.length ? b[i] : 0);
+    }
+
+    private static String getText(ByteBuffer buf, int at) {
+        int len = 0;
+        while (len < TEXT && buf.get(at + len) != 0) len++;
+        byte[] b = new byte[len];
+        buf.get(at, b);
+        return new String(b, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String toString() {
+        String t = switch (type) {
+            case SALE -> "SALE"; case DECLINE -> "DECLINE"; case OPEN -> "OPEN"; case STEP -> "STEP"; case VOID -> "VOID";
+            default -> "TYPE" + type;
+        };
+        return String.format(java.util.Locale.US, "#%d %s%s session=%d %s card=%d %s %.3f gal $%.2f",
+                seq, t, ((flags & RECOVERED) != 0 ? "(recovered)" : "") + ((flags & OFFLINE) != 0 ? "(offline)" : ""), sessionId, device, cardToken, grade, gallons(), dollars());
+    }
+}
@@ -0,0 +1,237 @@
+package io.log;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* Async Logger
+* Producers -> claim a slot in a preallocated ring, store the format + args, return
+* Drainer   -> one daemon thread formats and prints in batches
+*
+* Disabled levels cost a single int compare, formatting only ever happens on the drainer. Primitive
+* arguments are still boxed at the call site before that compare (and more than three arguments
+* also allocate the varargs array), so hot paths that pass numbers guard the call with isDebugEnabled().
+* When the ring is full the record is dropped and counted, callers never block.
+* */
+
+
+/* USAGE
+* private static final Log LOG = Log.named("sim");
+* private static final Log.Limit POLL_LIMIT = Log.limit(2); // 2 lines/sec
+*
+* LOG.info("SCREEN state -> %s", state);
+* LOG.debug(POLL_LIMIT, "FLOWMETER GETSTATE -> %s", payload);
+* LOG.info("%-8s %6d %9.1f %9.1f", phase, n, p50, p99);   // any number of arguments, still formatted on the drainer
+* if (LOG.isDebugEnabled()) LOG.debug("G=%.3f", gallons);   // no boxing when DEBUG is off
+*
+* -Dlog.level=DEBUG|INFO|WARN|ERROR|OFF   (default INFO)
+* -Dlog.buffer=4096                       (ring slots, rounded to a power of 2)
+* */
+
+
+public final class Log {
+    public enum Level { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static volatile int threshold = parseLevel(System.getProperty("log.level", "INFO")).ordinal();
+    private static final Ring RING = new Ring(Integer.getInteger("log.buffer", 4096), System.out);
+
+    private final String tag;
+
+    private Log(String tag) { this.tag = "[" + tag + "] "; }
+
+    public static Log named(String tag) { return new Log(tag); }
+
+    public static Limit limit(int perSecond) { return new Limit(perSecond); }
+
+    public static void setLevel(Level level) { threshold = level.ordinal(); }
+
+    public static long dropped() { return RING.dropped.get(); }
+
+    public boolean isEnabled(Level level) { return level.ordinal() >= threshold; }
+
+    public boolean isDebugEnabled() { return Level.DEBUG.ordinal() >= threshold; }
+
+    // ---- Level shortcuts ---------------------------------------------------
+    public void debug(String fmt)                               { log(Level.DEBUG, null, fmt, null, null, null, 0); }
+    public void debug(String fmt, Object a)                     { log(Level.DEBUG, null, fmt, a, null, null, 1); }
+    public void debug(String fmt, Object a, Object b)           { log(Level.DEBUG, null, fmt, a, b, null, 2); }
+    public void debug(Limit lim, String fmt, Object a)          { log(Level.DEBUG, lim, fmt, a, null, null, 1); }
+    public void debug(Limit lim, String fmt, Object a, Object b){ log(Level.DEBUG, lim, fmt, a, b, null, 2); }
+    public void debug(String fmt, Object... args)               { log(Level.DEBUG, null, fmt, args); }
+
+    public void info(String fmt)                                { log(Level.INFO, null, fmt, null, null, null, 0); }
+    public void info(String fmt, Object a)                      { log(Level.INFO, null, fmt, a, null, null, 1); }
+    public void info(String fmt, Object a, Object b)            { log(Level.INFO, null, fmt, a, b, null, 2); }
+    public void info(String fmt, Object a, Object b, Object c)  { log(Level.INFO, null, fmt, a, b, c, 3); }
+    public void info(Limit lim, String fmt, Object a)           { log(Level.INFO, lim, fmt, a, null, null, 1); }
+    public void info(String fmt, Object... args)                { log(Level.INFO, null, fmt, args); }
+
+    public void warn(String fmt)                                { log(Level.WARN, null, fmt, null, null, null, 0); }
+    public void warn(String fmt, Object a)                      { log(Level.WARN, null, fmt, a, null, null, 1); }
+    public void warn(String fmt, Object a, Object b)            { log(Level.WARN, null, fmt, a, b, null, 2); }
+    public void warn(Limit lim, String fmt, Object a)           { log(Level.WARN, lim, fmt, a, null, null, 1); }
+    public void warn(Limit lim, String fmt, Object a, Object b) { log(Level.WARN, lim, fmt, a, b, null, 2); }
+    public void warn(String fmt, Object... args)                { log(Level.WARN, null, fmt, args); }
+
+    public void error(String fmt)                               { log(Level.ERROR, null, fmt, null, null, null, 0); }
+    public void error(String fmt, Object a)                     { log(Level.ERROR, null, fmt, a, null, null, 1); }
+    public void error(String fmt, Object a, Object b)           { log(Level.ERROR, null, fmt, a, b, null, 2); }
+    public void error(String fmt, Object... args)               { log(Level.ERROR, null, fmt, args); }
+
+    private void log(Level level, Limit lim, String fmt, Object a, Object b, Object c, int argc) {
+        if (level.ordinal() < threshold) return;
+        int suppressed = 0;
+        if (lim != null) {
+            if (!lim.tryAcquire()) return;
+            suppressed = lim.takeSuppressed();
+        }
+        RING.offer(level, tag, fmt, a, b, c, null, argc, suppressed);
+    }
+
+    // More than three arguments: the array rides along in the slot
+    private void log(Level level, Limit lim, String fmt, Object[] args) {
+        if (level.ordinal() < threshold) return;
+        RING.offer(level, tag, fmt, null, null, null, args, args.length, 0);
+    }
+
+    private static Level parseLevel(String s) {
+        try { return Level.valueOf(s.trim().toUpperCase(Locale.ROOT)); }
+        catch (Exception e) { return Level.INFO; }
+    }
+
+    // -----------------------------------------------------------------------
+
+    /** Per call-site limiter: at most {@code perSecond} lines per 1 s window, the rest are counted. */
+    public static final class Limit {
+        private final int perSecond;
+        private final AtomicLong window = new AtomicLong();
+        private final AtomicInteger used = new AtomicInteger();
+        private final AtomicInteger suppressed = new AtomicInteger();
+
+        private Limit(int perSecond) { this.perSecond = Math.max(1, perSecond); }
+
+        boolean tryAcquire() {
+            long sec = System.nanoTime() / 1_000_000_000L;
+            long w = window.get();
+            if (w != sec && window.compareAndSet(w, sec)) used.set(0);
+            if (used.incrementAndGet() <= perSecond) return true;
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        int takeSuppressed() { return suppressed.getAndSet(0); }
+    }
+
+    // -----------------------------------------------------------------------
+
+    /* Bounded multi-producer / single-consumer ring.
+    * tail  -> next sequence to claim (CAS by producers)
+    * head  -> next sequence to drain (drainer only)
+    * slot.published == seq once the producer finished writing it
+    * */
+    private static final class Ring {
+        private static final class Slot {
+            volatile long published = -1L;
+            Level level;
+            String tag, fmt;
+            Object a, b, c;
+            Object[] args; // argc > 3
+            int argc, suppressed;
+        }
+
+        private final Slot[] slots;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head = 0L;
+        private volatile boolean parked = false;
+        private final AtomicLong dropped = new AtomicLong();
+        private long droppedReported = 0L;
+        private final PrintStream out;
+        private final Thread drainer;
+
+        Ring(int capacity, PrintStream out) {
+            int cap = Integer.highestOneBit(Math.max(64, capacity - 1) << 1);
+            this.slots = new Slot[cap];
+            for (int i = 0; i < cap; i++) slots[i] = new Slot();
+            this.mask = cap - 1;
+            this.out = out;
+            this.drainer = new Thread(this::drainLoop, "log-drain");
+            this.drainer.setDaemon(true);
+            this.drainer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::drainNow, "log-flush"));
+        }
+
+        void offer(Level level, String tag, String fmt, Object a, Object b, Object c, Object[] args, int argc, int suppressed) {
+            long n;
+            do {
+                n = tail.get();
+                if (n - head >= slots.length) { dropped.incrementAndGet(); return; }
+            } while (!tail.compareAndSet(n, n + 1));
+
+            Slot s = slots[(int) n & mask];
+            s.level = level;
+            s.tag = tag;
+            s.fmt = fmt;
+            s.a = a; s.b = b; s.c = c;
+            s.args = args;
+            s.argc = argc;
+            s.suppressed = suppressed;
+            s.published = n;
+
+            if (parked) LockSupport.unpark(drainer);
+        }
+
+        private void drainLoop() {
+            while (true) {
+                if (drainNow() == 0) {
+                    parked = true;
+                    if (tail.get() == head) LockSupport.parkNanos(50_000_000L);
+                    parked = false;
+                }
+            }
+        }
+
+        private synchronized int drainNow() {
+            StringBuilder sb = new StringBuilder(256);
+            int n = 0;
+            long h = head;
+            long total = dropped.get();
+            long lost = total - droppedReported;
+            droppedReported = total;
+            while (true) {
+                Slot s = slots[(int) h & mask];
+                if (s.published != h) break;
+                format(sb, s);
+                s.tag = null; s.fmt = null; s.a = null; s.b = null; s.c = null; s.args = null;
+                head = ++h;
+                n++;
+                if (sb.length() > 8192) { out.print(sb); sb.setLength(0); }
+            }
+            if (lost > 0) sb.append("[log] ").append(lost).append(" records dropped (ring full)\n");
+            if (sb.length() > 0) { out.print(sb); out.flush(); }
+            return n;
+        }
+
+        private static void format(StringBuilder sb, Slot s) {
+            sb.append(s.tag);
+            if (s.level != Level.INFO) sb.append(s.level).append(' ');
+            if (s.argc == 0) {
+                sb.append(s.fmt);
+            } else {
+                try {
+                    sb.append(s.args != null ? String.format(Locale.US, s.fmt, s.args) : switch (s.argc) {
+                        case 1 -> String.format(Locale.US, s.fmt, s.a);
+                        case 2 -> String.format(Locale.US, s.fmt, s.a, s.b);
+                        default -> String.format(Locale.US, s.fmt, s.a, s.b, s.c);
+                    });
+                } catch (RuntimeException e) {
+                    sb.append(s.fmt).append(" <bad format: ").append(e.getMessage()).append('>');
+                }
+            }
+            if (s.suppressed > 0) sb.append(" (+").append(s.suppressed).append(" suppressed)");
+            sb.append('\n');
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package io.log;
+
+import java.util.Arrays;
+
+/* Latency Recorder
+* Raw samples in nanoseconds, sorted lazily the first time a percentile is asked for, so the
+* percentiles are exact (no buckets). Shared by the load generator and the screen bench for
+* their p50/p90/p99/max tables. One thread only.
+* */
+
+
+/* USAGE
+* Recorder r = new Recorder();
+* r.add(System.nanoTime() - start);
+* r.pctMs(99)   r.pctUs(50)   r.pctMs(100)   // 100 = max
+* */
+
+
+public final class Recorder {
+    private long[] v = new long[64];
+    private int n = 0;
+    private boolean sorted = true;
+
+    public void add(long nanos) {
+        if (n == v.length) v = Arrays.copyOf(v, n * 2);
+        v[n++] = nanos;
+        sorted = false;
+    }
+
+    public int size() { return n; }
+
+    public double pctMs(double p) { return pctNanos(p) / 1_000_000.0; }
+
+    public double pctUs(double p) { return pctNanos(p) / 1_000.0; }
+
+    /** Nearest-rank percentile, 0 when empty. */
+    public long pctNanos(double p) {
+        if (n == 0) return 0L;
+        if (!sorted) { Arrays.sort(v, 0, n); sorted = true; }
+        int idx = (int) Math.ceil(p / 100.0 * n) - 1;
+        return v[Math.max(0, Math.min(n - 1, idx))];
+    }
+}
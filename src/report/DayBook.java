@@ -0,0 +1,95 @@
+package report;
+
+import io.journal.Journal;
+import io.journal.TxnRecord;
+import io.log.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/* Day Book
+* The live day's Totals, updated as the journal appends (journal.listen(book::accept)), so the
+* end-of-day report is ready the moment the day ends: roll() writes it to reports/<date>.txt and
+* starts the next day. Records are counted in the day they arrive, a record ending just before
+* midnight but appended after the roll lands in the new day (EndOfDay re-runs a day exactly).
+*
+* On open the current day so far is rebuilt from the journal (EndOfDay, fork-join), so a restart
+* mid-day does not lose the morning.
+* */
+
+public final class DayBook {
+    private static final Log LOG = Log.named("report");
+
+    private final Path reportDir;
+    // accept() from any number of threads (Totals is all adders), roll() alone
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ZoneId zone = ZoneId.systemDefault();
+    private LocalDate day;
+    private volatile long dayEndMs;
+    private volatile Totals totals;
+
+    private DayBook(Path reportDir, LocalDate day, Totals totals) {
+        this.reportDir = reportDir;
+        this.day = day;
+        this.dayEndMs = EndOfDay.startOf(day.plusDays(1), zone);
+        this.totals = totals;
+    }
+
+    public static DayBook open(Journal journal, Path reportDir, long nowMs) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = java.time.Instant.ofEpochMilli(nowMs).atZone(zone).toLocalDate();
+        long t0 = System.nanoTime();
+        Totals t = EndOfDay.rebuild(journal::read, journal.lastSeq(), EndOfDay.startOf(today, zone),
+                EndOfDay.startOf(today.plusDays(1), zone), ForkJoinPool.commonPool());
+        LOG.info("day %s so far: %d sales, $%.2f (rebuilt in %.1f ms)",
+                today, t.sales.sum(), t.cents.sum() / 100.0, (System.nanoTime() - t0) / 1_000_000.0);
+        return new DayBook(reportDir, today, t);
+    }
+
+    public void accept(TxnRecord r) {
+        if (r.endMs >= dayEndMs) roll(r.endMs);
+        lock.readLock().lock();
+        try {
+            totals.accept(r);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Closes every day that ended before {@code nowMs}; call it on a timer so an idle night still closes. */
+    public void roll(long nowMs) {
+        if (nowMs < dayEndMs) return;
+        lock.writeLock().lock();
+        try {
+            while (nowMs >= dayEndMs) {
+                Totals done = totals;
+                LocalDate closing = day;
+                day = day.plusDays(1);
+                dayEndMs = EndOfDay.startOf(day.plusDays(1), zone);
+                totals = new Totals();
+                write(closing, done.lines("End of day " + closing));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<String> current() { return totals.lines("Day " + day + " so far"); }
+
+    private void write(LocalDate d, List<String> lines) {
+        for (String l : lines) LOG.info("%s", l);
+        try {
+            Files.createDirectories(reportDir);
+            Files.write(reportDir.resolve(d + ".txt"), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.warn("cannot write report for %s: %s", d, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package report;
+
+import io.journal.JournalReader;
+import io.journal.TxnRecord;
+import io.log.Log;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongFunction;
+
+/* End-of-Day Re-aggregation
+* Totals for any time window straight from the journal: the window's seq range is found by binary
+* search on the records' end time (appended in time order), then split into chunks that a
+* ForkJoinPool scans in parallel, each into its own Totals, merged on the way back up.
+* DayBook uses it to pick up the current day on start; the CLI re-runs any past day.
+* */
+
+
+/* USAGE
+* java -cp out report.EndOfDay                          (today, journal in ./journal)
+* java -cp out report.EndOfDay --day 2026-03-01 --threads 4
+*
+* --dir DIR        journal directory            (default: -Djournal.dir or journal)
+* --day DATE       local date                   (default today)
+* --threads N      fork-join parallelism        (default: cores)
+* */
+
+
+public final class EndOfDay {
+    private static final Log LOG = Log.named("report");
+    static final int CHUNK = 16_384; // records a leaf scans
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = parseArgs(args);
+        Path dir = Path.of(opt.getOrDefault("dir", System.getProperty("journal.dir", "journal")));
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate day = opt.containsKey("day") ? LocalDate.parse(opt.get("day")) : LocalDate.now(zone);
+        int threads = Integer.parseInt(opt.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        try (JournalReader reader = new JournalReader(dir)) {
+            long last = lastSeq(reader);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long from = startOf(day, zone), to = startOf(day.plusDays(1), zone);
+            long t0 = System.nanoTime();
+            Totals t = rebuild(reader::read, last, from, to, pool);
+            double ms = (System.nanoTime() - t0) / 1_000_000.0;
+            pool.shutdown();
+            for (String l : t.lines("End of day " + day)) LOG.info("%s", l);
+            long lo = firstAtOrAfter(reader::read, 1, last, from), hi = firstAtOrAfter(reader::read, lo, last, to) - 1;
+            LOG.info("re-aggregated seqs %d..%d (%d records) in %.1f ms on %d threads",
+                    lo, hi, Math.max(0, hi - lo + 1), ms, threads);
+        }
+    }
+
+    /** Totals of the records in seqs 1..lastSeq whose end time is in [fromMs, toMs). */
+    public static Totals rebuild(LongFunction<TxnRecord> records, long lastSeq, long fromMs, long toMs, ForkJoinPool pool) {
+        long lo = firstAtOrAfter(records, 1, lastSeq, fromMs);
+        long hi = firstAtOrAfter(records, lo, lastSeq, toMs) - 1;
+        if (hi < lo) return new Totals();
+        return pool.invoke(new Scan(records, lo, hi, fromMs, toMs));
+    }
+
+    public static long startOf(LocalDate day, ZoneId zone) {
+        return day.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    // Smallest seq in [lo, hi] whose record ends at or after timeMs, hi + 1 if none; unreadable counts as after
+    static long firstAtOrAfter(LongFunction<TxnRecord> records, long lo, long hi, long timeMs) {
+        long a = lo, b = hi + 1;
+        while (a < b) {
+            long mid = (a + b) >>> 1;
+            TxnRecord r = records.apply(mid);
+            if (r != null && r.endMs < timeMs) a = mid + 1; else b = mid;
+        }
+        return a;
+    }
+
+    // Last readable seq, by doubling then binary search (the reader has no head pointer)
+    static long lastSeq(JournalReader reader) {
+        if (reader.read(1) == null) return 0;
+        long good = 1, step = 1;
+        while (reader.read(good + step) != null) { good += step; step <<= 1; }
+        long a = good, b = good + step; // a readable, b not
+        while (b - a > 1) {
+            long mid = (a + b) >>> 1;
+            if (reader.read(mid) != null) a = mid; else b = mid;
+        }
+        return a;
+    }
+
+    @SuppressWarnings("serial") // ForkJoinTask is Serializable, a Scan never leaves the pool
+    private static final class Scan extends RecursiveTask<Totals> {
+        private final LongFunction<TxnRecord> records;
+        private final long lo, hi, fromMs, toMs;
+
+        Scan(LongFunction<TxnRecord> records, long lo, long hi, long fromMs, long toMs) {
+            this.records = records;
+            this.lo = lo;
+            this.hi = hi;
+            this.fromMs = fromMs;
+            this.toMs = toMs;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (hi - lo < CHUNK) {
+                Totals t = new Totals();
+                for (long seq = lo; seq <= hi; seq++) {
+                    TxnRecord r = records.apply(seq);
+                    if (r != null && r.endMs >= fromMs && r.endMs < toMs) t.accept(r);
+                }
+                return t;
+            }
+            long mid = (lo + hi) >>> 1;
+            Scan left = new Scan(records, lo, mid, fromMs, toMs);
+            left.fork();
+            Totals right = new Scan(records, mid + 1, hi, fromMs, toMs).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> m = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("--")) m.put(args[i].substring(2), args[i + 1]);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,131 @@
+package report;
+
+import io.journal.TxnRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Reconciliation Totals
+* Running totals over journal records, fed one record at a time (accept) by any number of threads,
+* and mergeable (merge), so the same class serves the live day and the fork-join rebuild:
+*
+*   outcomes   AUTH:YES sessions (OPEN, offline ones also counted apart), AUTH:NO (DECLINE), SALE, VOID,
+*              recovered closes
+*   grades     sales / gallons / dollars per grade, prices as journaled from StationServer GETPRICE
+*   pumps      the same per pump (device id)
+*   delivered  gallons the meter dispensed (SALE + VOID), against sold (SALE): what left the
+*              tank without a charge shows as unsold
+*
+* Amounts stay in the journal's fixed point (micro-gallons, cents), no rounding drift.
+* */
+
+public final class Totals {
+    public final LongAdder authorised = new LongAdder();
+    public final LongAdder declined = new LongAdder();
+    public final LongAdder sales = new LongAdder();
+    public final LongAdder voids = new LongAdder();
+    public final LongAdder recovered = new LongAdder();
+    public final LongAdder offline = new LongAdder();
+    public final LongAdder deliveredMicro = new LongAdder();
+    public final LongAdder soldMicro = new LongAdder();
+    public final LongAdder cents = new LongAdder();
+    final Map<String, Bucket> grades = new ConcurrentHashMap<>();
+    final Map<String, Bucket> pumps = new ConcurrentHashMap<>();
+
+    public void accept(TxnRecord r) {
+        switch (r.type) {
+            case TxnRecord.OPEN -> authorised.increment();
+            case TxnRecord.DECLINE -> declined.increment();
+            case TxnRecord.SALE -> {
+                sales.increment();
+                deliveredMicro.add(r.gallonsMicro);
+                soldMicro.add(r.gallonsMicro);
+                cents.add(r.cents);
+                grades.computeIfAbsent(r.grade, k -> new Bucket()).add(r);
+                pumps.computeIfAbsent(r.device, k -> new Bucket()).add(r);
+            }
+            case TxnRecord.VOID -> {
+                voids.increment();
+                deliveredMicro.add(r.gallonsMicro);
+            }
+            default -> { return; } // STEP checkpoints carry nothing final
+        }
+        if ((r.flags & TxnRecord.RECOVERED) != 0) recovered.increment();
+        if ((r.flags & TxnRecord.OFFLINE) != 0 && r.type == TxnRecord.OPEN) offline.increment(); // approvals, of AUTH:YES
+    }
+
+    public Totals merge(Totals o) {
+        authorised.add(o.authorised.sum());
+        declined.add(o.declined.sum());
+        sales.add(o.sales.sum());
+        voids.add(o.voids.sum());
+        recovered.add(o.recovered.sum());
+        offline.add(o.offline.sum());
+        deliveredMicro.add(o.deliveredMicro.sum());
+        soldMicro.add(o.soldMicro.sum());
+        cents.add(o.cents.sum());
+        o.grades.forEach((k, b) -> grades.computeIfAbsent(k, x -> new Bucket()).merge(b));
+        o.pumps.forEach((k, b) -> pumps.computeIfAbsent(k, x -> new Bucket()).merge(b));
+        return this;
+    }
+
+    /** The report, one line per entry. */
+    public List<String> lines(String title) {
+        List<String> out = new ArrayList<>();
+        out.add(title);
+        out.add(String.format(Locale.US, "sessions   AUTH:YES %d, AUTH:NO %d, sales %d, void %d, recovered %d, offline %d",
+                authorised.sum(), declined.sum(), sales.sum(), voids.sum(), recovered.sum(), offline.sum()));
+        table(out, "grade", grades);
+        table(out, "pump", pumps);
+        long delivered = deliveredMicro.sum(), sold = soldMicro.sum();
+        out.add(String.format(Locale.US, "delivered  %.3f gal, sold %.3f gal, unsold %.3f gal (%.2f%%), revenue $%.2f",
+                delivered / 1e6, sold / 1e6, (delivered - sold) / 1e6,
+                delivered == 0 ? 0.0 : 100.0 * (delivered - sold) / delivered, cents.sum() / 100.0));
+        return out;
+    }
+
+    private static void table(List<String> out, String what, Map<String, Bucket> rows) {
+        out.add(String.format(Locale.US, "%-10s %7s %12s %12s %8s %8s", what, "sales", "gallons", "dollars", "$/gal", "price"));
+        for (Map.Entry<String, Bucket> e : new TreeMap<>(rows).entrySet()) {
+            Bucket b = e.getValue();
+            long g = b.gallonsMicro.sum(), c = b.cents.sum();
+            long lo = b.minPriceMills.get(), hi = b.maxPriceMills.get();
+            String price = lo == hi ? String.format(Locale.US, "%.3f", lo / 1e3)
+                                    : String.format(Locale.US, "%.3f-%.3f", lo / 1e3, hi / 1e3);
+            out.add(String.format(Locale.US, "%-10s %7d %12.3f %12.2f %8.3f %8s",
+                    e.getKey().isEmpty() ? "-" : e.getKey(), b.sales.sum(), g / 1e6, c / 100.0,
+                    g == 0 ? 0.0 : (c / 100.0) / (g / 1e6), price));
+        }
+    }
+
+    static final class Bucket {
+        final LongAdder sales = new LongAdder();
+        final LongAdder gallonsMicro = new LongAdder();
+        final LongAdder cents = new LongAdder();
+        // Price range seen, to spot a price change during the day
+        final AtomicLong minPriceMills = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong maxPriceMills = new AtomicLong(Long.MIN_VALUE);
+
+        void add(TxnRecord r) {
+            sales.increment();
+            gallonsMicro.add(r.gallonsMicro);
+            cents.add(r.cents);
+            minPriceMills.accumulateAndGet(r.priceMills, Math::min);
+            maxPriceMills.accumulateAndGet(r.priceMills, Math::max);
+        }
+
+        void merge(Bucket o) {
+            sales.add(o.sales.sum());
+            gallonsMicro.add(o.gallonsMicro.sum());
+            cents.add(o.cents.sum());
+            minPriceMills.accumulateAndGet(o.minPriceMills.get(), Math::min);
+            maxPriceMills.accumulateAndGet(o.maxPriceMills.get(), Math::max);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package sim;
+
+import java.util.Random;
+
+/* Simulated Dispenser + Vehicle Tank
+* Stepped by the shared TickEngine, never by a GUI.
+*
+*   flow ramps toward MAX_GPM with a first-order lag (pump spin-up, valve opening)
+*   near the top of the tank the target rate tapers off (foam in the filler neck)
+*   once the level reaches the shutoff margin the nozzle trips: FULL, valve closes
+*   stopping (HOSE|STOP, detach, trip) is not instant, flow decays over VALVE_CLOSE_TAU_S
+*
+* Writers: tick thread (level, rate), HoseServer/HoseControlServer (flags, tank).
+* Readers: any server thread, all fields are volatile.
+* */
+
+final class Dispenser {
+    static final double MAX_GPM           = 10.0;
+    static final double RAMP_UP_TAU_S     = 0.8;
+    static final double VALVE_CLOSE_TAU_S = 0.15;
+    static final double SLOWDOWN_GAL      = 0.6;   // taper starts this far below capacity
+    static final double SLOWDOWN_MIN_GPM  = 1.5;
+    static final double SHUTOFF_MARGIN_GAL = 0.02; // nozzle trips this far below capacity
+    static final double STOPPED_GPM       = 0.001;
+
+    final String id;
+
+    volatile double capGal = 0.0;
+    volatile double curGal = 0.0;
+    volatile boolean attached = false;
+    volatile boolean armed = false;
+    volatile boolean full = false;
+    volatile double rateGpm = 0.0;
+    volatile double sessionGal = 0.0; // delivered since the last HOSE|START
+
+    Dispenser(String id) { this.id = id; }
+
+    // ---- Commands -----------------------------------------------------------
+    synchronized void arm() {
+        armed = true;
+        full = false;
+        sessionGal = 0.0;
+    }
+
+    synchronized void disarm() {
+        armed = false;
+        if (!attached) clearTank(); // the car left during the session, the next attach is a new one
+    }
+
+    synchronized void attach(Random rnd) {
+        attached = true;
+        if (capGal <= 0.0) newTank(rnd); // a car pulled up without a tank being configured
+    }
+
+    synchronized void detach() {
+        attached = false;
+        // Mid-session the nozzle may go back in (Main's resume window): same car, same tank until the
+        // session ends (disarm). Otherwise the car drives off (sessionGal still counts this sale).
+        if (!armed) clearTank();
+    }
+
+    private void clearTank() {
+        capGal = 0.0;
+        curGal = 0.0;
+        full = false;
+    }
+
+    synchronized void newTank(Random rnd) {
+        capGal = 10 + rnd.nextDouble() * 20;
+        curGal = capGal * (rnd.nextDouble() * rnd.nextDouble() * rnd.nextDouble());
+        full = false;
+    }
+
+    boolean valveOpen() { return armed && attached && !full; }
+
+    // ---- Physics -------------------------------------------------------------
+    /** Advances the model by {@code dt} seconds. Tick thread only. */
+    synchronized void step(double dt) {
+        if (dt <= 0) return;
+        double rate = rateGpm;
+        double headroom = capGal - curGal;
+
+        double target = 0.0;
+        if (valveOpen()) {
+            target = MAX_GPM;
+            if (headroom < SLOWDOWN_GAL) {
+                target = Math.max(SLOWDOWN_MIN_GPM, MAX_GPM * headroom / SLOWDOWN_GAL);
+            }
+        }
+
+        double tau = target > rate ? RAMP_UP_TAU_S : VALVE_CLOSE_TAU_S;
+        rate += (target - rate) * (1.0 - Math.exp(-dt / tau));
+        if (target == 0.0 && rate < STOPPED_GPM) rate = 0.0;
+
+        if (rate > 0.0) {
+            double dGal = Math.min(rate * dt / 60.0, Math.max(0.0, headroom));
+            curGal += dGal;
+            sessionGal += dGal;
+        }
+        rateGpm = rate;
+
+        if (!full && armed && capGal > 0.0 && capGal - curGal <= SHUTOFF_MARGIN_GAL) {
+            full = true;
+            SimDevices.LOG.info("HOSE %s auto shutoff at %.3f/%.3f gal", id, curGal, capGal);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package sim;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Fault / Latency Injection
+* Wraps every SimServer reply. Per device (SimServer.deviceName(), e.g. CARDSERVER, HOSE):
+*   latency=fixed:900 | uniform:100-400 | exp:250 | pareto:50:1.5   base delay in ms (pareto min:shape, both > 0)
+*   jitter=MS        extra uniform 0..MS ms on top
+*   drop=P           probability the reply is swallowed (client times out)
+*   reset=P          probability the connection is reset instead of replying
+*   garble=P         probability the reply frame is corrupted
+*
+* Spec example: "latency=exp:900,jitter=50,drop=0.01,garble=0.005"
+*
+* Startup:  -Dsim.faults="CARDSERVER=latency=fixed:900;HOSE=drop=0.05"
+* Runtime:  fault-ctrl port 5721
+*   FAULT|SET|<DEVICE>|<spec>    FAULT|CLEAR|<DEVICE>|None    FAULT|CLEAR|ALL|None
+*   FAULT|GET|<DEVICE>|None      FAULT|LIST|ALL|None
+* */
+
+final class FaultInjector {
+    enum Action { REPLY, DROP, RESET }
+
+    static final class Profile {
+        final String spec;
+        final char dist;         // 'n'one, 'f'ixed, 'u'niform, 'e'xp, 'p'areto
+        final double a, b;       // distribution parameters
+        final double jitterMs, drop, reset, garble;
+
+        private Profile(String spec, char dist, double a, double b,
+                        double jitterMs, double drop, double reset, double garble) {
+            this.spec = spec;
+            this.dist = dist;
+            this.a = a;
+            this.b = b;
+            this.jitterMs = jitterMs;
+            this.drop = drop;
+            this.reset = reset;
+            this.garble = garble;
+        }
+
+        static Profile parse(String spec) {
+            char dist = 'n';
+            double a = 0, b = 0, jitter = 0, drop = 0, reset = 0, garble = 0;
+            for (String kv : spec.split(",")) {
+                String[] p = kv.trim().split("=", 2);
+                if (p.length != 2) throw new IllegalArgumentException("bad entry: " + kv);
+                String key = p[0].trim().toLowerCase(Locale.ROOT);
+                String val = p[1].trim();
+                switch (key) {
+                    case "latency" -> {
+                        String[] d = val.split(":");
+                        if (d.length < 2) throw new IllegalArgumentException("bad latency: " + val);
+                        switch (d[0].toLowerCase(Locale.ROOT)) {
+                            case "fixed" -> { dist = 'f'; a = atLeastZero(d[1]); }
+                            case "uniform" -> {
+                                String[] r = d[1].split("-");
+                                if (r.length != 2) throw new IllegalArgumentException("bad uniform range: " + d[1]);
+                                dist = 'u'; a = atLeastZero(r[0]); b = atLeastZero(r[1]);
+                                if (b < a) throw new IllegalArgumentException("uniform range reversed: " + d[1]);
+                            }
+                            case "exp" -> { dist = 'e'; a = positive(d[1]); }
+                            case "pareto" -> {
+                                // scale (min delay) and shape; shape <= 0 makes the delay infinite or NaN
+                                if (d.length != 3) throw new IllegalArgumentException("bad pareto, want pareto:min:shape: " + val);
+                                dist = 'p'; a = positive(d[1]); b = positive(d[2]);
+                            }
+                            default -> throw new IllegalArgumentException("unknown latency: " + val);
+                        }
+                    }
+                    case "jitter" -> jitter = atLeastZero(val);
+                    case "drop"   -> drop   = probability(val);
+                    case "reset"  -> reset  = probability(val);
+                    case "garble" -> garble = probability(val);
+                    default -> throw new IllegalArgumentException("unknown key: " + key);
+                }
+            }
+            return new Profile(spec.trim(), dist, a, b, jitter, drop, reset, garble);
+        }
+
+        long delayMs(Random rnd) {
+            double ms = switch (dist) {
+                case 'f' -> a;
+                case 'u' -> a + rnd.nextDouble() * (b - a);
+                case 'e' -> -Math.log(1.0 - rnd.nextDouble()) * a;
+                case 'p' -> a / Math.pow(1.0 - rnd.nextDouble(), 1.0 / b); // heavy tail, min = a
+                default  -> 0.0;
+            };
+            if (jitterMs > 0) ms += rnd.nextDouble() * jitterMs;
+            return (long) Math.max(0, ms);
+        }
+
+        private static double positive(String v) {
+            double x = Double.parseDouble(v);
+            if (!(x > 0) || Double.isInfinite(x)) throw new IllegalArgumentException("must be > 0: " + v);
+            return x;
+        }
+
+        private static double atLeastZero(String v) {
+            double x = Double.parseDouble(v);
+            if (!(x >= 0) || Double.isInfinite(x)) throw new IllegalArgumentException("must be >= 0: " + v);
+            return x;
+        }
+
+        private static double probability(String v) {
+            double p = Double.parseDouble(v);
+            if (!(p >= 0 && p <= 1)) throw new IllegalArgumentException("probability out of range: " + v);
+            return p;
+        }
+    }
+
+    static final class Stats {
+        final AtomicLong replies = new AtomicLong();
+        final AtomicLong delayedMs = new AtomicLong();
+        final AtomicLong drops = new AtomicLong();
+        final AtomicLong resets = new AtomicLong();
+        final AtomicLong garbles = new AtomicLong();
+
+        @Override
+        public String toString() {
+            return "REPLIES:" + replies + ",DELAY_MS:" + delayedMs + ",DROPS:" + drops
+                    + ",RESETS:" + resets + ",GARBLES:" + garbles;
+        }
+    }
+
+    private static final Map<String, Profile> PROFILES = new ConcurrentHashMap<>();
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+
+    private FaultInjector() {}
+
+    static Profile get(String device) { return PROFILES.get(device); }
+
+    static void set(String device, Profile p) {
+        PROFILES.put(device, p);
+        SimDevices.LOG.info("FAULT %s -> %s", device, p.spec);
+    }
+
+    static void clear(String device) {
+        if ("ALL".equals(device)) PROFILES.clear();
+        else PROFILES.remove(device);
+        SimDevices.LOG.info("FAULT %s cleared", device);
+    }
+
+    static Stats stats(String device) { return STATS.computeIfAbsent(device, d -> new Stats()); }
+
+    /** Reads -Dsim.faults="DEV=spec;DEV=spec". */
+    static void loadFromProperties() {
+        String all = System.getProperty("sim.faults");
+        if (all == null || all.isBlank()) return;
+        for (String entry : all.split(";")) {
+            int i = entry.indexOf('=');
+            if (i <= 0) continue;
+            set(entry.substring(0, i).trim().toUpperCase(Locale.ROOT), Profile.parse(entry.substring(i + 1)));
+        }
+    }
+
+    /**
+     * Applies the device profile to one outgoing reply: sleeps for the injected latency and decides
+     * whether the reply goes out. {@code reply[0]} may be replaced with a garbled frame.
+     */
+    static Action apply(String device, String[] reply, Random rnd) throws InterruptedException {
+        Profile p = PROFILES.get(device);
+        if (p == null) return Action.REPLY;
+        Stats st = stats(device);
+        st.replies.incrementAndGet();
+
+        // Real time on purpose: this models the wire, not the device's own clock
+        long d = p.delayMs(rnd);
+        if (d > 0) {
+            st.delayedMs.addAndGet(d);
+            Thread.sleep(d);
+        }
+        if (p.reset > 0 && rnd.nextDouble() < p.reset) { st.resets.incrementAndGet(); return Action.RESET; }
+        if (p.drop > 0 && rnd.nextDouble() < p.drop)   { st.drops.incrementAndGet();  return Action.DROP; }
+        if (p.garble > 0 && rnd.nextDouble() < p.garble) {
+            st.garbles.incrementAndGet();
+            reply[0] = garble(reply[0], rnd);
+        }
+        return Action.REPLY;
+    }
+
+    // Flip a few characters, sometimes cut the frame short (lost closing quote)
+    private static String garble(String s, Random rnd) {
+        if (s.isEmpty()) return "\u0000";
+        char[] c = s.toCharArray();
+        int flips = 1 + rnd.nextInt(3);
+        for (int i = 0; i < flips; i++) c[rnd.nextInt(c.length)] = (char) ('!' + rnd.nextInt(94));
+        int len = rnd.nextBoolean() ? c.length : 1 + rnd.nextInt(c.length);
+        return new String(c, 0, len);
+    }
+
+    // ─────────────── Fault Control ───────────────
+    static final class FaultControlServer extends SimDevices.SimServer {
+        FaultControlServer(String id, int port) { super(id, port); }
+
+        @Override String deviceName() { return "FAULTCTRL"; }
+
+        @Override
+        String handle(String line) {
+            String[] p = line.split("\\|", 4);
+            if (p.length != 4 || !"FAULT".equals(p[0])) return "MAIN|REPLY|FAULT|\"ERR:UNKNOWN_COMMAND\"";
+            String device = p[2].trim().toUpperCase(Locale.ROOT);
+            switch (p[1]) {
+                case "SET" -> {
+                    try {
+                        set(device, Profile.parse(p[3]));
+                        return "MAIN|REPLY|FAULT|\"OK\"";
+                    } catch (RuntimeException e) {
+                        return "MAIN|REPLY|FAULT|\"ERR:BAD_SPEC\"";
+                    }
+                }
+                case "CLEAR" -> {
+                    clear(device);
+                    return "MAIN|REPLY|FAULT|\"OK\"";
+                }
+                case "GET" -> {
+                    Profile prof = PROFILES.get(device);
+                    return "MAIN|REPLY|FAULT|\"PROFILE:" + (prof == null ? "NONE" : prof.spec)
+                            + ";" + stats(device) + "\"";
+                }
+                case "LIST" -> {
+                    StringBuilder sb = new StringBuilder("MAIN|REPLY|FAULT|\"LIST:");
+                    new TreeMap<>(PROFILES).forEach((k, v) -> sb.append(k).append('=').append(v.spec).append(';'));
+                    return sb.append('"').toString();
+                }
+                default -> { return "MAIN|REPLY|FAULT|\"ERR:UNKNOWN_COMMAND\""; }
+            }
+        }
+    }
+}
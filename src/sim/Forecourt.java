@@ -0,0 +1,236 @@
+package sim;
+
+import devices.FlowRegistry;
+
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Random;
+
+/* Forecourt
+* Every pump position a site manager watches, as primitive arrays (one slot per position, no objects).
+* Position 0 mirrors this simulator's own station (screen state, flow meter, pump grade), the others
+* run a synthetic customer cycle in the ScreenGUI vocabulary:
+*   WELCOME -> GRADE_MENU -> ATTACH_HOSE -> FUELING -> THANK_YOU -> WELCOME
+*   WELCOME -> AUTH_NO -> WELCOME, now and then ERROR
+*
+* Stepped after every physics tick, streamed on the FORECOURT topic as deltas (see Topic.defineStream):
+*   snapshot  N:500;GRADES:Regular/Plus/E85;0,WELCOME,0.000,0.00,-1;1,FUELING,3.250,11.35,2;...
+*   delta     1,FUELING,3.310,11.56,2;7,THANK_YOU,9.020,31.48,0
+* -Dsim.positions=1 (default, only this station; 500 for a site to load-test the dashboard)
+*
+* Every position is also a meter slot in site(), a devices.FlowRegistry. A sale begins when the
+* position starts FUELING, each step publishes what it pumped, and the sale ends when it stops.
+* Position 0 reports the real dispenser's rate. The SITEFLOW topic reads the totals without a lock.
+* */
+
+final class Forecourt {
+    static final String[] STATES = { "WELCOME", "GRADE_MENU", "ATTACH_HOSE", "FUELING", "THANK_YOU", "AUTH_NO", "ERROR" };
+    static final byte WELCOME = 0, GRADE_MENU = 1, ATTACH_HOSE = 2, FUELING = 3, THANK_YOU = 4, AUTH_NO = 5, ERROR = 6;
+
+    private static final double MEAN_IDLE_MS = 20_000;
+    private static final long THANK_YOU_MS = 5_000;
+    private static final long DECLINE_MS = 2_000;
+
+    private final int n;
+    private final Random rnd;
+
+    // Position i lives at index i of every array
+    private final byte[] state;
+    private final double[] gallons;
+    private final double[] dollars;
+    private final byte[] slot;       // grade index into AVAILABLE3, -1 = none
+    private final double[] target;   // gallons this customer wants
+    private final double[] rateGpm;
+    private final long[] untilMs;    // end of the current dwell
+    private final BitSet dirty;      // changed since the last delta
+    private final FlowRegistry site;
+    private long lastNanos;
+
+    Forecourt(int positions, Random rnd) {
+        this.n = Math.max(1, positions);
+        this.rnd = rnd;
+        state = new byte[n];
+        gallons = new double[n];
+        dollars = new double[n];
+        slot = new byte[n];
+        target = new double[n];
+        rateGpm = new double[n];
+        untilMs = new long[n];
+        dirty = new BitSet(n);
+        site = new FlowRegistry(n);
+        for (int i = 0; i < n; i++) site.register(); // slot i = position i
+        long now = SimDevices.clock.currentTimeMillis();
+        lastNanos = SimDevices.clock.nanoTime();
+        for (int i = 0; i < n; i++) {
+            slot[i] = -1;
+            untilMs[i] = now + (long) (rnd.nextDouble() * MEAN_IDLE_MS); // stagger the first customers
+        }
+    }
+
+    int size() { return n; }
+
+    /** Site totals, fed by step(); read from any thread. */
+    FlowRegistry site() { return site; }
+
+    /** Advances every position to now. Tick thread (TickEngine.afterTick). */
+    synchronized void step() {
+        long nanos = SimDevices.clock.nanoTime();
+        double dt = (nanos - lastNanos) / 1_000_000_000.0;
+        lastNanos = nanos;
+        long now = SimDevices.clock.currentTimeMillis();
+        byte was = state[0];
+        double wasGal = gallons[0], wasUsd = dollars[0];
+        mirrorStation();
+        meter(0, was, wasGal, wasUsd, SimDevices.hose.rateGpm);
+        for (int i = 1; i < n; i++) {
+            was = state[i];
+            wasGal = gallons[i];
+            wasUsd = dollars[i];
+            if (state[i] == FUELING) {
+                double g = Math.min(target[i], gallons[i] + rateGpm[i] * dt / 60.0);
+                if (g != gallons[i]) {
+                    gallons[i] = g;
+                    dollars[i] = g * price(slot[i]);
+                    dirty.set(i);
+                }
+                if (g >= target[i]) enter(i, THANK_YOU, now + THANK_YOU_MS);
+            } else if (now >= untilMs[i]) {
+                advance(i, now);
+            }
+            meter(i, was, wasGal, wasUsd, rateGpm[i]);
+        }
+    }
+
+    // Position i as a meter in the site registry, from what this step changed
+    private void meter(int i, byte was, double wasGal, double wasUsd, double gpm) {
+        boolean now = state[i] == FUELING;
+        if (!now && was != FUELING) return;
+        if (now && was != FUELING) site.begin(i, site.gradeIndex(gradeName(slot[i])));
+        site.publish(i, Math.max(0.0, gallons[i] - wasGal), Math.max(0.0, dollars[i] - wasUsd),
+                gallons[i], dollars[i], now ? gpm : 0.0);
+        if (!now) site.end(i);
+    }
+
+    private void advance(int i, long now) {
+        switch (state[i]) {
+            case WELCOME -> {
+                double r = rnd.nextDouble();
+                if (r < 0.08) enter(i, AUTH_NO, now + DECLINE_MS);
+                else if (r < 0.09) enter(i, ERROR, now + DECLINE_MS);
+                else enter(i, GRADE_MENU, now + 1_000 + rnd.nextInt(3_000));
+            }
+            case GRADE_MENU -> {
+                slot[i] = (byte) rnd.nextInt(3);
+                enter(i, ATTACH_HOSE, now + 1_000 + rnd.nextInt(2_000));
+            }
+            case ATTACH_HOSE -> {
+                target[i] = 3.0 + rnd.nextDouble() * 15.0;
+                rateGpm[i] = 6.0 + rnd.nextDouble() * 4.0;
+                enter(i, FUELING, Long.MAX_VALUE);
+            }
+            default -> {
+                gallons[i] = 0.0;
+                dollars[i] = 0.0;
+                slot[i] = -1;
+                enter(i, WELCOME, now + (long) (-Math.log(1.0 - rnd.nextDouble()) * MEAN_IDLE_MS));
+            }
+        }
+    }
+
+    private void enter(int i, byte s, long until) {
+        state[i] = s;
+        untilMs[i] = until;
+        dirty.set(i);
+    }
+
+    // Position 0 is the station Main drives: state from the screen, gallons and dollars as shown on it
+    private void mirrorStation() {
+        String screen = SimDevices.screenState;
+        int colon = screen.indexOf(':');
+        String head = colon < 0 ? screen : screen.substring(0, colon);
+        byte s = switch (head) {
+            case "GRADE_MENU", "AUTH_OK" -> GRADE_MENU;
+            case "FUEL_SELECTED", "ATTACH_HOSE" -> ATTACH_HOSE;
+            case "FUELING", "FUELING_NUM" -> FUELING;
+            case "THANK_YOU", "THANK_YOU_NUM" -> THANK_YOU;
+            case "AUTH_NO" -> AUTH_NO;
+            case "ERROR" -> ERROR;
+            default -> WELCOME;
+        };
+        double g = s == FUELING || s == THANK_YOU ? SimDevices.flowGallons : 0.0;
+        double usd = s == WELCOME ? 0.0 : dollars[0];
+        if (colon >= 0 && (head.equals("FUELING_NUM") || head.equals("THANK_YOU_NUM"))) {
+            int comma = screen.indexOf(',', colon);
+            try {
+                if (comma > 0) usd = Double.parseDouble(screen.substring(comma + 1).trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        int sl = -1;
+        SimDevices.Fuel[] list = SimDevices.AVAILABLE3;
+        for (int k = 0; list != null && k < list.length; k++) {
+            if (list[k].name.equals(SimDevices.pumpGrade)) sl = k;
+        }
+        if (s == WELCOME) sl = -1;
+        if (s != state[0] || g != gallons[0] || usd != dollars[0] || sl != slot[0]) {
+            state[0] = s;
+            gallons[0] = g;
+            dollars[0] = usd;
+            slot[0] = (byte) sl;
+            dirty.set(0);
+        }
+    }
+
+    private static String gradeName(int slot) {
+        SimDevices.Fuel[] list = SimDevices.AVAILABLE3;
+        return list == null || slot < 0 || slot >= list.length ? "None" : list[slot].name;
+    }
+
+    private static double price(int slot) {
+        SimDevices.Fuel[] list = SimDevices.AVAILABLE3;
+        return list == null || slot < 0 || slot >= list.length ? 0.0 : list[slot].price;
+    }
+
+    // ---- Wire format ---------------------------------------------------------
+    /** Site totals for the SITEFLOW topic: GPM:52.4,ACTIVE:7,SALES:120;Regular=120.512/431.23;... */
+    String siteFlow() {
+        double[] gal = new double[FlowRegistry.MAX_GRADES], usd = new double[FlowRegistry.MAX_GRADES];
+        double gpm = site.totals(gal, usd);
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(String.format(Locale.US, "GPM:%.1f,ACTIVE:%d,SALES:%d", gpm, site.activeMeters(), site.sessions()));
+        for (int g = 0; g < site.gradeCount(); g++) {
+            sb.append(';').append(site.gradeName(g)).append(String.format(Locale.US, "=%.3f/%.2f", gal[g], usd[g]));
+        }
+        return sb.toString();
+    }
+
+    /** Every position, for a new subscriber or FORECOURT|GET. */
+    synchronized String snapshot() {
+        StringBuilder sb = new StringBuilder(n * 32);
+        sb.append("N:").append(n).append(";GRADES:");
+        SimDevices.Fuel[] list = SimDevices.AVAILABLE3;
+        for (int k = 0; list != null && k < list.length; k++) {
+            if (k > 0) sb.append('/');
+            sb.append(list[k].name);
+        }
+        for (int i = 0; i < n; i++) append(sb.append(';'), i);
+        return sb.toString();
+    }
+
+    /** Positions changed since the last call, "" when none. */
+    synchronized String drainDelta() {
+        if (dirty.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder(dirty.cardinality() * 32);
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            if (sb.length() > 0) sb.append(';');
+            append(sb, i);
+        }
+        dirty.clear();
+        return sb.toString();
+    }
+
+    private void append(StringBuilder sb, int i) {
+        sb.append(i).append(',').append(STATES[state[i]]).append(',')
+          .append(String.format(Locale.US, "%.3f,%.2f", gallons[i], dollars[i]))
+          .append(',').append(slot[i]);
+    }
+}
@@ -0,0 +1,236 @@
+package sim;
+
+import io.bus.DeviceLink;
+import io.bus.DeviceManager;
+import io.log.Log;
+import io.log.Recorder;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* Synthetic Customer Load Generator
+* Drives whole customer journeys through the simulator control ports, no GUI needed:
+*   CARDREADER|DEVCTL  -> tap (even digit = approved, odd = declined)
+*   SCREEN|DEVCTL      -> pick a grade from the GRADE_MENU
+*   HOSECTRL|SETCAP / SETCUR / SET -> fresh tank, attach, detach
+* Phase boundaries are detected by polling SCREEN|GETSTATE.
+*
+* The control ports take one client each, so close the device GUIs first.
+* */
+
+
+/* USAGE
+* java -cp out sim.SimDevices
+* java -cp out Main
+* java -cp out sim.LoadGen --sessions 50 --rate 6 --think 800 --decline 0.2
+*
+* --sessions N    customers to run                         (default 20)
+* --rate R        mean arrivals per minute, Poisson        (default 6)
+* --think MS      mean customer think time between steps   (default 500)
+* --decline P     fraction of taps that should be declined (default 0.2)
+* --timeout MS    max wait for any single phase            (default 30000)
+* --fill GAL      mean gallons each car needs              (default: random tank, like HoseGUI)
+* --preset P      fraction of sessions that prepay $5-$40  (default 0)
+* --seed S        RNG seed                                 (default 42)
+* */
+
+
+public final class LoadGen {
+    private static final Log LOG = Log.named("load");
+
+    static final String[] PHASES = { "queue", "auth", "select", "start", "fuel", "settle", "session" };
+
+    private final DeviceLink screen;
+    private final DeviceLink reader;
+    private final DeviceLink hose;
+    private final Random rnd;
+    private final long thinkMs;
+    private final double declineRatio;
+    private final long phaseTimeoutMs;
+    private final double meanFillGal;
+    private final double presetRatio;
+
+    private final Map<String, Recorder> phases = new LinkedHashMap<>();
+    private int approved, declined, failed;
+
+    LoadGen(DeviceLink screen, DeviceLink reader, DeviceLink hose,
+            long seed, long thinkMs, double declineRatio, long phaseTimeoutMs, double meanFillGal,
+            double presetRatio) {
+        this.screen = screen;
+        this.reader = reader;
+        this.hose = hose;
+        this.rnd = new Random(seed);
+        this.thinkMs = thinkMs;
+        this.declineRatio = declineRatio;
+        this.phaseTimeoutMs = phaseTimeoutMs;
+        this.meanFillGal = meanFillGal;
+        this.presetRatio = presetRatio;
+        for (String p : PHASES) phases.put(p, new Recorder());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = parseArgs(args);
+        int sessions   = Integer.parseInt(opt.getOrDefault("sessions", "20"));
+        double rate    = Double.parseDouble(opt.getOrDefault("rate", "6"));
+        long think     = Long.parseLong(opt.getOrDefault("think", "500"));
+        double decline = Double.parseDouble(opt.getOrDefault("decline", "0.2"));
+        long timeout   = Long.parseLong(opt.getOrDefault("timeout", "30000"));
+        long seed      = Long.parseLong(opt.getOrDefault("seed", "42"));
+        double fill    = Double.parseDouble(opt.getOrDefault("fill", "0"));
+        double preset  = Double.parseDouble(opt.getOrDefault("preset", "0"));
+
+        var entries = List.of(
+                new DeviceManager.Entry("screen-ctrl",     "127.0.0.1", 5021, "screen-ctrl", "screen"),
+                new DeviceManager.Entry("cardreader-ctrl", "127.0.0.1", 5221, "cardr-ctrl",  "cardreader"),
+                new DeviceManager.Entry("hose-ctrl",       "127.0.0.1", 5121, "hose-ctrl",   "hosectrl")
+        );
+
+        try (DeviceManager dm = new DeviceManager(entries)) {
+            LoadGen gen = new LoadGen(dm.link("screen-ctrl"), dm.link("cardreader-ctrl"), dm.link("hose-ctrl"),
+                    seed, think, decline, timeout, fill, preset);
+            gen.run(sessions, rate);
+        }
+    }
+
+    // ---- Driver ------------------------------------------------------------
+    void run(int sessions, double arrivalsPerMin) throws InterruptedException {
+        // Arrivals are generated up front so the schedule is independent of how fast the pump serves them
+        long[] arrivals = new long[sessions];
+        double meanGapMs = 60_000.0 / Math.max(0.001, arrivalsPerMin);
+        long t = 0;
+        for (int i = 0; i < sessions; i++) {
+            t += (long) (-Math.log(1.0 - rnd.nextDouble()) * meanGapMs);
+            arrivals[i] = t;
+        }
+
+        LOG.info("%d sessions, %.2f arrivals/min, think=%dms", sessions, arrivalsPerMin, thinkMs);
+        final long t0 = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            long arriveAt = t0 + arrivals[i] * 1_000_000L;
+            long wait = arriveAt - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            try {
+                session(i, Math.max(arriveAt, t0));
+            } catch (Exception e) {
+                failed++;
+                LOG.warn("session #%d failed: %s", i, e.getMessage());
+                try { hose.request("HOSECTRL|SET|MAIN|0", Duration.ofSeconds(1)); } catch (Exception ignored) {}
+                try { awaitState("WELCOME"); } catch (Exception ignored) {}
+            }
+        }
+        double elapsedMin = (System.nanoTime() - t0) / 60_000_000_000.0;
+        report(elapsedMin);
+    }
+
+    private void session(int n, long arrivedNanos) throws Exception {
+        awaitState("WELCOME");
+        long mark = System.nanoTime();
+        phases.get("queue").add(mark - arrivedNanos);
+
+        // 1) tap
+        boolean wantDecline = rnd.nextDouble() < declineRatio;
+        int digit = 2 * rnd.nextInt(5) + (wantDecline ? 1 : 0);
+        reader.request("CARDREADER|DEVCTL|MAIN|" + digit, Duration.ofSeconds(1));
+        String s = awaitState("GRADE_MENU:", "AUTH_NO");
+        mark = lap("auth", mark);
+
+        if (s.startsWith("AUTH_NO")) {
+            declined++;
+            awaitState("WELCOME");
+            lap("settle", mark);
+            phases.get("session").add(System.nanoTime() - arrivedNanos);
+            if (LOG.isDebugEnabled()) LOG.debug("session #%d declined", n);
+            return;
+        }
+
+        // 2) grade
+        think();
+        String[] menu = s.substring("GRADE_MENU:".length()).split(",");
+        String fuel = menu[rnd.nextInt(menu.length)].split("=")[0].trim();
+        mark = System.nanoTime();
+        if (presetRatio > 0 && rnd.nextDouble() < presetRatio) {
+            screen.request(String.format(Locale.US, "SCREEN|PRESET|MAIN|USD:%d.00", 5 + rnd.nextInt(36)),
+                    Duration.ofSeconds(1));
+        }
+        screen.request("SCREEN|DEVCTL|MAIN|" + fuel, Duration.ofSeconds(1));
+        awaitState("ATTACH_HOSE", "FUEL_SELECTED");
+        mark = lap("select", mark);
+
+        // 3) new tank, attach
+        think();
+        double cap = 10 + rnd.nextDouble() * 20;
+        double cur = meanFillGal > 0
+                ? Math.max(0.0, cap - meanFillGal * (0.5 + rnd.nextDouble()))
+                : cap * rnd.nextDouble() * rnd.nextDouble() * rnd.nextDouble();
+        hose.request(String.format(Locale.US, "HOSECTRL|SETCAP|MAIN|%.3f", cap), Duration.ofSeconds(1));
+        hose.request(String.format(Locale.US, "HOSECTRL|SETCUR|MAIN|%.3f", cur), Duration.ofSeconds(1));
+        mark = System.nanoTime();
+        hose.request("HOSECTRL|SET|MAIN|1", Duration.ofSeconds(1));
+        awaitState("FUELING");
+        mark = lap("start", mark);
+
+        // 4) fill until the controller settles the sale
+        awaitState("THANK_YOU");
+        mark = lap("fuel", mark);
+
+        // 5) hang up, back to welcome
+        hose.request("HOSECTRL|SET|MAIN|0", Duration.ofSeconds(1));
+        awaitState("WELCOME");
+        lap("settle", mark);
+
+        approved++;
+        phases.get("session").add(System.nanoTime() - arrivedNanos);
+        if (LOG.isDebugEnabled()) LOG.debug("session #%d done (%s)", n, fuel);
+    }
+
+    // ---- Helpers -----------------------------------------------------------
+    private long lap(String phase, long since) {
+        long now = System.nanoTime();
+        phases.get(phase).add(now - since);
+        return now;
+    }
+
+    private void think() throws InterruptedException {
+        if (thinkMs <= 0) return;
+        Thread.sleep((long) (-Math.log(1.0 - rnd.nextDouble()) * thinkMs));
+    }
+
+    /** Polls the screen until its state starts with one of the prefixes, returns that state. */
+    private String awaitState(String... prefixes) throws Exception {
+        long deadline = System.nanoTime() + phaseTimeoutMs * 1_000_000L;
+        while (true) {
+            String r = screen.request("SCREEN|GETSTATE|MAIN|None", Duration.ofSeconds(1));
+            int q1 = r.indexOf('"');
+            int q2 = r.lastIndexOf('"');
+            String payload = (q1 >= 0 && q2 > q1) ? r.substring(q1 + 1, q2) : "";
+            String state = payload.startsWith("STATE:") ? payload.substring(6) : payload;
+            for (String p : prefixes) if (state.startsWith(p)) return state;
+            if (System.nanoTime() > deadline) {
+                throw new TimeoutException("waiting for " + Arrays.toString(prefixes) + ", screen=" + state);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private void report(double elapsedMin) {
+        int done = approved + declined;
+        LOG.info("sessions: %d approved, %d declined, %d failed", approved, declined, failed);
+        LOG.info("throughput: %.2f sessions/min over %.2f min", done / Math.max(1e-9, elapsedMin), elapsedMin);
+        LOG.info("%-8s %6s %9s %9s %9s %9s", "phase", "n", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)");
+        for (Map.Entry<String, Recorder> e : phases.entrySet()) {
+            Recorder r = e.getValue();
+            if (r.size() == 0) continue;
+            LOG.info("%-8s %6d %9.1f %9.1f %9.1f %9.1f",
+                    e.getKey(), r.size(), r.pctMs(50), r.pctMs(90), r.pctMs(99), r.pctMs(100));
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> m = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("--")) m.put(args[i].substring(2), args[i + 1]);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,39 @@
+package sim;
+
+import java.util.Map;
+
+/* Station Mux (port 5921)
+* One connection for every GUI pane in a StationConsole. Each line is routed by its DEVICE field
+* to the same handler the device's own control port uses, so replies are byte-for-byte the same:
+*   SCREEN|...      -> screen-ctrl          CARDREADER|... -> cardreader-ctrl
+*   HOSECTRL|...    -> hose-ctrl            FLOWCTRL|...   -> flowmeter-ctrl
+*   PUMPCTRL|...    -> pump-ctrl            FORECOURT|...  -> forecourt-ctrl
+* SUBSCRIBE works per DEVICE as on the control ports; pushes for every subscribed topic fan out on
+* the one socket (SimServer.session keeps a set of topics per connection).
+* */
+
+final class MuxServer extends SimDevices.SimServer {
+    private final Map<String, SimDevices.SimServer> routes;
+
+    MuxServer(String id, int port) {
+        super(id, port);
+        // Handlers only, these instances never bind a port
+        routes = Map.of(
+                "SCREEN",     new SimDevices.ScreenControlServer("screen-ctrl", -1),
+                "CARDREADER", new SimDevices.CardReaderControlServer("cardr-ctrl", -1),
+                "HOSECTRL",   new SimDevices.HoseControlServer("hose-ctrl", -1),
+                "FLOWCTRL",   new SimDevices.FlowMeterControlServer("flowmeter-ctrl", -1),
+                "PUMPCTRL",   new SimDevices.PumpControlServer("pump-ctrl", -1),
+                "FORECOURT",  new SimDevices.ForecourtControlServer("forecourt-ctrl", -1));
+    }
+
+    @Override String deviceName() { return "MUX"; }
+
+    @Override
+    String handle(String line) {
+        int bar = line.indexOf('|');
+        SimDevices.SimServer target = bar > 0 ? routes.get(line.substring(0, bar)) : null;
+        if (target == null) return "MAIN|REPLY|MUX|\"ERR:NO_ROUTE\"";
+        return target.handle(line);
+    }
+}
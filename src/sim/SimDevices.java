@@ -1,22 +1,60 @@
 package sim;
 
+import io.clock.Clock;
+import io.clock.VirtualClock;
+import io.log.Log;
+
 import java.io.*;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.util.Random;
 
 public final class SimDevices {
+    static final Log LOG = Log.named("sim");
+    // FLOWMETER/FLOWCTRL GETSTATE and UPDATE arrive several times per second per GUI
+    private static final Log.Limit POLL_LIMIT = Log.limit(2);
+    private static final Log.Limit SCREEN_LIMIT = Log.limit(5);
+
+    // -Dclock=virtual:0 puts the simulator on virtual time, driven through CLOCK|ADVANCE on the clock port
+    static final Clock clock = simClock(Clock.fromProperties());
+    // -Dsim.seed=N makes taps, grade lists and tanks repeatable across runs
+    static final Random RNG = Long.getLong("sim.seed") != null ? new Random(Long.getLong("sim.seed")) : new Random();
+
+    // Tank + nozzle physics for every pump, stepped on one shared timer
+    static final TickEngine ticks = new TickEngine(clock, Long.getLong("sim.tickMs", 10L));
+    static final Dispenser hose = new Dispenser("hose-01");
 
-    private static volatile double hoseTankCapGal = 0.0;
-    private static volatile double hoseTankCurGal = 0.0;
-    private static volatile boolean hoseAttached = false;
-    private static volatile boolean hoseFull = false;
-    private static volatile boolean hoseArmed    = false;
     static volatile double flowGallons = 0.0;   // what FlowMeter should display
     static volatile boolean flowPumping = false; // 1 when actively dispensing
     static volatile String screenState = "WELCOME";
     static volatile String pendingGrade = null;
+    static volatile String pendingPreset = null; // USD:20.00 | GAL:5, rides along with the next grade
     static volatile String pendingTap = null;
+    static volatile boolean pumpMotor = false;   // PUMP|START .. PUMP|STOP
+    static volatile String pumpGrade = "None";   // grade the motor was started for
+
+    // Pushed to GUIs that subscribe on the control ports (see Topic)
+    static final Topic SCREEN_TOPIC = Topic.define("SCREEN", () -> "STATE:" + screenState, 0);
+    static final Topic HOSE_TOPIC   = Topic.define("HOSECTRL", SimDevices::hoseStatus, 100);
+    static final Topic FLOW_TOPIC   = Topic.define("FLOWCTRL", SimDevices::flowState, 0);
+    static final Topic PUMP_TOPIC   = Topic.define("PUMPCTRL", SimDevices::pumpStatus, 0);
+
+    // Every position on the site for the dashboard, position 0 is this station (see Forecourt);
+    // synthetic positions only with -Dsim.positions=N, nobody pays for stepping them otherwise
+    static final Forecourt forecourt = new Forecourt(Integer.getInteger("sim.positions", 1),
+            new Random(Long.getLong("sim.seed", System.nanoTime()) ^ 0x5DEECE66DL));
+    static final Topic FORECOURT_TOPIC = Topic.defineStream("FORECOURT", forecourt::snapshot, forecourt::drainDelta, 100);
+    // Live site totals across every position (devices.FlowRegistry), a few times a second
+    static final Topic SITEFLOW_TOPIC = Topic.define("SITEFLOW", forecourt::siteFlow, 250);
+    // No simulator thread sleeps on the clock, so a virtual clock that waits for sleeping parties
+    // (-Dclock=virtual, virtual:N) would never move: run it as virtual:0 instead
+    private static Clock simClock(Clock c) {
+        if (!(c instanceof VirtualClock v) || v.parties() == 0) return c;
+        LOG.warn("-Dclock=%s never advances in the simulator, using virtual:0 (drive it with CLOCK|ADVANCE)",
+                System.getProperty("clock"));
+        return new VirtualClock(v.currentTimeMillis(), 0);
+    }
+
     public static void main(String[] args) throws Exception {
         int screenPort = 5001;
         int screenCtrlPort = 5021;
@@ -30,10 +68,21 @@ public final class SimDevices {
         int pumpPortCtl = 5521;
         int flowMeterPort = 5601;
         int flowMeterPortCtl = 5621;
+        int faultPortCtl = 5721;
+        int clockPortCtl = 5821;
+        int muxPort = 5921;
+        int forecourtPortCtl = 6021;
 
         chooseAvailable3();
-
-        System.out.println("[sim] Started. Screen @" + screenPort +
+        FaultInjector.loadFromProperties();
+        ticks.register(hose);
+        ticks.afterTick("HOSECTRL push", HOSE_TOPIC::check);
+        ticks.afterTick("forecourt step", forecourt::step);
+        ticks.afterTick("FORECOURT push", FORECOURT_TOPIC::check);
+        ticks.afterTick("SITEFLOW push", SITEFLOW_TOPIC::check);
+        ticks.start();
+
+        LOG.info("Started. Screen @" + screenPort +
                 ", CardReader @" + cardReaderPort +
                 ", CardServer @" + cardServerPort +
                 ", StationServer @" + stationPort +
@@ -53,12 +102,17 @@ public final class SimDevices {
         new Thread(() -> new PumpControlServer("pump-ctrl", pumpPortCtl).serve()).start();
         new Thread(() -> new FlowMeterServer("flowmeter-01", flowMeterPort).serve()).start();
         new Thread(() -> new FlowMeterControlServer("flowmeter-ctrl", flowMeterPortCtl).serve()).start();
+        new Thread(() -> new FaultInjector.FaultControlServer("fault-ctrl", faultPortCtl).serve()).start();
+        new Thread(() -> new ClockControlServer("clock-ctrl", clockPortCtl).serve()).start();
+        new Thread(() -> new MuxServer("mux-01", muxPort).serve()).start();
+        new Thread(() -> new ForecourtControlServer("forecourt-ctrl", forecourtPortCtl).serve()).start();
     }
 
     // ─────────────── Base server ───────────────
     static abstract class SimServer {
         private final String deviceId;
         private final int port;
+        private final Random faultRnd = new Random(RNG.nextLong());
 
         SimServer(String deviceId, int port) {
             this.deviceId = deviceId;
@@ -66,27 +120,83 @@ public final class SimDevices {
         }
 
         void serve() {
-            try (ServerSocket ss = new ServerSocket(port);
-                 Socket s = ss.accept();
-                 BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
-                 BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            try (ServerSocket ss = new ServerSocket(port)) {
+                // Keep accepting so a client can come back after an injected reset, one thread per
+                // client because a subscribed GUI holds its connection open next to Main/LoadGen
+                while (true) {
+                    Socket s = ss.accept();
+                    Thread t = new Thread(() -> {
+                        try (s) {
+                            session(s);
+                        } catch (IOException e) {
+                            LOG.info("%s connection closed: %s", deviceName(), e.getMessage());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }, deviceName().toLowerCase(java.util.Locale.ROOT) + "-session");
+                    t.setDaemon(true);
+                    t.start();
+                }
+            } catch (Exception e) {
+                LOG.info("%s stopped.", deviceName());
+            }
+        }
 
-                // Simple handshake
-                in.readLine();
-                out.write("HELLO " + deviceId + " v1\n");
-                out.flush();
+        private void session(Socket s) throws IOException, InterruptedException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
 
+            // Simple handshake
+            in.readLine();
+            out.write("HELLO " + deviceId + " v1\n");
+            out.flush();
+
+            String[] reply = new String[1];
+            java.util.Set<Topic> subscribed = new java.util.HashSet<>();
+            try {
                 String line;
                 while ((line = in.readLine()) != null) {
-                    String reply = handle(line.trim());
-                    out.write(reply + "\n");
-                    out.flush();
+                    line = line.trim();
+                    Topic topic = subscribeTarget(line);
+                    if (topic != null) {
+                        reply[0] = "MAIN|REPLY|" + topic.device + "|\"OK\"";
+                    } else if (line.startsWith("SUBSCRIBE|", line.indexOf('|') + 1)) {
+                        reply[0] = "MAIN|REPLY|" + deviceName() + "|\"ERR:NO_SUCH_TOPIC\"";
+                    } else {
+                        reply[0] = handle(line);
+                    }
+                    switch (FaultInjector.apply(deviceName(), reply, faultRnd)) {
+                        case DROP -> { continue; }
+                        case RESET -> {
+                            s.setSoLinger(true, 0); // close() now sends RST
+                            LOG.info("%s FAULT reset", deviceName());
+                            return;
+                        }
+                        default -> {}
+                    }
+                    synchronized (out) {
+                        out.write(reply[0] + "\n");
+                        out.flush();
+                    }
+                    if (topic != null) {
+                        subscribed.add(topic);
+                        topic.subscribe(out, s);
+                    }
+                    Topic.checkAll(); // the command may have changed what a GUI shows
                 }
-            } catch (Exception e) {
-                System.out.println("[sim] " + deviceName() + " stopped.");
+            } finally {
+                for (Topic t : subscribed) t.unsubscribe(out);
+                Topic.disconnect(out);
             }
         }
 
+        // <DEVICE>|SUBSCRIBE|MAIN|None -> the topic for <DEVICE>, null for any other line
+        private static Topic subscribeTarget(String line) {
+            int bar = line.indexOf('|');
+            if (bar < 0 || !line.startsWith("|SUBSCRIBE|MAIN|", bar)) return null;
+            return Topic.named(line.substring(0, bar));
+        }
+
         abstract String deviceName();
         abstract String handle(String line);
     }
@@ -109,21 +219,22 @@ public final class SimDevices {
                 if (!"WELCOME".equals(screenState)) {
                     screenState = "WELCOME";
                     pendingGrade = null;
-                    System.out.println("[sim] SCREEN state -> " + screenState);
+                    pendingPreset = null;
+                    LOG.info("SCREEN state -> %s", screenState);
                 }
                 return "MAIN|REPLY|SCREEN|\"OK\"";
             }
             if (line.equals("SCREEN|DISPLAY|MAIN|\"THANK_YOU\"")) {
                 if (!"THANK_YOU".equals(screenState)) {
                     screenState = "THANK_YOU";
-                    System.out.println("[sim] SCREEN state -> "+ screenState);
+                    LOG.info("SCREEN state -> %s", screenState);
                 }
                 return "MAIN|REPLY|SCREEN|\"OK\"";
             }
             if (line.equals("SCREEN|DISPLAY|MAIN|\"FUELING\"")) {
                 if (!"FUELING".equals(screenState)) {
                     screenState = "FUELING";
-                    System.out.println("[sim] SCREEN state -> "+ screenState);
+                    LOG.info("SCREEN state -> %s", screenState);
                 }
                 return "MAIN|REPLY|SCREEN|\"OK\"";
             }
@@ -131,7 +242,7 @@ public final class SimDevices {
                 String payload = line.substring("SCREEN|DISPLAY|MAIN|\"".length(), line.length() - 1);
                 if (!payload.equals(screenState)) {
                     screenState = payload;
-                    System.out.println("[sim] SCREEN state -> "+ screenState);
+                    LOG.info("SCREEN state -> %s", screenState);
                 }
                 return "MAIN|REPLY|SCREEN|\"OK\"";
             }
@@ -140,15 +251,18 @@ public final class SimDevices {
                 int q2 = line.lastIndexOf('"');
                 String state = (q1 >= 0 && q2 > q1) ? line.substring(q1 + 1, q2) : "";
                 screenState = state;
-                System.out.println("[sim] SCREEN state -> " + screenState);
+                LOG.info(SCREEN_LIMIT, "SCREEN state -> %s", screenState);
                 return "MAIN|REPLY|SCREEN|\"OK\"";
             }
             if (line.equals("SCREEN|CHECK|MAIN|None")) {
                 if (pendingGrade != null) {
                     String g = pendingGrade;
                     pendingGrade = null;
+                    String pre = pendingPreset;
+                    pendingPreset = null;
+                    if (pre != null) g += ";PRESET:" + pre;
                     String ev = "MAIN|EVENT|SCREEN|\"GRADE_SELECTED:" + g + "\"";
-                    System.out.println("[sim] SCREEN -> " + ev);
+                    LOG.info("SCREEN -> %s", ev);
                     return ev;
                 }
                 return "MAIN|REPLY|SCREEN|\"NONE\"";
@@ -178,7 +292,13 @@ public final class SimDevices {
             if (line.startsWith("SCREEN|DEVCTL|MAIN|")) {
                 String fuel = line.substring("SCREEN|DEVCTL|MAIN|".length()).trim();
                 pendingGrade = fuel;
-                System.out.println("[sim] SCREEN-CTRL queued selection: " + fuel);
+                LOG.info("SCREEN-CTRL queued selection: %s", fuel);
+                return "MAIN|REPLY|SCREEN|\"OK\"";
+            }
+            if (line.startsWith("SCREEN|PRESET|MAIN|")) {
+                String preset = line.substring("SCREEN|PRESET|MAIN|".length()).trim();
+                pendingPreset = preset.isEmpty() || "None".equals(preset) ? null : preset;
+                LOG.info("SCREEN-CTRL queued preset: %s", preset);
                 return "MAIN|REPLY|SCREEN|\"OK\"";
             }
             return "MAIN|REPLY|SCREEN|\"OK\"";
@@ -211,7 +331,7 @@ public final class SimDevices {
 
     // ─────────────── CardReader Control (GUI) ───────────────
     static final class CardReaderControlServer extends SimServer {
-        private final Random rnd = new Random();
+        private final Random rnd = RNG;
         CardReaderControlServer(String id, int port) {
             super(id, port);
         }
@@ -225,7 +345,7 @@ public final class SimDevices {
                 String[] parts = line.split("\\|", 4);
                 String cc = (parts.length == 4 && !parts[3].isBlank()) ? parts[3] : Integer.toString(rnd.nextInt(10));
                 pendingTap = cc;
-                System.out.println("[sim] CardReader-CTRL queued tap: " + cc);
+                LOG.info("CardReader-CTRL queued tap: %s", cc);
                 return "MAIN|REPLY|CARDREADER|\"OK\"";
             }
             return "MAIN|REPLY|CARDREADER|\"OK\"";
@@ -248,7 +368,37 @@ public final class SimDevices {
                 boolean ok = Integer.parseInt(cc) % 2 == 0;
                 return ok ? "MAIN|REPLY|CARDSERVER|\"AUTH:YES\"" : "MAIN|REPLY|CARDSERVER|\"AUTH:NO\"";
             }
-            return "MAIN|REPLY|CARDSERVER|\"OK\"";
+            // Batch form (io.bus.CardAuth): <id>:<cc>,... -> "MAUTH:<id>=YES|NO,...", one round trip for all
+            if (line.startsWith("CARDSERVER|MAUTH|MAIN|")) {
+                StringBuilder sb = new StringBuilder("MAIN|REPLY|CARDSERVER|\"MAUTH:");
+                String[] items = line.substring("CARDSERVER|MAUTH|MAIN|".length()).split(",");
+                for (int i = 0; i < items.length; i++) {
+                    int colon = items[i].indexOf(':');
+                    if (colon <= 0) continue;
+                    boolean ok;
+                    try {
+                        ok = Integer.parseInt(items[i].substring(colon + 1).trim()) % 2 == 0;
+                    } catch (NumberFormatException e) {
+                        ok = false;
+                    }
+                    if (sb.charAt(sb.length() - 1) != ':') sb.append(',');
+                    sb.append(items[i], 0, colon).append(ok ? "=YES" : "=NO");
+                }
+                return sb.append('"').toString();
+            }
+            // Store-and-forward advice of an offline sale (io.bus.StoreAndForward): <session>:<cc>:<cents>
+            if (line.startsWith("CARDSERVER|ADVICE|MAIN|")) {
+                String[] f = line.substring("CARDSERVER|ADVICE|MAIN|".length()).split(":");
+                boolean ok;
+                try {
+                    ok = Integer.parseInt(f[1].trim()) % 2 == 0;
+                } catch (RuntimeException e) {
+                    ok = false;
+                }
+                LOG.info("CARDSERVER advice %s -> %s", String.join(":", f), ok ? "YES" : "NO");
+                return "MAIN|REPLY|CARDSERVER|\"ADVICE:" + f[0] + (ok ? "=YES\"" : "=NO\"");
+            }
+            return "MAIN|REPLY|CARDSERVER|\"ERR:UNKNOWN_COMMAND\"";
         }
     }
 
@@ -273,8 +423,6 @@ public final class SimDevices {
 
     // --- StationServer (provides available fuels and prices) ---
     static final class StationServer extends SimServer {
-        private final java.util.Random rnd = new java.util.Random();
-
         StationServer(String id, int port) {
             super(id, port);
         }
@@ -314,7 +462,7 @@ public final class SimDevices {
             }
 
             if (line.equals("SCREEN|DISPLAY|MAIN|\"FUEL_SELECTED\"")) {
-                System.out.println("[sim] SCREEN <= FUEL_SELECTED");
+                LOG.info("SCREEN <= FUEL_SELECTED");
                 return "MAIN|REPLY|SCREEN|\"OK\"";
             }
 
@@ -324,10 +472,46 @@ public final class SimDevices {
 
     static void chooseAvailable3() {
         java.util.List<Fuel> pool = new java.util.ArrayList<>(java.util.Arrays.asList(ALL_FUELS));
-        java.util.Collections.shuffle(pool);
+        java.util.Collections.shuffle(pool, RNG);
         AVAILABLE3 = new Fuel[]{pool.get(0), pool.get(1), pool.get(2)};
     }
 
+    // STATE:1,ARMED:1,FULL:0,CAP:15.000,CUR:3.200,RATE:9.874,DISP:1.250
+    static String hoseStatus() {
+        return String.format(java.util.Locale.US, "STATE:%d,ARMED:%d,FULL:%d,CAP:%.3f,CUR:%.3f,RATE:%.3f,DISP:%.4f",
+                hose.attached ? 1 : 0, hose.armed ? 1 : 0, hose.full ? 1 : 0,
+                hose.capGal, hose.curGal, hose.rateGpm, hose.sessionGal);
+    }
+
+    // MOTOR:1,NOZZLE:1,GRADE:Regular,SLOT:0 (SLOT = position of GRADE in the LIST reply, -1 if none)
+    static String pumpStatus() {
+        String g = pumpGrade;
+        int slot = -1;
+        Fuel[] list = AVAILABLE3;
+        for (int i = 0; list != null && i < list.length; i++) {
+            if (list[i].name.equals(g)) slot = i;
+        }
+        return String.format(java.util.Locale.US, "MOTOR:%d,NOZZLE:%d,GRADE:%s,SLOT:%d",
+                pumpMotor ? 1 : 0, hose.attached ? 1 : 0, g, slot);
+    }
+
+    /**
+     * In-process listener for a topic (SCREEN, HOSECTRL, FLOWCTRL, PUMPCTRL): called with the current
+     * payload now and with every changed payload after that, on the thread that changed it.
+     * Lets a GUI running in the simulator's JVM skip the socket. Run the returned Runnable to stop.
+     */
+    public static Runnable watch(String device, java.util.function.Consumer<String> listener) {
+        Topic t = Topic.named(device);
+        if (t == null) throw new IllegalArgumentException("no topic " + device);
+        t.listen(listener);
+        return () -> t.unlisten(listener);
+    }
+
+    // STATE:1,GALLONS:3.250
+    static String flowState() {
+        return String.format(java.util.Locale.US, "STATE:%d,GALLONS:%.3f", flowPumping ? 1 : 0, flowGallons);
+    }
+
     static final class HoseControlServer extends SimServer {
         HoseControlServer(String id, int port) { super(id, port); }
         @Override String deviceName() { return "HOSECTRL"; }
@@ -335,27 +519,26 @@ public final class SimDevices {
         @Override String handle(String line) {
             if (line.startsWith("HOSECTRL|SET|MAIN|")) {
                 String v = line.substring("HOSECTRL|SET|MAIN|".length()).trim();
-                if ("1".equals(v)) { hoseAttached = true;  System.out.println("[sim] HOSECTRL SET 1"); return "MAIN|REPLY|HOSECTRL|\"OK\""; }
-                if ("0".equals(v)) { hoseAttached = false; System.out.println("[sim] HOSECTRL SET 0"); return "MAIN|REPLY|HOSECTRL|\"OK\""; }
+                if ("1".equals(v)) { hose.attach(RNG); LOG.info("HOSECTRL SET 1"); return "MAIN|REPLY|HOSECTRL|\"OK\""; }
+                if ("0".equals(v)) { hose.detach();    LOG.info("HOSECTRL SET 0"); return "MAIN|REPLY|HOSECTRL|\"OK\""; }
                 return "MAIN|REPLY|HOSECTRL|\"ERR:BAD_VALUE\"";
             }
             if (line.equals("HOSECTRL|GET|MAIN|None")) {
-                return "MAIN|REPLY|HOSECTRL|\"STATE:" + (hoseAttached ? "1" : "0")
-                        + ",ARMED:" + (hoseArmed ? "1" : "0") + "\"";
+                return "MAIN|REPLY|HOSECTRL|\"" + hoseStatus() + "\"";
             }
             if (line.equals("HOSECTRL|FULL|MAIN|1")) {
-                hoseFull = true;
-                System.out.println("[sim] HOSECTRL FULL -> true");
+                hose.full = true;
+                LOG.info("HOSECTRL FULL -> true");
                 return "MAIN|REPLY|HOSECTRL|\"OK\"";
             }
             if (line.equals("HOSECTRL|RESETFULL|MAIN|None")) {
-                hoseFull = false;
-                System.out.println("[sim] HOSECTRL FULL -> false");
+                hose.full = false;
+                LOG.info("HOSECTRL FULL -> false");
                 return "MAIN|REPLY|HOSECTRL|\"OK\"";
             }
             if (line.startsWith("HOSECTRL|SETCAP|MAIN|")) {
                 try {
-                    hoseTankCapGal = Double.parseDouble(line.substring("HOSECTRL|SETCAP|MAIN|".length()).trim());
+                    hose.capGal = Double.parseDouble(line.substring("HOSECTRL|SETCAP|MAIN|".length()).trim());
                     return "MAIN|REPLY|HOSECTRL|\"OK\"";
                 } catch (Exception e) {
                     return "MAIN|REPLY|HOSECTRL|\"ERR:BAD_CAP\"";
@@ -363,7 +546,7 @@ public final class SimDevices {
             }
             if (line.startsWith("HOSECTRL|SETCUR|MAIN|")) {
                 try {
-                    hoseTankCurGal = Double.parseDouble(line.substring("HOSECTRL|SETCUR|MAIN|".length()).trim());
+                    hose.curGal = Double.parseDouble(line.substring("HOSECTRL|SETCUR|MAIN|".length()).trim());
                     return "MAIN|REPLY|HOSECTRL|\"OK\"";
                 } catch (Exception e) {
                     return "MAIN|REPLY|HOSECTRL|\"ERR:BAD_CUR\"";
@@ -371,7 +554,7 @@ public final class SimDevices {
             }
 
             if (line.equals("HOSE|GET|MAIN|attached")) {
-                return "MAIN|REPLY|HOSE|\"" + (hoseAttached ? "true" : "false") + "\"";
+                return "MAIN|REPLY|HOSE|\"" + (hose.attached ? "true" : "false") + "\"";
             }
             return "MAIN|REPLY|HOSECTRL|\"ERR:UNKNOWN_COMMAND\"";
         }
@@ -389,37 +572,31 @@ public final class SimDevices {
         @Override
         String handle(String line) {
             if (line.equals("HOSE|GET|MAIN|None")) {
-                return "MAIN|REPLY|HOSE|\"STATE:" + (hoseAttached ? "1" : "0") + "\"";
+                return "MAIN|REPLY|HOSE|\"STATE:" + (hose.attached ? "1" : "0") + "\"";
             }
             if (line.equals("HOSE|STATUS|MAIN|None")) {
-                return "MAIN|REPLY|HOSE|\"STATE:" + (hoseAttached ? "1" : "0")
-                        + ",ARMED:" + (hoseArmed ? "1" : "0")
-                        + ",FULL:"  + (hoseFull   ? "1" : "0")
-                        + ",CAP:"   + String.format(java.util.Locale.US, "%.3f", hoseTankCapGal)
-                        + ",CUR:"   + String.format(java.util.Locale.US, "%.3f", hoseTankCurGal)
-                        + "\"";
+                return "MAIN|REPLY|HOSE|\"" + hoseStatus() + "\"";
             }
             if (line.equals("HOSE|START|MAIN|None")) {
-                hoseArmed = true;
-                hoseFull  = false;
-                System.out.println("[sim] HOSE START (armed=true, full=false)");
+                hose.arm();
+                LOG.info("HOSE START (armed=true, full=false)");
                 return "MAIN|REPLY|HOSE|\"OK\"";
             }
 
             if (line.equals("HOSE|STOP|MAIN|None")) {
-                hoseArmed = false;
-                System.out.println("[sim] HOSE STOP (armed=false)");
+                hose.disarm();
+                LOG.info("HOSE STOP (armed=false)");
                 return "MAIN|REPLY|HOSE|\"OK\"";
             }
 
             if (line.startsWith("HOSE|SET|MAIN|")) {
                 String v = line.substring("HOSE|SET|MAIN|".length()).trim();
                 if ("1".equals(v)) {
-                    hoseAttached = true;
+                    hose.attach(RNG);
                     return "MAIN|REPLY|HOSE|\"OK\"";
                 }
                 if ("0".equals(v)) {
-                    hoseAttached = false;
+                    hose.detach();
                     return "MAIN|REPLY|HOSE|\"OK\"";
                 }
                 return "MAIN|REPLY|HOSE|\"ERR:BAD_VALUE\"";
@@ -430,8 +607,7 @@ public final class SimDevices {
     }
 //------------------------------------------------------------------------------
 
-        // TODO: Implement below!
-
+        // ─────────────── Pump ───────────────
         static final class PumpServer extends SimServer {
             PumpServer(String id, int port) {
                 super(id, port);
@@ -442,8 +618,22 @@ public final class SimDevices {
             }
             @Override
             String handle(String line) {
-
-                return line;
+                if (line.startsWith("PUMP|START|MAIN|")) {
+                    String g = line.substring("PUMP|START|MAIN|".length()).trim();
+                    pumpGrade = g.isEmpty() ? "None" : g;
+                    pumpMotor = true;
+                    LOG.info("PUMP START (grade=%s)", pumpGrade);
+                    return "MAIN|REPLY|PUMP|\"OK\"";
+                }
+                if (line.equals("PUMP|STOP|MAIN|None")) {
+                    if (pumpMotor) LOG.info("PUMP STOP");
+                    pumpMotor = false;
+                    return "MAIN|REPLY|PUMP|\"OK\"";
+                }
+                if (line.equals("PUMP|GET|MAIN|None")) {
+                    return "MAIN|REPLY|PUMP|\"" + pumpStatus() + "\"";
+                }
+                return "MAIN|REPLY|PUMP|\"ERR:UNKNOWN_COMMAND\"";
             }
         }
 
@@ -457,8 +647,17 @@ public final class SimDevices {
             }
             @Override
             String handle(String line) {
-
-                return line;
+                if (line.equals("PUMPCTRL|GET|MAIN|None")) {
+                    return "MAIN|REPLY|PUMPCTRL|\"" + pumpStatus() + "\"";
+                }
+                // Manual motor override for testing the GUI without Main
+                if (line.startsWith("PUMPCTRL|SET|MAIN|")) {
+                    String v = line.substring("PUMPCTRL|SET|MAIN|".length()).trim();
+                    if ("1".equals(v)) { pumpMotor = true;  LOG.info("PUMPCTRL SET 1"); return "MAIN|REPLY|PUMPCTRL|\"OK\""; }
+                    if ("0".equals(v)) { pumpMotor = false; LOG.info("PUMPCTRL SET 0"); return "MAIN|REPLY|PUMPCTRL|\"OK\""; }
+                    return "MAIN|REPLY|PUMPCTRL|\"ERR:BAD_VALUE\"";
+                }
+                return "MAIN|REPLY|PUMPCTRL|\"ERR:UNKNOWN_COMMAND\"";
             }
         }
 
@@ -474,7 +673,7 @@ public final class SimDevices {
                     try {
                         double g = Double.parseDouble(line.substring("FLOWMETER|SET|GALLONS|".length()).trim());
                         SimDevices.flowGallons = Math.max(0.0, g);
-                        System.out.printf("[sim] FLOWMETER SET GALLONS -> %.3f%n", SimDevices.flowGallons);
+                        LOG.info("FLOWMETER SET GALLONS -> %.3f", SimDevices.flowGallons);
                         return "MAIN|REPLY|FLOWMETER|\"OK\"";
                     } catch (Exception e) {
                         return "MAIN|REPLY|FLOWMETER|\"ERR:BAD_GALLONS\"";
@@ -496,8 +695,10 @@ public final class SimDevices {
 
                         SimDevices.flowGallons = Math.max(0.0, g);
                         SimDevices.flowPumping = pumping;
-                        System.out.printf("[sim] FLOWMETER UPDATE -> G=%.3f, S=%d%n",
-                                SimDevices.flowGallons, SimDevices.flowPumping ? 1 : 0);
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug(POLL_LIMIT, "FLOWMETER UPDATE -> G=%.3f, S=%d",
+                                    SimDevices.flowGallons, SimDevices.flowPumping ? 1 : 0);
+                        }
                         return "MAIN|REPLY|FLOWMETER|\"OK\"";
 
                     } catch (Exception e) {
@@ -508,22 +709,18 @@ public final class SimDevices {
                 if (line.equals("FLOWMETER|RESET|MAIN|None")) {
                     SimDevices.flowGallons = 0.0;
                     SimDevices.flowPumping = false;
-                    System.out.println("[sim] FLOWMETER RESET -> gallons=0, pumping=0");
+                    LOG.info("FLOWMETER RESET -> gallons=0, pumping=0");
                     return "MAIN|REPLY|FLOWMETER|\"OK\"";
                 }
 
                 // GUIs (FlowMeterGUI) poll this
                 if (line.equals("FLOWMETER|GETSTATE|MAIN|None")) {
-                    String payload = String.format(java.util.Locale.US,
-                            "STATE:%d,GALLONS:%.3f",
-                            SimDevices.flowPumping ? 1 : 0,
-                            SimDevices.flowGallons);
-                    // debug print
-                    System.out.println("[sim] FLOWMETER GETSTATE -> " + payload);
+                    String payload = flowState();
+                    LOG.debug(POLL_LIMIT, "FLOWMETER GETSTATE -> %s", payload);
                     return "MAIN|REPLY|FLOWMETER|\"" + payload + "\"";
                 }
 
-                System.out.println("[sim] FLOWMETER UNKNOWN -> " + line);
+                LOG.warn("FLOWMETER UNKNOWN -> %s", line);
                 return "MAIN|REPLY|FLOWMETER|\"ERR:UNKNOWN_COMMAND\"";
             }
         }
@@ -539,7 +736,7 @@ public final class SimDevices {
                 if (line.startsWith("FLOWCTRL|SETSTATE|MAIN|")) {
                     String v = line.substring("FLOWCTRL|SETSTATE|MAIN|".length()).trim();
                     SimDevices.flowPumping = "1".equals(v);
-                    System.out.println("[sim] FLOWCTRL SETSTATE -> " + (SimDevices.flowPumping ? "1" : "0"));
+                    LOG.info("FLOWCTRL SETSTATE -> %s", SimDevices.flowPumping ? "1" : "0");
                     return "MAIN|REPLY|FLOWCTRL|\"OK\"";
                 }
 
@@ -547,7 +744,7 @@ public final class SimDevices {
                     try {
                         double g = Double.parseDouble(line.substring("FLOWCTRL|SETGAL|MAIN|".length()).trim());
                         SimDevices.flowGallons = Math.max(0.0, g);
-                        System.out.printf("[sim] FLOWCTRL SETGAL -> %.3f%n", SimDevices.flowGallons);
+                        LOG.info("FLOWCTRL SETGAL -> %.3f", SimDevices.flowGallons);
                         return "MAIN|REPLY|FLOWCTRL|\"OK\"";
                     } catch (Exception e) {
                         return "MAIN|REPLY|FLOWCTRL|\"ERR:BAD_GAL\"";
@@ -557,24 +754,61 @@ public final class SimDevices {
                 if (line.equals("FLOWCTRL|RESET|MAIN|None")) {
                     SimDevices.flowGallons = 0.0;
                     SimDevices.flowPumping = false;
-                    System.out.println("[sim] FLOWCTRL RESET -> gallons=0, pumping=0");
+                    LOG.info("FLOWCTRL RESET -> gallons=0, pumping=0");
                     return "MAIN|REPLY|FLOWCTRL|\"OK\"";
                 }
 
                 if (line.equals("FLOWCTRL|GETSTATE|MAIN|None") || line.equals("FLOWMETER|GETSTATE|MAIN|None")) {
-                    String payload = String.format(java.util.Locale.US,
-                            "STATE:%d,GALLONS:%.3f",
-                            SimDevices.flowPumping ? 1 : 0,
-                            SimDevices.flowGallons);
-                    System.out.println("[sim] FLOWCTRL GETSTATE -> " + payload);
+                    String payload = flowState();
+                    LOG.debug(POLL_LIMIT, "FLOWCTRL GETSTATE -> %s", payload);
                     return "MAIN|REPLY|FLOWMETER|\"" + payload + "\"";
                 }
 
-                System.out.println("[sim] FLOWCTRL UNKNOWN -> " + line);
+                LOG.warn("FLOWCTRL UNKNOWN -> %s", line);
                 return "MAIN|REPLY|FLOWCTRL|\"ERR:UNKNOWN_COMMAND\"";
             }
         }
 
+        // ─────────────── Forecourt (dashboard) ───────────────
+        static final class ForecourtControlServer extends SimServer {
+            ForecourtControlServer(String id, int port) { super(id, port); }
+
+            @Override String deviceName() { return "FORECOURT"; }
+
+            @Override
+            String handle(String line) {
+                if (line.equals("FORECOURT|GET|MAIN|None")) {
+                    return "MAIN|REPLY|FORECOURT|\"" + forecourt.snapshot() + "\"";
+                }
+                return "MAIN|REPLY|FORECOURT|\"ERR:UNKNOWN_COMMAND\"";
+            }
+        }
+
+        // ─────────────── Clock Control ───────────────
+        static final class ClockControlServer extends SimServer {
+            ClockControlServer(String id, int port) { super(id, port); }
+
+            @Override String deviceName() { return "CLOCKCTRL"; }
+
+            @Override
+            String handle(String line) {
+                if (line.equals("CLOCK|NOW|MAIN|None")) {
+                    return "MAIN|REPLY|CLOCK|\"NOW:" + clock.currentTimeMillis() + "\"";
+                }
+                if (line.startsWith("CLOCK|ADVANCE|MAIN|")) {
+                    if (!(clock instanceof VirtualClock vc)) return "MAIN|REPLY|CLOCK|\"ERR:NOT_VIRTUAL\"";
+                    try {
+                        long ms = Long.parseLong(line.substring("CLOCK|ADVANCE|MAIN|".length()).trim());
+                        vc.advance(ms);
+                        return "MAIN|REPLY|CLOCK|\"NOW:" + clock.currentTimeMillis() + "\"";
+                    } catch (NumberFormatException e) {
+                        return "MAIN|REPLY|CLOCK|\"ERR:BAD_MS\"";
+                    }
+                }
+                return "MAIN|REPLY|CLOCK|\"ERR:UNKNOWN_COMMAND\"";
+            }
+        }
+
         // Shared update used by Main to reflect live fuel flow
         public static synchronized void updateFlow(double gallons, boolean pumping) {
             flowGallons = Math.max(0.0, gallons);
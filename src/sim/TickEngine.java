@@ -0,0 +1,79 @@
+package sim;
+
+import io.clock.Clock;
+import io.log.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/* One timer steps every simulated dispenser on the forecourt.
+* -Dsim.tickMs=10 (default, 100 Hz)
+* Runs on SimDevices.clock, so a virtual clock steps the physics deterministically.
+* A dispenser or after-tick task that throws is logged and skipped for that tick; it must not
+* end the timer (a periodic task that throws is cancelled) and freeze every pump.
+* */
+
+final class TickEngine {
+    private final Clock clock;
+    private final long periodMs;
+    private final List<Dispenser> dispensers = new CopyOnWriteArrayList<>();
+    private final List<AfterTick> afterTick = new CopyOnWriteArrayList<>();
+    private final Log.Limit failLimit = Log.limit(1);
+    private long lastNanos = 0L;
+    private volatile long ticks = 0L;
+    private Clock.Timer timer;
+
+    TickEngine(Clock clock, long periodMs) {
+        this.clock = clock;
+        this.periodMs = Math.max(1, periodMs);
+    }
+
+    void register(Dispenser d) { dispensers.add(d); }
+
+    // Runs on the tick thread after every step; keep it short (Topic.check only queues the push)
+    void afterTick(String name, Runnable r) { afterTick.add(new AfterTick(name, r)); }
+
+    long ticks() { return ticks; }
+
+    synchronized void start() {
+        if (timer != null) return;
+        lastNanos = clock.nanoTime();
+        timer = clock.scheduleAtFixedRate(this::tick, periodMs, periodMs);
+    }
+
+    synchronized void stop() {
+        if (timer != null) timer.cancel();
+        timer = null;
+    }
+
+    private void tick() {
+        long now = clock.nanoTime();
+        double dt = (now - lastNanos) / 1_000_000_000.0;
+        lastNanos = now;
+        for (Dispenser d : dispensers) {
+            try {
+                d.step(dt);
+            } catch (RuntimeException e) {
+                SimDevices.LOG.warn(failLimit, "tick: %s step failed: %s", d.id, e.toString());
+            }
+        }
+        ticks++;
+        for (AfterTick a : afterTick) {
+            try {
+                a.task.run();
+            } catch (RuntimeException e) {
+                SimDevices.LOG.warn(failLimit, "tick: %s failed: %s", a.name, e.toString());
+            }
+        }
+    }
+
+    private static final class AfterTick {
+        final String name;
+        final Runnable task;
+
+        AfterTick(String name, Runnable task) {
+            this.name = name;
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package sim;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/* State-change pushes for the GUIs.
+* A client sends <DEVICE>|SUBSCRIBE|MAIN|None on a control port, gets the usual OK reply, then
+*   MAIN|PUSH|<DEVICE>|"<same payload as the GET reply>"
+* right away and again every time that payload changes.
+*
+* Topics are checked after every handled command (SimServer.session) and after every physics
+* tick. Nothing is sent unless the payload text differs from the last push, and a topic with
+* minIntervalMs > 0 pushes at most that often (the next tick picks up what was skipped).
+*
+* check() only works out the payload and queues the frame, under the topic's lock, so frames queue
+* in the order the payloads were taken whichever thread checked. Each subscribed connection has its
+* own outbox: a writer thread and at most -Dsim.pushQueue frames (1024). A client that stops reading
+* only stalls its own outbox; once that is full the connection is closed (its GUI reconnects and
+* gets a fresh snapshot), since a lost delta cannot be made up later. Listener calls run in order
+* on one "sim-push" thread.
+*
+* In-process listeners (SimDevices.watch) get the same payloads as a direct call, no socket.
+*
+* A stream topic (defineStream) is for state too big to resend on every change: a subscriber gets
+* one full snapshot, then only the deltas, drained at most every minIntervalMs.
+* */
+
+final class Topic {
+    private static final Map<String, Topic> BY_DEVICE = new ConcurrentHashMap<>();
+    private static final List<Topic> ALL = new CopyOnWriteArrayList<>();
+    private static final int OUTBOX_FRAMES = Integer.getInteger("sim.pushQueue", 1024);
+    private static final Map<BufferedWriter, Outbox> OUTBOXES = new ConcurrentHashMap<>();
+    private static final ExecutorService PUSHER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "sim-push");
+        t.setDaemon(true);
+        return t;
+    });
+
+    final String device;
+    private final Supplier<String> payload;
+    private final Supplier<String> delta;     // stream topics only, "" = nothing changed
+    private final long minIntervalMs;
+    private final List<Outbox> subscribers = new CopyOnWriteArrayList<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private String last = null;
+    private long lastPushMs = 0L;
+
+    private Topic(String device, Supplier<String> payload, Supplier<String> delta, long minIntervalMs) {
+        this.device = device;
+        this.payload = payload;
+        this.delta = delta;
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    static Topic define(String device, Supplier<String> payload, long minIntervalMs) {
+        return register(new Topic(device, payload, null, minIntervalMs));
+    }
+
+    static Topic defineStream(String device, Supplier<String> snapshot, Supplier<String> delta, long minIntervalMs) {
+        return register(new Topic(device, snapshot, delta, minIntervalMs));
+    }
+
+    private static Topic register(Topic t) {
+        BY_DEVICE.put(t.device, t);
+        ALL.add(t);
+        return t;
+    }
+
+    static Topic named(String device) { return BY_DEVICE.get(device); }
+
+    /** Re-evaluates every topic that has subscribers. */
+    static void checkAll() {
+        for (Topic t : ALL) t.check();
+    }
+
+    // Caller has already written the SUBSCRIBE reply, the first push follows it.
+    // Subscribing again on the same connection only re-sends the current state.
+    void subscribe(BufferedWriter out, Socket socket) {
+        check(); // bring existing subscribers up to date first
+        Outbox box = OUTBOXES.computeIfAbsent(out, o -> new Outbox(o, socket));
+        synchronized (this) {
+            String p = payload.get();
+            if (last == null) { last = p; lastPushMs = SimDevices.clock.currentTimeMillis(); }
+            boolean again = subscribers.contains(box);
+            if (!again) subscribers.add(box);
+            box.offer(frame(p)); // behind any push already queued, so the snapshot is the newest frame
+            if (again) return;
+        }
+        SimDevices.LOG.info("%s subscriber added (%d)", device, subscribers.size());
+    }
+
+    void unsubscribe(BufferedWriter out) {
+        Outbox box = OUTBOXES.get(out);
+        if (box != null && subscribers.remove(box)) SimDevices.LOG.info("%s subscriber gone (%d)", device, subscribers.size());
+    }
+
+    /** The connection is gone: stops its outbox. Call after unsubscribing it everywhere. */
+    static void disconnect(BufferedWriter out) {
+        Outbox box = OUTBOXES.remove(out);
+        if (box != null) box.stop();
+    }
+
+    void listen(Consumer<String> listener) {
+        check();
+        String p;
+        synchronized (this) {
+            p = payload.get();
+            if (last == null) { last = p; lastPushMs = SimDevices.clock.currentTimeMillis(); }
+            listeners.add(listener);
+        }
+        listener.accept(p);
+    }
+
+    void unlisten(Consumer<String> listener) { listeners.remove(listener); }
+
+    void check() {
+        if (subscribers.isEmpty() && listeners.isEmpty()) return;
+        synchronized (this) {
+            long now = SimDevices.clock.currentTimeMillis();
+            if (minIntervalMs > 0 && now - lastPushMs < minIntervalMs) return;
+            String p = delta != null ? delta.get() : payload.get();
+            if (delta != null ? p.isEmpty() : p.equals(last)) return;
+            last = p;
+            lastPushMs = now;
+            // Queued before the lock goes, so the next check's frame cannot overtake this one
+            String f = frame(p);
+            for (Outbox box : subscribers) box.offer(f);
+            if (!listeners.isEmpty()) {
+                List<Consumer<String>> ls = List.copyOf(listeners);
+                PUSHER.execute(() -> tell(ls, p));
+            }
+        }
+    }
+
+    // sim-push thread
+    private void tell(List<Consumer<String>> ls, String p) {
+        for (Consumer<String> l : ls) {
+            try {
+                l.accept(p);
+            } catch (RuntimeException e) {
+                SimDevices.LOG.warn("%s listener failed: %s", device, e.toString());
+            }
+        }
+    }
+
+    private String frame(String p) { return "MAIN|PUSH|" + device + "|\"" + p + "\""; }
+
+    // ---- Outbox: one per subscribed connection ----
+    private static final class Outbox {
+        final BufferedWriter out;
+        final Socket socket;
+        final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>(OUTBOX_FRAMES);
+        final Thread writer;
+        volatile boolean dead = false;
+
+        Outbox(BufferedWriter out, Socket socket) {
+            this.out = out;
+            this.socket = socket;
+            this.writer = new Thread(this::drain, "sim-push-out");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        // Never blocks: called under a topic's lock from the tick and session threads
+        void offer(String frame) {
+            if (dead || queue.offer(frame)) return;
+            dead = true;
+            SimDevices.LOG.warn("push client stopped reading (%d frames queued), closing %s", OUTBOX_FRAMES, socket.getRemoteSocketAddress());
+            close();
+        }
+
+        private void drain() {
+            try {
+                while (!dead) {
+                    if (!send(out, queue.take())) break;
+                }
+            } catch (InterruptedException ignored) {
+            }
+            dead = true;
+        }
+
+        void stop() {
+            dead = true;
+            writer.interrupt();
+        }
+
+        // Unblocks a stuck write, and the session's read, which then unsubscribes the connection
+        private void close() {
+            writer.interrupt();
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // Replies and pushes share the socket, SimServer writes under the same lock
+    private static boolean send(BufferedWriter out, String line) {
+        synchronized (out) {
+            try {
+                out.write(line);
+                out.write('\n');
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
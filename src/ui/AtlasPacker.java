@@ -0,0 +1,107 @@
+package ui;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/* Sprite Atlas Packer (build step, not used at runtime)
+* Packs every device's frames into one PNG plus a text index, read by SpriteAtlas.
+*
+*   images/<device>/*.png     -> images/atlas/<device>.png + images/atlas/<device>.atlas
+*   images/<device>_*.png     -> same atlas (hose_attached.png, hose_detached.png)
+*
+* Shelf packing, tallest first, rows up to MAX_WIDTH, PAD px of transparent gap so smoothing at
+* the scaled-down display size never bleeds a neighbour into the frame.
+* */
+
+
+/* USAGE
+* javac -d out src/ui/AtlasPacker.java
+* java -cp out ui.AtlasPacker resources/images
+* (re-run whenever a frame PNG changes, commit the generated atlas files)
+* */
+
+
+public final class AtlasPacker {
+    static final int MAX_WIDTH = 2048;
+    static final int PAD = 2;
+
+    private static final class Sprite {
+        final String name;
+        final BufferedImage img;
+        int x, y;
+
+        Sprite(String name, BufferedImage img) {
+            this.name = name;
+            this.img = img;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        File root = new File(args.length > 0 ? args[0] : "resources/images");
+        File outDir = new File(root, "atlas");
+        if (!outDir.isDirectory() && !outDir.mkdirs()) throw new IOException("cannot create " + outDir);
+
+        File[] dirs = root.listFiles(f -> f.isDirectory() && !f.getName().equals("atlas"));
+        if (dirs == null) throw new IOException("not a directory: " + root);
+        for (File dir : dirs) {
+            List<Sprite> sprites = new ArrayList<>();
+            addAll(sprites, dir.listFiles(f -> f.getName().endsWith(".png")));
+            String prefix = dir.getName() + "_";
+            addAll(sprites, root.listFiles(f -> f.isFile() && f.getName().startsWith(prefix) && f.getName().endsWith(".png")));
+            if (!sprites.isEmpty()) pack(dir.getName(), sprites, outDir);
+        }
+    }
+
+    private static void addAll(List<Sprite> out, File[] files) throws IOException {
+        if (files == null) return;
+        for (File f : files) {
+            BufferedImage img = ImageIO.read(f);
+            if (img == null) throw new IOException("not an image: " + f);
+            out.add(new Sprite(f.getName().substring(0, f.getName().length() - ".png".length()), img));
+        }
+    }
+
+    private static void pack(String device, List<Sprite> sprites, File outDir) throws IOException {
+        sprites.sort(Comparator.comparingInt((Sprite s) -> -s.img.getHeight()).thenComparing(s -> s.name));
+
+        int x = 0, y = 0, shelf = 0, width = 0;
+        for (Sprite s : sprites) {
+            int w = s.img.getWidth(), h = s.img.getHeight();
+            if (x > 0 && x + w > MAX_WIDTH) { x = 0; y += shelf + PAD; shelf = 0; }
+            s.x = x;
+            s.y = y;
+            x += w + PAD;
+            shelf = Math.max(shelf, h);
+            width = Math.max(width, s.x + w);
+        }
+        int height = y + shelf;
+
+        BufferedImage atlas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        for (Sprite s : sprites) g.drawImage(s.img, s.x, s.y, null);
+        g.dispose();
+
+        File png = new File(outDir, device + ".png");
+        ImageIO.write(atlas, "png", png);
+
+        sprites.sort(Comparator.comparing(s -> s.name));
+        try (PrintWriter w = new PrintWriter(new File(outDir, device + ".atlas"), StandardCharsets.UTF_8)) {
+            w.println("# generated by ui.AtlasPacker, do not edit");
+            w.printf(Locale.ROOT, "atlas %s %d %d%n", png.getName(), width, height);
+            for (Sprite s : sprites) {
+                w.printf(Locale.ROOT, "%s %d %d %d %d%n", s.name, s.x, s.y, s.img.getWidth(), s.img.getHeight());
+            }
+        }
+        System.out.printf(Locale.ROOT, "%s: %d sprites -> %dx%d%n", device, sprites.size(), width, height);
+    }
+}
@@ -2,18 +2,15 @@ package ui;
 
 import io.bus.DeviceManager;
 import io.bus.DeviceLink;
-import javafx.animation.KeyFrame;
 import javafx.animation.PauseTransition;
 import javafx.animation.ScaleTransition;
-import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.util.Duration;
@@ -25,29 +22,33 @@ public class CardReaderGUI extends Application {
     private DeviceManager dm;
     private DeviceLink reader;
 
-    private Image imgIdle0, imgIdle1, imgAccepted, imgDeclined;
-    private ImageView cardView;
+    // CR-0/CR-1 idle flash, CR-2 accepted, CR-3 declined; 500 px frames shown at 260
+    private SpriteCanvas cardView;
+    private boolean idle;
     private Label status;
 
-    private Timeline idleFlash;
-    private boolean flip;
 
     @Override
     public void start(Stage stage) throws Exception {
         var entries = List.of(
                 new DeviceManager.Entry("cardreader-ctrl", "127.0.0.1", 5221, "cardr-ctrl", "cardreader")
         );
+        SpriteAtlas.load("cardReader", 260.0 / 500.0); // decodes in the background while we connect
         dm = new DeviceManager(entries);
-        reader = dm.link("cardreader-ctrl");
 
-        imgIdle0    = new Image(getClass().getResourceAsStream("/images/cardReader/CR-0.png"));
-        imgIdle1    = new Image(getClass().getResourceAsStream("/images/cardReader/CR-1.png"));
-        imgAccepted = new Image(getClass().getResourceAsStream("/images/cardReader/CR-2.png"));
-        imgDeclined = new Image(getClass().getResourceAsStream("/images/cardReader/CR-3.png"));
+        stage.setTitle("Card Reader");
+        stage.setScene(new Scene(createPane(dm.link("cardreader-ctrl")), 320, 380));
+        stage.setOnCloseRequest(e -> {
+            try { if (dm != null) dm.close(); } catch (Exception ignore) {}
+            Platform.exit();
+        });
+        stage.show();
+    }
 
-        cardView = new ImageView(imgIdle0);
-        cardView.setPreserveRatio(true);
-        cardView.setFitWidth(260);
+    /** Builds the card reader pane on {@code link}: the cardreader-ctrl port, or the shared StationConsole link. */
+    public Parent createPane(DeviceLink link) {
+        reader = link;
+        cardView = new SpriteCanvas(SpriteAtlas.load("cardReader", 260.0 / 500.0), "CR-0");
         cardView.setOnMouseClicked(e -> cardRead());
 
         status = new Label("Ready. Tap to send a random digit (0–9).");
@@ -55,36 +56,20 @@ public class CardReaderGUI extends Application {
         VBox root = new VBox(12, cardView, status);
         root.setPadding(new Insets(16));
         root.setAlignment(Pos.CENTER);
-
-        stage.setTitle("Card Reader");
-        stage.setScene(new Scene(root, 320, 380));
-        stage.setOnCloseRequest(e -> {
-            try { if (dm != null) dm.close(); } catch (Exception ignore) {}
-            Platform.exit();
-        });
-        stage.show();
+        root.setPrefSize(320, 380);
 
         startIdle();
+        return root;
     }
 
+    // Idle flash runs on the shared sprite renderer, no Timeline
     private void startIdle() {
-        if (idleFlash != null) idleFlash.stop();
-        flip = false;
-        idleFlash = new Timeline(new KeyFrame(Duration.millis(500), e -> {
-            flip = !flip;
-            cardView.setImage(flip ? imgIdle1 : imgIdle0);
-        }));
-        idleFlash.setCycleCount(Timeline.INDEFINITE);
-        idleFlash.play();
-    }
-
-    private void stopIdle() {
-        if (idleFlash != null) idleFlash.stop();
+        idle = true;
+        cardView.animate(500, "CR-0", "CR-1");
     }
 
     private void cardRead() {
-        Image current = cardView.getImage();
-        if (current != imgIdle0 && current != imgIdle1) return;
+        if (!idle) return;
 
         int d = ThreadLocalRandom.current().nextInt(10);
         String ok;
@@ -101,14 +86,13 @@ public class CardReaderGUI extends Application {
         st.setCycleCount(2);
         st.play();
 
-        stopIdle();
+        idle = false;
         boolean accepted = (d % 2 == 0);
-        cardView.setImage(accepted ? imgAccepted : imgDeclined);
+        cardView.show(accepted ? "CR-2" : "CR-3");
         status.setText("Queued tap: " + d + " (server replied: " + ok + ")" + (accepted ? "  → authorized" : "  → declined"));
 
         PauseTransition back = new PauseTransition(Duration.millis(1200));
         back.setOnFinished(e -> {
-            cardView.setImage(imgIdle0);
             status.setText("Ready. Tap to send a random digit (0–9).");
             startIdle();
         });
@@ -4,16 +4,12 @@ import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Application;
-import javafx.application.Platform;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.effect.DropShadow;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.Border;
@@ -28,18 +24,16 @@ import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
-import java.time.Duration;
 import io.bus.DeviceLink;
 import io.bus.DeviceManager;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Polished, stand‑alone Flow‑Meter GUI demo.
  * <p>
- * — Loads existing sprite frames in {@code resources/images/flowMeter/}.
+ * — Shows the sprite frames from the {@code flowMeter} atlas (see {@link AtlasPacker}).
  * — Shows a crisp gallon counter in a digital‑style font.
  * — Modern card‑style design (rounded corners, drop shadow, soft background).</p>
  */
@@ -48,13 +42,18 @@ public class FlowMeterGUI extends Application {
 
 
 
-    private static final String RES_PATH = "/images/flowMeter/";
+    /** Takes the station flow meter's state as pushed on FLOWCTRL (see {@link #subscribeFlow}). */
+    interface FlowSink {
+        void updateFromDevice(double gallons, boolean flowing);
+    }
+
+    private static final String[] FLOW_FRAMES = { "FM-1-1", "FM-1-2" };
+    private static final String IDLE_FRAME = "FM-0-1";
     private static final double SCREEN_MULTIPLIER = 0.30; // 30 % of monitor height
 
     // Internal mutable state
 
-    private final List<ImageView> frames = new ArrayList<>();
-    private final IntegerProperty frameIdx = new SimpleIntegerProperty(0);
+    private SpriteCanvas sprite;
 
     private boolean flowing = false;
     private double gallons = 0.0;
@@ -69,27 +68,38 @@ public class FlowMeterGUI extends Application {
 
     @Override
     public void start(Stage stage) throws Exception {
+        // Atlas decode starts first and runs in the background, sized to 30 % of the monitor height
+        Rectangle2D screen = Screen.getPrimary().getVisualBounds();
+        double size = screen.getHeight() * SCREEN_MULTIPLIER;
+        SpriteAtlas.load("flowMeter", size / 500.0);
+
         // Device connections
         var entries = List.of(
                 new DeviceManager.Entry("flowmeter-ctrl", "127.0.0.1", 5621, "flowmeter-ctrl", "flowmeter")
         );
         dm = new DeviceManager(entries);
-        flowMeterCtrl = dm.link("flowmeter-ctrl");
 
-        // Load resources
-        frames.add(loadFrame("FM-1-1.png"));
-        frames.add(loadFrame("FM-1-2.png"));
-        frames.add(loadFrame("FM-0-1.png")); // idle frame
+        Scene scene = new Scene(createPane(dm.link("flowmeter-ctrl"), size));
+        stage.setScene(scene);
+        stage.setTitle("Flow‑Meter");
+        stage.setResizable(false);
+        stage.sizeToScene();
 
 
-        // Compute dimensions & scale images
-        Rectangle2D screen = Screen.getPrimary().getVisualBounds();
-        double size = screen.getHeight() * SCREEN_MULTIPLIER;
-        frames.forEach(v -> {
-            v.setPreserveRatio(true);
-            v.setFitWidth(size);
-        });
+        // DEMO‑ONLY logic
+        //simulateFlow(); // <— Remove when wiring to real device
+
+        stage.show();
+    }
 
+    /**
+     * Builds the meter pane on {@code link}: the flowmeter-ctrl port, or the shared StationConsole link.
+     * @param size sprite edge in px
+     */
+    public Parent createPane(DeviceLink link, double size) throws IOException {
+        flowMeterCtrl = link;
+        sprite = new SpriteCanvas(SpriteAtlas.load("flowMeter", size / 500.0), IDLE_FRAME);
+        sprite.show(IDLE_FRAME);
 
         // Build scene graph
         readout = new Text();
@@ -97,7 +107,7 @@ public class FlowMeterGUI extends Application {
         readout.setFill(Color.web("#222"));
         updateReadout();
 
-        spritePane = new StackPane(frames.get(2));
+        spritePane = new StackPane(sprite);
         spritePane.setPadding(new Insets(10));
         spritePane.setBackground(new Background(new BackgroundFill(Color.WHITE, new CornerRadii(12), Insets.EMPTY)));
         spritePane.setBorder(new Border(new BorderStroke(Color.web("#bbbbbb"), BorderStrokeStyle.SOLID,
@@ -109,39 +119,12 @@ public class FlowMeterGUI extends Application {
         root.setPadding(new Insets(25));
         root.setBackground(new Background(new BackgroundFill(Color.web("#f3f6fb"), CornerRadii.EMPTY, Insets.EMPTY)));
 
-        Scene scene = new Scene(root);
-        stage.setScene(scene);
-        stage.setTitle("Flow‑Meter");
-        stage.setResizable(false);
-        stage.sizeToScene();
-
-
-        // Sprite animation
-        Timeline anim = new Timeline(new KeyFrame(javafx.util.Duration.seconds(0.12), e -> toggleFrame()));
-        anim.setCycleCount(Animation.INDEFINITE);
-        anim.play();
-
-
-        // DEMO‑ONLY logic
-        //simulateFlow(); // <— Remove when wiring to real device
-
-        stage.show();
-        startPolling();
-
+        subscribe();
+        return root;
     }
 
 
     // Helper methods ----------------------------------------------------
-    private ImageView loadFrame(String fileName) {
-        return new ImageView(new Image(getClass().getResourceAsStream(RES_PATH + fileName)));
-    }
-
-    private void toggleFrame() {
-        if (!flowing) return;
-        frameIdx.set(frameIdx.get() ^ 1); // XOR swap 0 ⇄ 1
-        spritePane.getChildren().set(0, frames.get(frameIdx.get()));
-    }
-
     private void updateReadout() {
         readout.setText(String.format("%.2f gallons", gallons));
     }
@@ -157,26 +140,24 @@ public class FlowMeterGUI extends Application {
         t.play();
     }
 
-    private void startPolling() {
-        Thread t = new Thread(() -> {
-            try {
-                while (true) {
-                    String r = flowMeterCtrl.request("FLOWCTRL|GETSTATE|MAIN|None", Duration.ofSeconds(1));
-                    String payload = extractQuoted(r);
-                    boolean flowingNow = payload.contains("STATE:1");
-                    double gallonsNow = parseGallons(payload);
-                    Platform.runLater(() -> updateFromDevice(gallonsNow, flowingNow));
-                    Thread.sleep(300);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }, "flowmeter-poll");
-        t.setDaemon(true);
-        t.start();
+    private void subscribe() throws IOException {
+        subscribeFlow(flowMeterCtrl, this, this::updateFromDevice);
+    }
+
+    /**
+     * Feeds {@code sink} every FLOWCTRL push on {@code link}, on the FX thread, coalesced to one update
+     * per pulse for {@code key}. The ForecourtDashboard uses it for this station's tile.
+     */
+    static void subscribeFlow(DeviceLink link, Object key, FlowSink sink) throws IOException {
+        link.subscribe("FLOWCTRL", push -> {
+            String payload = extractQuoted(push);
+            boolean flowingNow = payload.contains("STATE:1");
+            double gallonsNow = parseGallons(payload);
+            FxUpdates.post(key, () -> sink.updateFromDevice(gallonsNow, flowingNow));
+        });
     }
 
-    private double parseGallons(String payload) {
+    private static double parseGallons(String payload) {
         try {
             int i = payload.indexOf("GALLONS:");
             if (i >= 0) return Double.parseDouble(payload.substring(i + 8).trim());
@@ -218,6 +199,9 @@ public class FlowMeterGUI extends Application {
         this.gallons = gallons;
         this.flowing = flowing;
         updateReadout();
+        // Sprite frames advance on the shared renderer's pulse, only while fuel flows
+        if (flowing) sprite.animate(120, FLOW_FRAMES);
+        else sprite.show(IDLE_FRAME);
     }
 
     public static void main(String[] args) {
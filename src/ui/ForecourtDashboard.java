@@ -0,0 +1,244 @@
+package ui;
+
+import io.bus.DeviceLink;
+import io.bus.DeviceManager;
+import javafx.application.Application;
+import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/* Forecourt Dashboard
+* One tile per pump position (state, grade, gallons, dollars), hundreds of them in one window.
+*
+*   - virtualized: a single Canvas the size of the viewport, only the tiles in view are ever drawn,
+*     scrolling repaints the visible rows and nothing is created per position
+*   - batched: FORECOURT deltas (10 Hz from the simulator) queue up off the FX thread, one FxUpdates
+*     pulse applies all of them to the ForecourtModel and redraws only the dirty tiles in view
+*   - site line: SITEFLOW pushes (devices.FlowRegistry in the simulator) give aggregate GPM and
+*     gallons/dollars per grade since the simulator started, shown under the tile summary
+* */
+
+
+/* USAGE
+* java -cp out sim.SimDevices                   (-Dsim.positions=500 for a full site, default just this station)
+* java -cp out:resources ui.ForecourtDashboard
+* */
+
+
+public class ForecourtDashboard extends Application {
+    private static final double TILE_W = 176, TILE_H = 70, GAP = 4;
+    private static final double PITCH_X = TILE_W + GAP, PITCH_Y = TILE_H + GAP;
+
+    private static final Font ID_FONT = Font.font("Arial", FontWeight.BOLD, 13);
+    private static final Font TEXT_FONT = Font.font("Arial", 12);
+
+    // Indexed by ForecourtModel state code
+    private static final Color[] FILL = {
+            Color.web("#3a3f44"),  // WELCOME
+            Color.web("#8a6d1f"),  // GRADE_MENU
+            Color.web("#9c7a1a"),  // ATTACH_HOSE
+            Color.web("#2e7d32"),  // FUELING
+            Color.web("#1f5f8b"),  // THANK_YOU
+            Color.web("#8e2b2b"),  // AUTH_NO
+            Color.web("#b71c1c"),  // ERROR
+            Color.web("#555555")   // OTHER
+    };
+
+    private final ForecourtModel model = new ForecourtModel();
+    private final Queue<String> inbox = new ConcurrentLinkedQueue<>();
+    private volatile String siteFlow = null; // latest SITEFLOW payload
+
+    private Canvas canvas;
+    private ScrollBar scroll;
+    private Label summary;
+    private int columns = 1;
+
+    private DeviceManager dm;
+
+    @Override
+    public void start(Stage stage) throws Exception {
+        dm = new DeviceManager(List.of(
+                new DeviceManager.Entry("forecourt-ctrl", "127.0.0.1", 6021, "forecourt-ctrl", "forecourt")
+        ));
+        stage.setTitle("Forecourt");
+        stage.setScene(new Scene(createPane(dm.link("forecourt-ctrl")), 5 * PITCH_X + 40, 720));
+        stage.show();
+    }
+
+    /** Builds the dashboard on {@code link}: the forecourt-ctrl port or the StationConsole mux. */
+    public Parent createPane(DeviceLink link) throws IOException {
+        canvas = new Canvas();
+        Pane viewport = new Pane(canvas);
+        viewport.setMinSize(PITCH_X, PITCH_Y);
+        viewport.setStyle("-fx-background-color: #202326;");
+        // Canvas never grows past the window, whatever the number of positions
+        canvas.widthProperty().bind(viewport.widthProperty());
+        canvas.heightProperty().bind(viewport.heightProperty());
+        canvas.widthProperty().addListener((o, a, b) -> relayout());
+        canvas.heightProperty().addListener((o, a, b) -> relayout());
+
+        scroll = new ScrollBar();
+        scroll.setOrientation(Orientation.VERTICAL);
+        scroll.setUnitIncrement(PITCH_Y);
+        scroll.valueProperty().addListener((o, a, b) -> redrawVisible());
+        viewport.setOnScroll(e -> scroll.setValue(clamp(scroll.getValue() - e.getDeltaY(), scroll.getMin(), scroll.getMax())));
+
+        summary = new Label("Connecting...");
+        summary.setPadding(new Insets(6));
+        summary.setStyle("-fx-font-size: 14px;");
+
+        BorderPane root = new BorderPane(viewport);
+        root.setTop(summary);
+        root.setRight(scroll);
+
+        // Reader thread only queues, the FX pulse applies everything that arrived since the last one
+        link.subscribe("FORECOURT", push -> {
+            inbox.add(extractQuoted(push));
+            FxUpdates.post(this, this::drain);
+        });
+        link.subscribe("SITEFLOW", push -> {
+            siteFlow = extractQuoted(push);
+            FxUpdates.post(this, this::drain);
+        });
+        // This station's tile takes its gallons from the flow meter, the same updates FlowMeterGUI shows
+        FlowMeterGUI.subscribeFlow(link, model, (gallons, flowing) -> {
+            model.updateFromDevice(gallons, flowing);
+            drain();
+        });
+        return root;
+    }
+
+    private void drain() {
+        String p;
+        while ((p = inbox.poll()) != null) model.apply(p);
+        if (model.takeResized()) {
+            relayout();
+        } else {
+            redrawDirty();
+        }
+        String text = String.format(Locale.US, "%d positions   %d fueling   %.1f gal   $%.2f on the pumps now",
+                model.size(), model.fuelingCount(), model.liveGallons(), model.liveDollars());
+        String site = siteFlow;
+        summary.setText(site == null ? text : text + "\n" + siteLine(site));
+    }
+
+    // GPM:52.4,ACTIVE:7,SALES:120;Regular=120.512/431.23;... -> site 52.4 gpm   120 sales   Regular 120.5 gal $431.23 ...
+    static String siteLine(String payload) {
+        String[] parts = payload.split(";");
+        StringBuilder sb = new StringBuilder("site");
+        for (String kv : parts[0].split(",")) {
+            int c = kv.indexOf(':');
+            if (c < 0) continue;
+            String k = kv.substring(0, c), v = kv.substring(c + 1);
+            if (k.equals("GPM")) sb.append(' ').append(v).append(" gpm");
+            else if (k.equals("SALES")) sb.append("   ").append(v).append(" sales");
+        }
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('='), slash = parts[i].indexOf('/');
+            if (eq < 0 || slash < eq) continue;
+            try {
+                sb.append(String.format(Locale.US, "   %s %.1f gal $%s", parts[i].substring(0, eq),
+                        Double.parseDouble(parts[i].substring(eq + 1, slash)), parts[i].substring(slash + 1)));
+            } catch (NumberFormatException ignored) {}
+        }
+        return sb.toString();
+    }
+
+    // ---- Virtual grid --------------------------------------------------------
+    private void relayout() {
+        double w = canvas.getWidth(), h = canvas.getHeight();
+        columns = Math.max(1, (int) ((w + GAP) / PITCH_X));
+        int rows = (model.size() + columns - 1) / columns;
+        double max = Math.max(0, rows * PITCH_Y - h);
+        scroll.setMax(max);
+        scroll.setVisibleAmount(h);
+        scroll.setBlockIncrement(Math.max(PITCH_Y, h - PITCH_Y));
+        if (scroll.getValue() > max) scroll.setValue(max); // triggers redrawVisible
+        redrawVisible();
+    }
+
+    private int firstVisible() {
+        return Math.min(model.size(), (int) (scroll.getValue() / PITCH_Y) * columns);
+    }
+
+    private int endVisible() {
+        int lastRow = (int) ((scroll.getValue() + canvas.getHeight()) / PITCH_Y);
+        return Math.min(model.size(), (lastRow + 1) * columns);
+    }
+
+    private void redrawVisible() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        for (int i = firstVisible(), end = endVisible(); i < end; i++) drawTile(g, i);
+        model.clearDirty();
+    }
+
+    // Off-screen positions only had their numbers updated, they are drawn when scrolled to
+    private void redrawDirty() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        BitSet dirty = model.dirty();
+        int end = endVisible();
+        for (int i = dirty.nextSetBit(firstVisible()); i >= 0 && i < end; i = dirty.nextSetBit(i + 1)) {
+            drawTile(g, i);
+        }
+        model.clearDirty();
+    }
+
+    private void drawTile(GraphicsContext g, int i) {
+        double x = (i % columns) * PITCH_X;
+        double y = (i / columns) * PITCH_Y - scroll.getValue();
+        byte s = model.state(i);
+
+        g.setFill(FILL[s]);
+        g.fillRect(x, y, TILE_W, TILE_H);
+        g.setFill(Color.WHITE);
+        g.setTextBaseline(VPos.TOP);
+
+        g.setFont(ID_FONT);
+        g.fillText("#" + i + "  " + ForecourtModel.STATES[s], x + 6, y + 5, TILE_W - 12);
+
+        g.setFont(TEXT_FONT);
+        String grade = model.grade(i);
+        g.fillText(grade == null ? "-" : grade, x + 6, y + 26, TILE_W - 12);
+        if (s == ForecourtModel.FUELING || s == ForecourtModel.THANK_YOU) {
+            g.fillText(String.format(Locale.US, "%.3f gal   $%.2f", model.gallons(i), model.dollars(i)),
+                    x + 6, y + 46, TILE_W - 12);
+        }
+    }
+
+    private static double clamp(double v, double lo, double hi) { return Math.max(lo, Math.min(hi, v)); }
+
+    private static String extractQuoted(String s) {
+        int q1 = s.indexOf('"');
+        int q2 = s.lastIndexOf('"');
+        return (q1 >= 0 && q2 > q1) ? s.substring(q1 + 1, q2) : s;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (dm != null) dm.close();
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
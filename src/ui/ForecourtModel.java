@@ -0,0 +1,161 @@
+package ui;
+
+import java.util.BitSet;
+
+/* Forecourt Model
+* What the dashboard knows about every pump position, held in primitive arrays indexed by position
+* (no row objects, no properties). FORECOURT snapshots and deltas are applied in place and mark the
+* positions they touched, the view repaints only those. No JavaFX here.
+*
+*   snapshot  N:500;GRADES:Regular/Plus/E85;0,WELCOME,0.000,0.00,-1;...
+*   delta     1,FUELING,3.310,11.56,2;7,THANK_YOU,9.020,31.48,0
+*
+* Position 0 is this station: its gallons follow the station's own flow meter once one reports
+* (updateFromDevice, the FlowMeterGUI update), the stream only carries its screen state, dollars, grade.
+*
+* Single-threaded: ForecourtDashboard applies payloads on the FX thread, once per pulse.
+* */
+
+public final class ForecourtModel {
+    // ScreenGUI state vocabulary, OTHER for anything the dashboard has no colour for
+    public static final String[] STATES = { "WELCOME", "GRADE_MENU", "ATTACH_HOSE", "FUELING", "THANK_YOU", "AUTH_NO", "ERROR", "OTHER" };
+    public static final byte WELCOME = 0, GRADE_MENU = 1, ATTACH_HOSE = 2, FUELING = 3, THANK_YOU = 4, AUTH_NO = 5, ERROR = 6, OTHER = 7;
+
+    private int n = 0;
+    private byte[] state = new byte[0];
+    private double[] gallons = new double[0];
+    private double[] dollars = new double[0];
+    private byte[] slot = new byte[0];
+    private String[] grades = new String[0];
+
+    private double meterGallons = Double.NaN; // station flow meter, NaN until it reports
+    private final BitSet dirty = new BitSet();
+    private boolean resized = false;
+
+    // Running totals, kept in step with every applied entry
+    private int fueling = 0;
+    private double liveGallons = 0.0, liveDollars = 0.0;
+
+    public int size() { return n; }
+    public byte state(int i) { return state[i]; }
+    public double gallons(int i) { return gallons[i]; }
+    public double dollars(int i) { return dollars[i]; }
+
+    /** Grade name at position {@code i}, null when none is selected. */
+    public String grade(int i) {
+        int s = slot[i];
+        return s >= 0 && s < grades.length ? grades[s] : null;
+    }
+
+    public int fuelingCount() { return fueling; }
+    public double liveGallons() { return liveGallons; }
+    public double liveDollars() { return liveDollars; }
+
+    /** Positions changed since {@link #clearDirty()}. */
+    public BitSet dirty() { return dirty; }
+
+    /** True once after a snapshot changed the number of positions (the grid needs a new layout). */
+    public boolean takeResized() {
+        boolean r = resized;
+        resized = false;
+        return r;
+    }
+
+    public void clearDirty() { dirty.clear(); }
+
+    /** This station's flow meter (FLOWCTRL), as FlowMeterGUI.updateFromDevice gets it; shown on position 0. */
+    public void updateFromDevice(double gallons, boolean flowing) {
+        meterGallons = gallons;
+        if (n == 0) return;
+        byte s = flowing ? FUELING : state[0];
+        set(0, s, showsGallons(s) ? gallons : 0.0, dollars[0], slot[0]);
+    }
+
+    /** Applies one FORECOURT payload, snapshot or delta. Malformed entries are skipped. */
+    public void apply(String payload) {
+        int pos = 0, len = payload.length();
+        while (pos < len) {
+            int end = payload.indexOf(';', pos);
+            if (end < 0) end = len;
+            if (payload.startsWith("N:", pos)) {
+                resize(parseInt(payload, pos + 2, end));
+            } else if (payload.startsWith("GRADES:", pos)) {
+                grades = end > pos + 7 ? payload.substring(pos + 7, end).split("/") : new String[0];
+                dirty.set(0, n);
+            } else {
+                applyEntry(payload, pos, end);
+            }
+            pos = end + 1;
+        }
+    }
+
+    // i,STATE,gallons,dollars,slot
+    private void applyEntry(String p, int from, int to) {
+        int c1 = p.indexOf(',', from);
+        int c2 = c1 < 0 ? -1 : p.indexOf(',', c1 + 1);
+        int c3 = c2 < 0 ? -1 : p.indexOf(',', c2 + 1);
+        int c4 = c3 < 0 ? -1 : p.indexOf(',', c3 + 1);
+        if (c4 < 0 || c4 >= to) return;
+        try {
+            int i = parseInt(p, from, c1);
+            if (i < 0 || i >= n) return;
+            byte s = stateCode(p, c1 + 1, c2);
+            double g = Double.parseDouble(p.substring(c2 + 1, c3));
+            double usd = Double.parseDouble(p.substring(c3 + 1, c4));
+            byte sl = (byte) parseInt(p, c4 + 1, to);
+            if (i == 0 && !Double.isNaN(meterGallons) && showsGallons(s)) g = meterGallons;
+            set(i, s, g, usd, sl);
+        } catch (NumberFormatException ignored) {}
+    }
+
+    // Keeps the running totals in step
+    private void set(int i, byte s, double g, double usd, byte sl) {
+        if (state[i] == FUELING) fueling--;
+        if (s == FUELING) fueling++;
+        liveGallons += g - gallons[i];
+        liveDollars += usd - dollars[i];
+        state[i] = s;
+        gallons[i] = g;
+        dollars[i] = usd;
+        slot[i] = sl;
+        dirty.set(i);
+    }
+
+    // The meter keeps the last sale's gallons after it, the tile shows them only until WELCOME
+    private static boolean showsGallons(byte s) { return s == FUELING || s == THANK_YOU; }
+
+    private void resize(int size) {
+        if (size == n || size < 0) return;
+        n = size;
+        state = new byte[n];
+        gallons = new double[n];
+        dollars = new double[n];
+        slot = new byte[n];
+        java.util.Arrays.fill(slot, (byte) -1);
+        fueling = 0;
+        liveGallons = liveDollars = 0.0;
+        dirty.set(0, n);
+        resized = true;
+    }
+
+    private static byte stateCode(String p, int from, int to) {
+        for (byte k = 0; k < OTHER; k++) {
+            String s = STATES[k];
+            if (s.length() == to - from && p.startsWith(s, from)) return k;
+        }
+        return OTHER;
+    }
+
+    private static int parseInt(String p, int from, int to) {
+        boolean neg = from < to && p.charAt(from) == '-';
+        int i = neg ? from + 1 : from;
+        if (i >= to) throw new NumberFormatException(p.substring(from, to));
+        int v = 0;
+        for (; i < to; i++) {
+            int d = p.charAt(i) - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException(p.substring(from, to));
+            v = v * 10 + d;
+        }
+        return neg ? -v : v;
+    }
+}
@@ -0,0 +1,67 @@
+package ui;
+
+import io.log.Log;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* Coalescing FX update queue
+* Device threads post (key, update) instead of calling Platform.runLater for every message.
+* On each animation pulse the FX thread applies the latest update per key, older ones for the
+* same key are dropped. The pulse timer only runs while updates are arriving: it starts on the
+* first post and stops on the first pulse that finds nothing to do, so an idle GUI does no FX work.
+* */
+
+
+/* USAGE
+* link.subscribe("SCREEN", line -> FxUpdates.post(this, () -> applyState(parse(line))));
+* */
+
+
+public final class FxUpdates {
+    private static final Log LOG = Log.named("fx");
+    private static final Log.Limit FAIL_LIMIT = Log.limit(1);
+    private static final Map<Object, Runnable> PENDING = new ConcurrentHashMap<>();
+    private static final AtomicBoolean RUNNING = new AtomicBoolean(false);
+    private static AnimationTimer timer; // FX thread only
+
+    private FxUpdates() {}
+
+    /** Queues {@code update} for the next pulse, replacing any update still pending for {@code key}. */
+    public static void post(Object key, Runnable update) {
+        PENDING.put(key, update);
+        if (RUNNING.compareAndSet(false, true)) Platform.runLater(FxUpdates::startTimer);
+    }
+
+    private static void startTimer() {
+        if (timer == null) {
+            timer = new AnimationTimer() {
+                @Override public void handle(long now) { pulse(); }
+            };
+        }
+        timer.start();
+    }
+
+    private static void pulse() {
+        boolean worked = false;
+        for (Object key : PENDING.keySet()) {
+            Runnable r = PENDING.remove(key);
+            if (r == null) continue;
+            worked = true;
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                LOG.warn(FAIL_LIMIT, "update for %s failed: %s", key.getClass().getSimpleName(), e.toString()); // the next post for the key still runs
+            }
+        }
+        if (worked) return;
+
+        timer.stop();
+        RUNNING.set(false);
+        // A post() that saw RUNNING=true just before we cleared it would otherwise wait forever
+        if (!PENDING.isEmpty() && RUNNING.compareAndSet(false, true)) timer.start();
+    }
+}
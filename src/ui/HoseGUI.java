@@ -6,17 +6,15 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Cursor;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
+import java.io.IOException;
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.Random;
 
 public class HoseGUI extends Application {
@@ -27,21 +25,19 @@ public class HoseGUI extends Application {
         return s.substring(q1 + 1, q2);
     }
 
-    private volatile boolean suppressPoll = false;
     private boolean armed = false;
 
     private DeviceManager dm;
     private DeviceLink hoseCtrl;
 
     private boolean attached = false;
-    private ImageView image;
+    private SpriteCanvas image;
     private Label status;
 
-    private javafx.animation.Timeline fuelTicker;
     private int fillIndex = 0;
 
-    private final List<Image> connectedImages = new ArrayList<>();
-    private final List<Image> disconnectedImages = new ArrayList<>();
+    // GN-C-<n> / GN-D-<n> frames, 500 px in the atlas, decoded at the 240 px they are shown at
+    private static final double FRAME_PX = 240.0;
     private boolean tankFull;
     private double tankSize;
     private double currentTankFill;
@@ -51,14 +47,20 @@ public class HoseGUI extends Application {
         var entries = List.of(
                 new DeviceManager.Entry("hose-ctrl", "127.0.0.1", 5121, "hose-ctrl", "hosectrl")
         );
+        SpriteAtlas.load("hose", FRAME_PX / 500.0); // decodes in the background while we connect
         dm = new DeviceManager(entries);
-        hoseCtrl = dm.link("hose-ctrl");
 
-        loadImages();
+        stage.setTitle("Hose Simulator");
+        stage.setScene(new Scene(createPane(dm.link("hose-ctrl")), 280, 320));
+        stage.show();
+    }
 
-        image = new ImageView(disconnectedImages.get(0));
-        image.setFitWidth(240);
-        image.setPreserveRatio(true);
+    /** Builds the hose pane on {@code link}: the hose-ctrl port, or the shared StationConsole link. */
+    public Parent createPane(DeviceLink link) throws IOException {
+        hoseCtrl = link;
+        // Frames are drawn by the shared SpriteRenderer
+        image = new SpriteCanvas(SpriteAtlas.load("hose", FRAME_PX / 500.0), "GN-D-0");
+        image.show("GN-D-0");
         image.setCursor(Cursor.HAND);
 
         status = new Label("Hose: DETACHED");
@@ -68,15 +70,16 @@ public class HoseGUI extends Application {
 
         setSimState(attached);
 
-        Thread poll = new Thread(this::pollLoop, "hose-poll");
-        poll.setDaemon(true);
-        poll.start();
+        // Pushed on change (at most every 100 ms while fuel flows), applied on the FX thread
+        hoseCtrl.subscribe("HOSECTRL", push -> {
+            String payload = extractQuoted(push);
+            FxUpdates.post(this, () -> applyStatus(payload));
+        });
 
         VBox root = new VBox(12, image, status);
         root.setPadding(new Insets(12));
-        stage.setTitle("Hose Simulator");
-        stage.setScene(new Scene(root, 280, 320));
-        stage.show();
+        root.setPrefSize(280, 320);
+        return root;
     }
 
     @Override
@@ -86,7 +89,6 @@ public class HoseGUI extends Application {
 
     private void toggle() {
         boolean next = !attached;
-        suppressPoll = true;
 
         try {
             hoseCtrl.request("HOSECTRL|SET|MAIN|" + (next ? "1" : "0"), Duration.ofSeconds(1));
@@ -97,30 +99,7 @@ public class HoseGUI extends Application {
         attached = next;
         status.setText(attached ? "Hose: ATTACHED" : "Hose: DETACHED");
         changeImage(fillIndex);
-
-        if (armed && attached && !tankFull) startFuelTickerIfNeeded();
-        else stopFuelTicker();
-
-        new Thread(() -> {
-            try {
-                Thread.sleep(250);
-                String r = hoseCtrl.request("HOSECTRL|GET|MAIN|None", Duration.ofSeconds(1));
-                String payload = extractQuoted(r);
-                boolean sAttached = parseAttached(payload);
-                boolean sArmed    = parseArmed(payload);
-
-                attached = sAttached;
-                armed    = sArmed;
-
-                Platform.runLater(() -> {
-                    status.setText(attached ? "Hose: ATTACHED" : "Hose: DETACHED");
-                    changeImage(fillIndex);
-                });
-            } catch (Exception ignored) {
-            } finally {
-                suppressPoll = false;
-            }
-        }, "hose-debounce").start();
+        // The SET above triggers a push with the simulator's view, applyStatus() reconciles
     }
 
     private void setSimState(boolean isAttached) {
@@ -137,77 +116,28 @@ public class HoseGUI extends Application {
         tankSize = 0;
         fillIndex = 0;
         changeImage(fillIndex);
-        stopFuelTicker();
     }
 
-    private void pollLoop() {
-        try {
-            while (true) {
-                if (suppressPoll) { Thread.sleep(50); continue; }
-
-                String r = hoseCtrl.request("HOSECTRL|GET|MAIN|None", Duration.ofSeconds(1));
-                String payload = extractQuoted(r);
-
-                boolean sAttached = parseAttached(payload);
-                boolean sArmed    = parseArmed(payload);
-
-                boolean attachChanged = (sAttached != attached);
-                boolean armedChanged  = (sArmed != armed);
-
-                attached = sAttached;
-                armed    = sArmed;
+    // FX thread, one call per pulse at most with the newest HOSECTRL payload
+    private void applyStatus(String payload) {
+        boolean sAttached = parseAttached(payload);
+        boolean sArmed    = parseArmed(payload);
 
-                if (armedChanged && !armed) resetForNewSession();
-                if (attachChanged && attached && !armed) initializeNewTank();
+        boolean attachChanged = (sAttached != attached);
+        boolean armedChanged  = (sArmed != armed);
 
-                Platform.runLater(() -> {
-                    status.setText(attached ? "Hose: ATTACHED" : "Hose: DETACHED");
-                    changeImage(fillIndex);
-                });
-
-                if (armed && attached && !tankFull) startFuelTickerIfNeeded();
-                else stopFuelTicker();
-
-                Thread.sleep(200);
-            }
-        } catch (Exception ignored) {}
-    }
+        attached = sAttached;
+        armed    = sArmed;
 
-    private void startFuelTickerIfNeeded() {
-        if (fuelTicker != null) {
-            if (armed && attached && !tankFull) fuelTicker.play();
-            return;
-        }
-        fuelTicker = new javafx.animation.Timeline(
-                new javafx.animation.KeyFrame(javafx.util.Duration.seconds(1), e -> {
-                    if (!armed || !attached || tankFull) { fuelTicker.pause(); return; }
-                    if (fillIndex < 10) { fillIndex += 1; changeImage(fillIndex); }
-                    if (fillIndex >= 10) {
-                        tankFull = true;
-                        try { hoseCtrl.request("HOSECTRL|FULL|MAIN|1", Duration.ofSeconds(1)); } catch (Exception ignored) {}
-                        fuelTicker.pause();
-                    }
-                })
-        );
-        fuelTicker.setCycleCount(javafx.animation.Animation.INDEFINITE);
-        if (armed && attached && !tankFull) fuelTicker.play();
-    }
+        if (armedChanged && !armed) resetForNewSession();
+        if (attachChanged && attached && !armed) initializeNewTank();
 
-    private void stopFuelTicker() {
-        if (fuelTicker != null) fuelTicker.pause();
-    }
+        // The simulator's dispenser owns the tank level now, the image just follows CUR/CAP
+        int level = armed ? parseFillIndex(payload) : fillIndex;
 
-    private void loadImages() {
-        for (int i = 0; i <= 10; i++) {
-            String dn = "GN-D-" + i + ".png";
-            Image imgD = new Image(Objects.requireNonNull(HoseGUI.class.getResource("/images/hose/" + dn)).toExternalForm());
-            disconnectedImages.add(imgD);
-        }
-        for (int i = 0; i <= 10; i++) {
-            String cn = "GN-C-" + i + ".png";
-            Image imgC = new Image(Objects.requireNonNull(HoseGUI.class.getResource("/images/hose/" + cn)).toExternalForm());
-            connectedImages.add(imgC);
-        }
+        status.setText(attached ? "Hose: ATTACHED" : "Hose: DETACHED");
+        changeImage(level);
+        tankFull = parseFlag(payload, "FULL:");
     }
 
     private void initializeNewTank() {
@@ -228,7 +158,27 @@ public class HoseGUI extends Application {
         if (tankFull) return;
         int idx = Math.max(0, Math.min(10, number));
         fillIndex = idx;
-        image.setImage((attached ? connectedImages : disconnectedImages).get(idx));
+        image.show((attached ? "GN-C-" : "GN-D-") + idx);
+    }
+
+    private static int parseFillIndex(String payload) {
+        double cap = parseNumber(payload, "CAP:");
+        double cur = parseNumber(payload, "CUR:");
+        if (cap <= 0.0) return 0;
+        return Math.max(0, Math.min(10, (int) Math.floor((cur / cap) * 11)));
+    }
+
+    private static double parseNumber(String payload, String key) {
+        int i = payload.indexOf(key);
+        if (i < 0) return 0.0;
+        int end = payload.indexOf(',', i);
+        try { return Double.parseDouble(payload.substring(i + key.length(), end < 0 ? payload.length() : end)); }
+        catch (NumberFormatException e) { return 0.0; }
+    }
+
+    private static boolean parseFlag(String payload, String key) {
+        int i = payload.indexOf(key);
+        return i >= 0 && i + key.length() < payload.length() && payload.charAt(i + key.length()) == '1';
     }
 
     private static boolean parseArmed(String payload) {
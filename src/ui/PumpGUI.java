@@ -1,184 +1,126 @@
 package ui;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import io.bus.DeviceLink;
+import io.bus.DeviceManager;
 import javafx.application.Application;
-import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.SimpleBooleanProperty;
 import javafx.geometry.Pos;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 
-import java.io.InputStream;
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.util.List;
+
+/* Pump GUI
+* Mirrors the simulator's pump: motor, nozzle and grade arrive as PUMPCTRL pushes
+*   MAIN|PUSH|PUMPCTRL|"MOTOR:1,NOZZLE:1,GRADE:Regular,SLOT:0"
+* on the pump-ctrl port (5521) or the StationConsole mux. Nothing is polled.
+*
+* In the simulator's own JVM the socket can be skipped, the payload is the same:
+*   PumpGUI gui = new PumpGUI();
+*   Parent p = gui.createPane(null);
+*   SimDevices.watch("PUMPCTRL", gui::onPumpState);
+* */
 
 
 public class PumpGUI extends Application {
 
-    // --- image names (under resources /images/pump/) ---
-    private static final String BASE = "/images/pump/";
-    private static final String IMG_OFF   = "P-0.png";
-    private static final String IMG_A0    = "P-1-0-0.png";
-    private static final String IMG_A1    = "P-1-0-1.png";
+    // --- sprite names (pump atlas, see AtlasPacker) ---
+    private static final String IMG_OFF = "P-0";
+    // P-1-<slot>-<frame>: nozzle out for the grade in LIST slot 0..2, two frames while the motor runs
 
     // --- UI ---
-    private ImageView view;
-    private Image imgOff, imgA0, imgA1;
-
-    // --- animation ---
-    private Timeline loop;
-    private boolean flip = false;
-
-    // --- attached state (observable) ---
-    private final BooleanProperty attached = new SimpleBooleanProperty(false);
+    private SpriteCanvas view;
+    private SpriteAtlas sprites; // 500 px frames decoded at the 420 px they are shown at
 
-    // --- reflection hooks (none of your other files need to change) ---
-    private Method mIsAttached;   // static boolean isAttached() / getAttached() / isHoseAttached()/getHoseAttached()
-    private Class<?> providerClass;
+    private DeviceManager dm;
 
     @Override
-    public void start(Stage stage) {
+    public void start(Stage stage) throws IOException {
         System.out.println("[PumpGUI] Launching");
+        SpriteAtlas.load("pump", 420.0 / 500.0); // decodes in the background while we connect
+        dm = new DeviceManager(List.of(
+                new DeviceManager.Entry("pump-ctrl", "127.0.0.1", 5521, "pump-ctrl", "pumpctrl")
+        ));
 
-        // Load images
-        imgOff = load(BASE + IMG_OFF);
-        imgA0  = load(BASE + IMG_A0);
-        imgA1  = load(BASE + IMG_A1);
-        if (imgOff == null) warnMissing(IMG_OFF);
-        if (imgA0  == null) warnMissing(IMG_A0);
-        if (imgA1  == null) warnMissing(IMG_A1);
-
-        view = new ImageView(imgOff);
-        view.setPreserveRatio(true);
-        view.setFitHeight(420);
-
-        BorderPane root = new BorderPane(view);
-        BorderPane.setAlignment(view, Pos.CENTER);
-
-        Scene scene = new Scene(root, 520, 480);
+        Scene scene = new Scene(createPane(dm.link("pump-ctrl")), 520, 480);
         stage.setTitle("PumpGUI");
         stage.setScene(scene);
         stage.show();
-
-        // Try to wire to your existing code (unchanged)
-        wireAttachmentGetter();
-
-        // Poll attached flag & animate
-        loop = new Timeline(new KeyFrame(Duration.millis(180), e -> tick()));
-        loop.setCycleCount(Animation.INDEFINITE);
-        loop.play();
-
-        // Test toggle if we couldn't find a provider
-        scene.setOnKeyPressed(ev -> {
-            switch (ev.getCode()) {
-                case A -> {
-                    if (mIsAttached == null) {
-                        attached.set(!attached.get());
-                        System.out.println("[PumpGUI] (TEST) attached=" + attached.get());
-                        // force refresh now instead of waiting for next tick
-                        tick();
-                    }
-                }
-                default -> {}
-            }
-        });
-
-        
-        tick();
     }
 
-    private void tick() {
-        if (mIsAttached != null) {
-            try {
-                Object v = mIsAttached.invoke(null);
-                if (v instanceof Boolean b) {
-                    attached.set(b);
-                } else {
-                    attached.set(false);
-                }
-            } catch (Throwable t) {
-                System.out.println("[PumpGUI] Provider error; disabling: " + t);
-                mIsAttached = null;
-            }
-        }
+    /**
+     * Builds the pump pane. With a {@code link} (pump-ctrl port or StationConsole mux) it subscribes to
+     * PUMPCTRL; with {@code null} the caller feeds {@link #onPumpState} itself.
+     */
+    public Parent createPane(DeviceLink link) throws IOException {
+        sprites = SpriteAtlas.load("pump", 420.0 / 500.0);
+        if (!sprites.has(IMG_OFF)) warnMissing(IMG_OFF);
 
-        // Render based on attached
-        if (!attached.get()) {
-            // not attached -> P-0.png
-            if (imgOff != null) view.setImage(imgOff);
-        } else {
-            // attached -> toggle between two frames
-            flip = !flip;
-            if (flip) {
-                if (imgA0 != null) view.setImage(imgA0);
-            } else {
-                if (imgA1 != null) view.setImage(imgA1);
-            }
-        }
-    }
-
-    private void wireAttachmentGetter() {
-        // Try ui.HoseGUI first
-        providerClass = tryClass("ui.HoseGUI");
-        if (providerClass != null) {
-            mIsAttached = tryAnyStaticBoolean(providerClass, "isAttached", "getAttached");
-        }
+        view = new SpriteCanvas(sprites, 420, 420);
+        view.show(IMG_OFF);
 
-        // Try sim.SimDevices next if not found
-        if (mIsAttached == null) {
-            providerClass = tryClass("sim.SimDevices");
-            if (providerClass != null) {
-                mIsAttached = tryAnyStaticBoolean(providerClass, "isHoseAttached", "getHoseAttached", "isAttached", "getAttached");
-            }
-        }
+        BorderPane root = new BorderPane(view);
+        BorderPane.setAlignment(view, Pos.CENTER);
+        root.setPrefSize(520, 480);
 
-        if (mIsAttached != null) {
-            System.out.println("[PumpGUI] Attached provider wired: " +
-                    providerClass.getName() + "." + mIsAttached.getName() + "()");
-        } else {
-            System.out.println("[PumpGUI] No attached provider found. Press 'A' to toggle for testing.");
+        if (link != null) {
+            link.subscribe("PUMPCTRL", push -> onPumpState(extractQuoted(push)));
         }
+        return root;
     }
 
-    private static Class<?> tryClass(String name) {
-        try { return Class.forName(name); } catch (Throwable ignored) {}
-        return null;
+    /** Applies a PUMPCTRL payload; any thread, only the latest one per pulse is drawn. */
+    public void onPumpState(String payload) {
+        boolean motor  = payload.contains("MOTOR:1");
+        boolean nozzle = payload.contains("NOZZLE:1");
+        int slot = Math.max(0, (int) field(payload, "SLOT"));
+        FxUpdates.post(this, () -> render(motor, nozzle, slot));
     }
 
-    private static Method tryAnyStaticBoolean(Class<?> cls, String... names) {
-        for (String n : names) {
-            try {
-                Method m = cls.getMethod(n);
-                if ((m.getModifiers() & java.lang.reflect.Modifier.STATIC) != 0 &&
-                        (m.getReturnType() == boolean.class || m.getReturnType() == Boolean.class)) {
-                    return m;
-                }
-            } catch (Throwable ignored) {}
+    // Both SpriteCanvas calls are no-ops when nothing changed
+    private void render(boolean motor, boolean nozzle, int slot) {
+        String a0 = "P-1-" + slot + "-0", a1 = "P-1-" + slot + "-1";
+        if (!sprites.has(a0)) { a0 = "P-1-0-0"; a1 = "P-1-0-1"; }
+
+        if (!nozzle && !motor) {
+            show(IMG_OFF);
+        } else if (!motor) {
+            show(a0);                  // nozzle out, waiting for authorisation
+        } else if (sprites.has(a1)) {
+            view.animate(180, a0, a1); // dispensing
         }
-        return null;
     }
 
-    private static Image load(String path) {
-        try (InputStream in = PumpGUI.class.getResourceAsStream(path)) {
-            if (in == null) return null;
-            return new Image(in);
-        } catch (Exception e) {
-            return null;
+    private static long field(String payload, String key) {
+        int i = payload.indexOf(key + ":");
+        if (i < 0) return -1;
+        int end = payload.indexOf(',', i);
+        try {
+            return Long.parseLong(payload.substring(i + key.length() + 1, end < 0 ? payload.length() : end).trim());
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
+    private static String extractQuoted(String s) {
+        int q1 = s.indexOf('"');
+        int q2 = s.lastIndexOf('"');
+        return (q1 >= 0 && q2 > q1) ? s.substring(q1 + 1, q2) : s;
+    }
+
+    private void show(String name) {
+        if (sprites.has(name)) view.show(name);
+    }
+
     private static void warnMissing(String name) {
-        System.out.println("[PumpGUI] WARN: image not found: " + name + " (check resources " + BASE + ")");
+        System.out.println("[PumpGUI] WARN: sprite not found: " + name + " (re-run ui.AtlasPacker)");
     }
 
     @Override
-    public void stop() {
-        if (loop != null) loop.stop();
+    public void stop() throws Exception {
+        if (dm != null) dm.close();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,179 @@
+package ui;
+
+import io.log.Log;
+import io.log.Recorder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/* Headless Screen Benchmark
+* Replays screen states through the same retained path ScreenGUI.applyState uses
+* (ScreenModel.Retained: render the state, hand only the changed rows on), no display and no JavaFX.
+* Every transition is timed and reported per kind, e.g. FUELING_NUM->FUELING_NUM or GRADE_MENU->FUEL_SELECTED.
+*
+*   --paint 1   the changed rows are also painted off-screen (ScreenSnapshot, AWT headless),
+*               otherwise only the state->rows mapping and the row diff are timed
+*   --png DIR   writes one PNG per transition kind (its first occurrence), implies --paint 1
+*
+* States come from a scripted customer session (like Main drives the screen) or from --states FILE,
+* one state per line (WELCOME, FUELING_NUM:1.250,4.36, ...).
+* With --max-p99-us the exit code is 1 when any kind's p99 is over the limit, for scripted checks.
+* */
+
+
+/* USAGE
+* java -cp out ui.ScreenBench --sessions 2000
+* java -cp out ui.ScreenBench --sessions 2000 --paint 1 --size 600 --max-p99-us 500
+* java -cp out ui.ScreenBench --sessions 1 --png /tmp/screens
+*
+* --sessions N     scripted sessions to replay                     (default 1000)
+* --warmup N       sessions replayed first and not recorded        (default 100)
+* --states FILE    replay these states instead of the script
+* --paint 0|1      paint changed rows into an off-screen image      (default 0)
+* --size PX        off-screen screen size, square                  (default 600)
+* --png DIR        snapshot each transition kind once to DIR
+* --max-p99-us US  fail when a kind's p99 is above US
+* --seed S         RNG seed for the script                         (default 42)
+* */
+
+
+public final class ScreenBench {
+    private static final Log LOG = Log.named("bench");
+
+    private static final String[] GRADES = { "Regular=3.49", "Plus=3.79", "Premium=4.09", "Diesel=3.99", "E85=2.89" };
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = parseArgs(args);
+        int sessions  = Integer.parseInt(opt.getOrDefault("sessions", "1000"));
+        int warmup    = Integer.parseInt(opt.getOrDefault("warmup", "100"));
+        int size      = Integer.parseInt(opt.getOrDefault("size", "600"));
+        long seed     = Long.parseLong(opt.getOrDefault("seed", "42"));
+        String png    = opt.get("png");
+        boolean paint = png != null || "1".equals(opt.get("paint"));
+        double maxP99 = Double.parseDouble(opt.getOrDefault("max-p99-us", "0"));
+
+        List<String> states = new ArrayList<>();
+        Random rnd = new Random(seed);
+        if (opt.containsKey("states")) {
+            for (String l : Files.readAllLines(new File(opt.get("states")).toPath(), StandardCharsets.UTF_8)) {
+                if (!l.isBlank()) states.add(l.trim());
+            }
+        } else {
+            for (int i = 0; i < sessions; i++) script(rnd, states);
+        }
+
+        if (paint) System.setProperty("java.awt.headless", "true");
+        File pngDir = png == null ? null : new File(png);
+        if (pngDir != null && !pngDir.isDirectory() && !pngDir.mkdirs()) throw new IllegalArgumentException("cannot create " + png);
+
+        // Warmup: same path, separate screen, nothing recorded
+        List<String> warm = new ArrayList<>();
+        for (int i = 0; i < warmup; i++) script(rnd, warm);
+        replay(warm, paint ? new ScreenSnapshot(size) : (row, spec) -> {}, null, null);
+
+        Map<String, Recorder> kinds = new LinkedHashMap<>();
+        ScreenSnapshot snap = paint ? new ScreenSnapshot(size) : null;
+        long t0 = System.nanoTime();
+        int[] rows = replay(states, snap != null ? snap : (row, spec) -> {}, kinds, pngDir == null ? null : (kind, n) -> {
+            String name = String.format(Locale.ROOT, "%04d-%s.png", n, kind.replace("->", "_to_"));
+            snap.writePng(new File(pngDir, name));
+        });
+        double elapsedMs = (System.nanoTime() - t0) / 1_000_000.0;
+
+        int transitions = 0;
+        for (Recorder r : kinds.values()) transitions += r.size();
+        LOG.info("%d transitions in %.1f ms (%s)", transitions, elapsedMs, paint ? "mapping + diff + off-screen paint" : "mapping + diff");
+        LOG.info("rows repainted: %d of %d", rows[0], transitions * ScreenModel.ROWS);
+        LOG.info("%-36s %7s %9s %9s %9s %9s", "transition", "n", "p50(us)", "p90(us)", "p99(us)", "max(us)");
+        boolean over = false;
+        for (Map.Entry<String, Recorder> e : kinds.entrySet()) {
+            Recorder r = e.getValue();
+            double p99 = r.pctUs(99);
+            boolean bad = maxP99 > 0 && p99 > maxP99;
+            over |= bad;
+            LOG.info("%-36s %7d %9.1f %9.1f %9.1f %9.1f%s",
+                    e.getKey(), r.size(), r.pctUs(50), r.pctUs(90), p99, r.pctUs(100), bad ? "  OVER" : "");
+        }
+        if (over) {
+            LOG.warn("p99 above %.1f us", maxP99);
+            System.exit(1);
+        }
+    }
+
+    interface Snapshotter { void write(String kind, int n) throws Exception; }
+
+    // Returns {rows repainted}; kinds/snapshots may be null (warmup)
+    private static int[] replay(List<String> states, ScreenModel.Retained.Sink sink,
+                                Map<String, Recorder> kinds, Snapshotter snapshots) throws Exception {
+        ScreenModel.Retained screen = new ScreenModel.Retained();
+        int[] rows = new int[1];
+        String prevKind = "NONE";
+        Map<String, Boolean> written = new HashMap<>();
+        for (String state : states) {
+            long s = System.nanoTime();
+            int changed = screen.apply(state, sink);
+            long took = System.nanoTime() - s;
+
+            String kind = kindOf(state);
+            if (kinds != null && changed >= 0) {
+                String k = prevKind + "->" + kind;
+                kinds.computeIfAbsent(k, x -> new Recorder()).add(took);
+                rows[0] += changed;
+                if (snapshots != null && written.putIfAbsent(k, Boolean.TRUE) == null) snapshots.write(k, written.size());
+            }
+            prevKind = kind;
+        }
+        return rows;
+    }
+
+    // FUELING_NUM:1.250,4.36 -> FUELING_NUM
+    private static String kindOf(String state) {
+        int colon = state.indexOf(':');
+        return colon < 0 ? state : state.substring(0, colon);
+    }
+
+    // One customer the way Main drives the screen, 1 in 5 declined, 1 in 40 ends in an error
+    private static void script(Random rnd, List<String> out) {
+        out.add("WELCOME");
+        if (rnd.nextInt(5) == 0) {
+            out.add("AUTH_NO");
+            return;
+        }
+        List<String> menu = new ArrayList<>(Arrays.asList(GRADES));
+        java.util.Collections.shuffle(menu, rnd);
+        out.add("GRADE_MENU:" + String.join(",", menu.subList(0, 3)));
+        String[] pick = menu.get(rnd.nextInt(3)).split("=");
+        double price = Double.parseDouble(pick[1]);
+        out.add("FUEL_SELECTED:" + pick[0]);
+        out.add("ATTACH_HOSE");
+        if (rnd.nextInt(40) == 0) {
+            out.add("ERROR:BAD_TANK");
+            return;
+        }
+        out.add("FUELING");
+        // FUELING_NUM every 200 ms at ~10 gpm: 1/30 gal per update
+        double target = 3.0 + rnd.nextDouble() * 15.0, g = 0.0;
+        while (g < target) {
+            g = Math.min(target, g + 1.0 / 30.0);
+            out.add(String.format(Locale.US, "FUELING_NUM:%.3f,%.2f", g, g * price));
+        }
+        out.add(String.format(Locale.US, "THANK_YOU_NUM:%.3f,%.2f", g, g * price));
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> m = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("--")) m.put(args[i].substring(2), args[i + 1]);
+        }
+        return m;
+    }
+}
@@ -7,6 +7,7 @@ import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
@@ -18,19 +19,18 @@ import javafx.stage.Stage;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 public class ScreenGUI extends Application {
     private DeviceManager dm;
     private DeviceLink screenCtrl;
-    private VBox fuelingRoot;
-    private Label fuelingTitle;
-    private javafx.scene.control.ProgressBar fuelingBar;
 
     private double SCENE_WIDTH;
     private double SCENE_HEIGHT;
 
     private List<Row> defaultSceneRows;
+    private final ScreenModel.Retained shown = new ScreenModel.Retained();
 
     @Override
     public void start(Stage stage) throws Exception {
@@ -38,21 +38,26 @@ public class ScreenGUI extends Application {
                 new DeviceManager.Entry("screen-ctrl", "127.0.0.1", 5021, "screen-ctrl", "screen")
         );
         dm = new DeviceManager(entries);
-        screenCtrl = dm.link("screen-ctrl");
 
         Rectangle2D b = javafx.stage.Screen.getPrimary().getVisualBounds();
-        SCENE_HEIGHT = b.getHeight() * 0.75;
-        SCENE_WIDTH  = SCENE_HEIGHT;
-
-        Font defaultFont = new Font("Verdana", SCENE_HEIGHT / 10.0);
-        Scene defaultScene = createDefaultScene(defaultFont);
+        Scene defaultScene = new Scene(createPane(dm.link("screen-ctrl"), b.getHeight() * 0.75));
 
         stage.setResizable(false);
         stage.setTitle("Screen");
         stage.setScene(defaultScene);
         stage.show();
+    }
+
+    /** Builds the square screen pane on {@code link}: the screen-ctrl port, or the shared StationConsole link. */
+    public Parent createPane(DeviceLink link, double height) throws java.io.IOException {
+        screenCtrl = link;
+        SCENE_HEIGHT = height;
+        SCENE_WIDTH  = SCENE_HEIGHT;
 
-        startPolling();
+        Font defaultFont = new Font("Verdana", SCENE_HEIGHT / 10.0);
+        Parent root = createDefaultRoot(defaultFont);
+        subscribe();
+        return root;
     }
 
     @Override
@@ -62,198 +67,27 @@ public class ScreenGUI extends Application {
         System.exit(0);
     }
 
-    private void resetAllButtons() {
-        for (Row r : defaultSceneRows) {
-            r.leftButton.setDisable(true);
-            r.rightButton.setDisable(true);
-            r.leftButton.setActive(false);
-            r.rightButton.setActive(false);
-            r.leftButton.setText("");
-            r.rightButton.setText("");
-            r.leftButton.setOnAction(null);
-            r.rightButton.setOnAction(null);
-            r.leftButton.setStyle(null);
-            r.rightButton.setStyle(null);
-            r.leftButton.setBorder(null);
-            r.rightButton.setBorder(null);
-        }
-    }
-
-    private void startPolling() {
-        Thread t = new Thread(() -> {
-            try {
-                while (true) {
-                    String reply = screenCtrl.request("SCREEN|GETSTATE|MAIN|None", Duration.ofMillis(500));
-                    int q1 = reply.indexOf('"');
-                    int q2 = reply.lastIndexOf('"');
-                    String payload = (q1 >= 0 && q2 > q1) ? reply.substring(q1 + 1, q2) : "";
-                    String state   = payload.startsWith("STATE:") ? payload.substring(6) : payload;
-                    Platform.runLater(() -> applyState(state));
-                    Thread.sleep(300);
-                }
-            } catch (Exception ignored) {}
-        }, "screen-poll");
-        t.setDaemon(true);
-        t.start();
-    }
-
-    private void ensureFuelingView() {
-        if (fuelingRoot != null) return;
-        fuelingTitle = new Label("Fueling…");
-        fuelingTitle.setStyle("-fx-font-size: 24px; -fx-font-weight: bold;");
-        fuelingBar = new javafx.scene.control.ProgressBar();
-        fuelingBar.setPrefWidth(260);
-        fuelingBar.setProgress(-1);
-        fuelingRoot = new VBox(12, fuelingTitle, fuelingBar);
-        fuelingRoot.setPadding(new Insets(16));
-    }
-
-    private void showFueling(Integer pct) {
-        ensureFuelingView();
-        if (pct == null) {
-            fuelingBar.setProgress(-1);
-            fuelingTitle.setText("Fueling…");
-        } else {
-            fuelingBar.setProgress(Math.max(0, Math.min(100, pct)) / 100.0);
-            fuelingTitle.setText("Fueling… " + pct + "%");
-        }
+    // The simulator pushes MAIN|PUSH|SCREEN|"STATE:..." on every change, the latest one per pulse is drawn
+    private void subscribe() throws java.io.IOException {
+        screenCtrl.subscribe("SCREEN", push -> {
+            int q1 = push.indexOf('"');
+            int q2 = push.lastIndexOf('"');
+            String payload = (q1 >= 0 && q2 > q1) ? push.substring(q1 + 1, q2) : "";
+            String state   = payload.startsWith("STATE:") ? payload.substring(6) : payload;
+            FxUpdates.post(this, () -> applyState(state));
+        });
     }
 
+    // Retained mode: only rows whose content differs from what is on screen are touched
     private void applyState(String state) {
-        for (Row r : defaultSceneRows) r.clear();
-
-        if (state.startsWith("ERROR:")) {
-            String reason = state.substring("ERROR:".length());
-            defaultSceneRows.get(0).showCombined("ERROR", 2, 0);
-            defaultSceneRows.get(1).showCombined(reason, 1, 0);
-            for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-            return;
-        }
-
-        if (state.startsWith("FUELING_NUM:")) {
-            String body = state.substring("FUELING_NUM:".length()).trim();
-            double gallons = 0.0, dollars = 0.0;
-            try {
-                String[] parts = body.split(",");
-                if (parts.length >= 1) gallons = Double.parseDouble(parts[0].trim());
-                if (parts.length >= 2) dollars = Double.parseDouble(parts[1].trim());
-            } catch (Exception ignored) {}
-            int topRow = Math.min(1, defaultSceneRows.size() - 1);
-            int botRow = Math.min(2, defaultSceneRows.size() - 1);
-            defaultSceneRows.get(topRow).showCombined(String.format(Locale.US, "Gallons: %.3f", gallons), 1, 0);
-            defaultSceneRows.get(botRow).showCombined(String.format(Locale.US, "Total: $%.2f", dollars), 1, 0);
-            for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-            return;
-        }
-
-        if (state.startsWith("THANK_YOU_NUM:")) {
-            String body = state.substring("THANK_YOU_NUM:".length()).trim();
-            double gallons = 0.0, dollars = 0.0;
-            try {
-                String[] parts = body.split(",");
-                if (parts.length >= 1) gallons = Double.parseDouble(parts[0].trim());
-                if (parts.length >= 2) dollars = Double.parseDouble(parts[1].trim());
-            } catch (Exception ignored) {}
-            int row0 = 0;
-            int row1 = Math.min(1, defaultSceneRows.size() - 1);
-            int row2 = Math.min(2, defaultSceneRows.size() - 1);
-            defaultSceneRows.get(row0).showCombined("Thank You!", 2, 0);
-            defaultSceneRows.get(row1).showCombined(String.format(Locale.US, "Gallons: %.3f", gallons), 1, 0);
-            defaultSceneRows.get(row2).showCombined(String.format(Locale.US, "Total: $%.2f", dollars), 1, 0);
-            for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-            return;
-        }
-
-        if (state.startsWith("GRADE_MENU:")) {
-            String csv = state.substring("GRADE_MENU:".length());
-            String[] items = csv.split(",");
-            for (int i = 0; i < items.length && i < defaultSceneRows.size(); i++) {
-                String[] kv = items[i].split("=");
-                if (kv.length == 2) {
-                    String fuel  = kv[0].trim();
-                    String price = kv[1].trim();
-                    String line  = fuel + " — $" + price;
-                    Row row = defaultSceneRows.get(i);
-                    row.showCombined(line, 1, 0);
-                    var btn = row.rightButton;
-                    btn.setDisable(false);
-                    btn.setActive(false);
-                    btn.setText("");
-                    btn.setStyle("-fx-background-color: #2e7d32; -fx-text-fill: white; -fx-font-weight: bold; -fx-background-radius: 8;");
-                    btn.setBorder(new Border(new BorderStroke(Color.BLACK, BorderStrokeStyle.SOLID, new CornerRadii(8), new BorderWidths(3))));
-                    btn.setOnMouseEntered(e -> btn.setBorder(new Border(new BorderStroke(Color.YELLOW, BorderStrokeStyle.SOLID, new CornerRadii(8), new BorderWidths(3)))));
-                    btn.setOnMouseExited(e -> btn.setBorder(new Border(new BorderStroke(Color.BLACK, BorderStrokeStyle.SOLID, new CornerRadii(8), new BorderWidths(3)))));
-                    btn.setOnAction(ev -> {
-                        try { screenCtrl.request("SCREEN|DEVCTL|MAIN|" + fuel, Duration.ofSeconds(1)); } catch (Exception ignore) {}
-                    });
-                }
-            }
-            int nextRow = Math.min(items.length, defaultSceneRows.size() - 1);
-            defaultSceneRows.get(nextRow).showCombined("Press the right-side button to select", 0, 0);
-            for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-            return;
-        }
-
-        resetAllButtons();
-
-        if (state.startsWith("FUEL_SELECTED:")) {
-            String fuel = state.substring("FUEL_SELECTED:".length()).trim();
-            int topRow = Math.min(1, defaultSceneRows.size() - 1);
-            int botRow = Math.min(2, defaultSceneRows.size() - 1);
-            defaultSceneRows.get(topRow).showCombined("Fuel selected: " + fuel, 1, 0);
-            defaultSceneRows.get(botRow).showCombined("Please attach hose to begin fueling", 1, 0);
-            for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-            return;
-        }
-
-        if (state.equals("FUEL_SELECTED")) {
-            int topRow = Math.min(1, defaultSceneRows.size() - 1);
-            int botRow = Math.min(2, defaultSceneRows.size() - 1);
-            defaultSceneRows.get(topRow).showCombined("Fuel selected", 1, 0);
-            defaultSceneRows.get(botRow).showCombined("Please attach hose to begin fueling", 1, 0);
-            for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-            return;
-        }
-
-        if (state.equals("FUELING")) { showFueling(null); return; }
-        if (state.startsWith("FUELING:")) {
-            try { showFueling(Integer.parseInt(state.substring("FUELING:".length()).trim())); }
-            catch (NumberFormatException ignored) { showFueling(null); }
-            return;
-        }
-
-        if (state.equals("THANK_YOU")) {
-            defaultSceneRows.get(0).showCombined("Thank You!", 2, 0);
-            for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-            return;
-        }
-
-        switch (state) {
-            case "WELCOME" -> {
-                defaultSceneRows.get(0).showCombined("Welcome!", 2, 0);
-                defaultSceneRows.get(1).showCombined("Please tap card.", 1, 0);
-                for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-                return;
-            }
-            case "AUTH_OK" -> {
-                defaultSceneRows.get(0).showCombined("Authorization Approved", 2, 0);
-                defaultSceneRows.get(1).showCombined("Select fuel type...", 1, 0);
-                for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-                return;
-            }
-            case "AUTH_NO" -> {
-                defaultSceneRows.get(0).showCombined("Declined...", 2, 0);
-                defaultSceneRows.get(1).showCombined("Please try again.", 1, 0);
-                for (Row r : defaultSceneRows) r.ensureCombinedLayout();
-                return;
-            }
-        }
+        shown.apply(state, (i, spec) -> defaultSceneRows.get(i).show(spec));
+    }
 
-        defaultSceneRows.get(0).showCombined(state, 1, 0);
-        for (Row r : defaultSceneRows) r.ensureCombinedLayout();
+    private void selectGrade(String fuel) {
+        try { screenCtrl.request("SCREEN|DEVCTL|MAIN|" + fuel, Duration.ofSeconds(1)); } catch (Exception ignore) {}
     }
 
-    private Scene createDefaultScene(Font defaultFont) {
+    private Parent createDefaultRoot(Font defaultFont) {
         VBox root = new VBox();
         root.setPrefSize(SCENE_WIDTH, SCENE_HEIGHT);
         root.setBackground(new Background(new BackgroundFill(Color.BLACK, CornerRadii.EMPTY, Insets.EMPTY)));
@@ -266,21 +100,27 @@ public class ScreenGUI extends Application {
                 DefaultButton b = new DefaultButton(btnNumber++, rowHeight, defaultFont);
                 buttons.add(b);
             }
-            Row row = new Row(rowHeight, SCENE_WIDTH, buttons);
+            Row row = new Row(rowHeight, SCENE_WIDTH, buttons, this::selectGrade);
             defaultSceneRows.add(row);
             root.getChildren().add(row);
         }
-        return new Scene(root);
+        return root;
     }
 
     static class Row extends HBox {
+        private static final String GRADE_STYLE =
+                "-fx-background-color: #2e7d32; -fx-text-fill: white; -fx-font-weight: bold; -fx-background-radius: 8;";
+        private static final Border GRADE_BORDER = new Border(new BorderStroke(Color.BLACK,
+                BorderStrokeStyle.SOLID, new CornerRadii(8), new BorderWidths(3)));
+        private static final Border GRADE_BORDER_HOVER = new Border(new BorderStroke(Color.YELLOW,
+                BorderStrokeStyle.SOLID, new CornerRadii(8), new BorderWidths(3)));
+
         private final DefaultButton leftButton;
         public final DefaultButton rightButton;
-        private final DefaultLabel leftLabel;
-        private final DefaultLabel rightLabel;
         private final DefaultLabel combinedLabel;
+        private String grade = null; // what the right button selects, null = off
 
-        public Row (double height, double width, List<DefaultButton> buttons) {
+        public Row (double height, double width, List<DefaultButton> buttons, Consumer<String> onSelect) {
             if (buttons.size() != 2) throw new RuntimeException("Row needs 2 buttons");
 
             setPrefSize(width, height);
@@ -291,28 +131,27 @@ public class ScreenGUI extends Application {
             this.rightButton = buttons.get(1);
 
             double labelWidth = width - (2 * height);
-            this.leftLabel     = new DefaultLabel(labelWidth/2, height, "left");
-            this.rightLabel    = new DefaultLabel(labelWidth/2, height, "right");
             this.combinedLabel = new DefaultLabel(labelWidth,   height, "combined");
 
-            getChildren().addAll(leftButton, combinedLabel, rightButton);
-        }
+            // Layout and handlers are fixed, show() only flips state
+            leftButton.setDisable(true);
+            rightButton.setDisable(true);
+            rightButton.setOnMouseEntered(e -> { if (grade != null) rightButton.setBorder(GRADE_BORDER_HOVER); });
+            rightButton.setOnMouseExited(e -> { if (grade != null) rightButton.setBorder(GRADE_BORDER); });
+            rightButton.setOnAction(e -> { if (grade != null) onSelect.accept(grade); });
 
-        public void clear() {
-            leftButton.setActive(false);
-            rightButton.setActive(false);
-            leftLabel.clear();
-            rightLabel.clear();
-            combinedLabel.clear();
-            ensureCombinedLayout();
-        }
-
-        public void showCombined(String msg, int sizeIndex, int fontIndex) {
-            combinedLabel.setLabelText(msg, sizeIndex, fontIndex);
+            getChildren().addAll(leftButton, combinedLabel, rightButton);
         }
 
-        public void ensureCombinedLayout() {
-            getChildren().setAll(leftButton, combinedLabel, rightButton);
+        public void show(ScreenModel.Row spec) {
+            combinedLabel.setLabelText(spec.text, spec.size, 0);
+            if (Objects.equals(grade, spec.grade)) return;
+            boolean wasOn = grade != null;
+            grade = spec.grade;
+            if (wasOn == (grade != null)) return;
+            rightButton.setDisable(grade == null);
+            rightButton.setStyle(grade == null ? null : GRADE_STYLE);
+            rightButton.setBorder(grade == null ? null : (rightButton.isHover() ? GRADE_BORDER_HOVER : GRADE_BORDER));
         }
     }
 
@@ -334,6 +173,7 @@ public class ScreenGUI extends Application {
     static class DefaultLabel extends Label {
         private final List<Integer> sizes = new ArrayList<>();
         private final List<String>  fontNames = new ArrayList<>();
+        private final Font[][] fonts = new Font[3][3]; // [fontIndex][sizeIndex], built on first use
 
         public DefaultLabel (double width, double height, String alignment) {
             setPrefSize(width, height);
@@ -355,13 +195,16 @@ public class ScreenGUI extends Application {
         }
 
         public void setLabelText(String msg, int sizeIndex, int fontIndex) {
-            setFont(new Font(fontNames.get(Math.max(0, Math.min(fontIndex, 2))),
-                    sizes.get(Math.max(0, Math.min(sizeIndex, 2)))));
-            setText(msg);
+            int si = Math.max(0, Math.min(sizeIndex, 2));
+            int fi = Math.max(0, Math.min(fontIndex, 2));
+            Font f = fonts[fi][si];
+            if (f == null) f = fonts[fi][si] = new Font(fontNames.get(fi), sizes.get(si));
+            if (getFont() != f) setFont(f);
+            if (!msg.equals(getText())) setText(msg);
         }
 
         public void clear() {
-            setText("");
+            if (!getText().isEmpty()) setText("");
         }
     }
 }
@@ -0,0 +1,158 @@
+package ui;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/* Screen Model
+* Pure mapping from a screen state string (WELCOME, GRADE_MENU:..., FUELING_NUM:1.250,4.36, ...)
+* to what the five rows show. No JavaFX here, ScreenGUI diffs two frames and only touches the
+* rows that differ, and the mapping can be exercised without a display.
+* */
+
+public final class ScreenModel {
+    public static final int ROWS = 5;
+
+    // Label size index, same meaning as ScreenGUI.DefaultLabel
+    public static final int SMALL = 0, NORMAL = 1, TITLE = 2;
+
+    /** One row: centred text, and the grade the right-side button selects (null = button off). */
+    public static final class Row {
+        public static final Row EMPTY = new Row("", NORMAL, null);
+
+        public final String text;
+        public final int size;
+        public final String grade;
+
+        public Row(String text, int size, String grade) {
+            this.text = text;
+            this.size = size;
+            this.grade = grade;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Row r)) return false;
+            return size == r.size && text.equals(r.text) && Objects.equals(grade, r.grade);
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(text, size, grade); }
+
+        @Override
+        public String toString() { return grade == null ? text : text + " [" + grade + "]"; }
+    }
+
+    /**
+     * The rows a screen shows right now. {@link #apply} renders a state and hands only the rows that
+     * differ to the sink: ScreenGUI's labels on a display, ScreenSnapshot's image headless.
+     */
+    public static final class Retained {
+        public interface Sink { void show(int row, Row spec); }
+
+        private final Row[] shown = new Row[ROWS];
+        private String state = null;
+
+        /** Returns how many rows changed, -1 when {@code state} is already shown. */
+        public int apply(String state, Sink sink) {
+            if (state.equals(this.state)) return -1;
+            this.state = state;
+            Row[] next = render(state);
+            int changed = 0;
+            for (int i = 0; i < ROWS; i++) {
+                if (!next[i].equals(shown[i])) {
+                    sink.show(i, next[i]);
+                    shown[i] = next[i];
+                    changed++;
+                }
+            }
+            return changed;
+        }
+
+        public Row row(int i) { return shown[i]; }
+    }
+
+    private ScreenModel() {}
+
+    public static Row[] render(String state) {
+        Row[] rows = new Row[ROWS];
+        Arrays.fill(rows, Row.EMPTY);
+
+        if (state.startsWith("ERROR:")) {
+            rows[0] = new Row("ERROR", TITLE, null);
+            rows[1] = new Row(state.substring("ERROR:".length()), NORMAL, null);
+            return rows;
+        }
+
+        if (state.startsWith("FUELING_NUM:")) {
+            double[] gd = gallonsDollars(state.substring("FUELING_NUM:".length()));
+            rows[1] = new Row(String.format(Locale.US, "Gallons: %.3f", gd[0]), NORMAL, null);
+            rows[2] = new Row(String.format(Locale.US, "Total: $%.2f", gd[1]), NORMAL, null);
+            return rows;
+        }
+
+        if (state.startsWith("THANK_YOU_NUM:")) {
+            double[] gd = gallonsDollars(state.substring("THANK_YOU_NUM:".length()));
+            rows[0] = new Row("Thank You!", TITLE, null);
+            rows[1] = new Row(String.format(Locale.US, "Gallons: %.3f", gd[0]), NORMAL, null);
+            rows[2] = new Row(String.format(Locale.US, "Total: $%.2f", gd[1]), NORMAL, null);
+            return rows;
+        }
+
+        if (state.startsWith("GRADE_MENU:")) {
+            String[] items = state.substring("GRADE_MENU:".length()).split(",");
+            for (int i = 0; i < items.length && i < ROWS; i++) {
+                String[] kv = items[i].split("=");
+                if (kv.length == 2) {
+                    String fuel = kv[0].trim();
+                    rows[i] = new Row(fuel + " — $" + kv[1].trim(), NORMAL, fuel);
+                }
+            }
+            rows[Math.min(items.length, ROWS - 1)] = new Row("Press the right-side button to select", SMALL, null);
+            return rows;
+        }
+
+        if (state.startsWith("FUEL_SELECTED:")) {
+            rows[1] = new Row("Fuel selected: " + state.substring("FUEL_SELECTED:".length()).trim(), NORMAL, null);
+            rows[2] = new Row("Please attach hose to begin fueling", NORMAL, null);
+            return rows;
+        }
+
+        switch (state) {
+            case "FUEL_SELECTED" -> {
+                rows[1] = new Row("Fuel selected", NORMAL, null);
+                rows[2] = new Row("Please attach hose to begin fueling", NORMAL, null);
+            }
+            case "THANK_YOU" -> rows[0] = new Row("Thank You!", TITLE, null);
+            case "WELCOME" -> {
+                rows[0] = new Row("Welcome!", TITLE, null);
+                rows[1] = new Row("Please tap card.", NORMAL, null);
+            }
+            case "AUTH_OK" -> {
+                rows[0] = new Row("Authorization Approved", TITLE, null);
+                rows[1] = new Row("Select fuel type...", NORMAL, null);
+            }
+            case "AUTH_NO" -> {
+                rows[0] = new Row("Declined...", TITLE, null);
+                rows[1] = new Row("Please try again.", NORMAL, null);
+            }
+            default -> {
+                // FUELING / FUELING:<pct> leave the rows blank while the hose runs
+                if (!state.equals("FUELING") && !state.startsWith("FUELING:")) rows[0] = new Row(state, NORMAL, null);
+            }
+        }
+        return rows;
+    }
+
+    // "1.250,4.36" -> {1.25, 4.36}, missing or bad parts stay 0
+    private static double[] gallonsDollars(String body) {
+        double[] gd = new double[2];
+        try {
+            String[] parts = body.trim().split(",");
+            if (parts.length >= 1) gd[0] = Double.parseDouble(parts[0].trim());
+            if (parts.length >= 2) gd[1] = Double.parseDouble(parts[1].trim());
+        } catch (Exception ignored) {}
+        return gd;
+    }
+}
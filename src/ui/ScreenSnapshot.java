@@ -0,0 +1,80 @@
+package ui;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/* Screen Snapshot
+* ScreenGUI's layout painted into an off-screen image with plain AWT (works with
+* -Djava.awt.headless=true, no JavaFX toolkit): five rows of button | label | button, black
+* background, white label with a gray border, the right button green when it selects a grade.
+* As a ScreenModel.Retained.Sink it repaints only the row bands that changed, like ScreenGUI.
+* */
+
+public final class ScreenSnapshot implements ScreenModel.Retained.Sink {
+    private static final Color GRADE_GREEN = new Color(0x2e, 0x7d, 0x32);
+
+    private final BufferedImage image;
+    private final int size, rowH;
+    private final Font[] fonts = new Font[3]; // SMALL / NORMAL / TITLE, same ratios as ScreenGUI.DefaultLabel
+
+    public ScreenSnapshot(int size) {
+        this.size = size;
+        this.rowH = size / ScreenModel.ROWS;
+        image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        fonts[ScreenModel.SMALL] = new Font("Verdana", Font.PLAIN, Math.max(1, rowH / 10));
+        fonts[ScreenModel.NORMAL] = new Font("Verdana", Font.PLAIN, Math.max(1, rowH / 5));
+        fonts[ScreenModel.TITLE] = new Font("Verdana", Font.PLAIN, Math.max(1, rowH / 2));
+        for (int i = 0; i < ScreenModel.ROWS; i++) show(i, ScreenModel.Row.EMPTY);
+    }
+
+    @Override
+    public void show(int row, ScreenModel.Row spec) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            int y = row * rowH, labelW = size - 2 * rowH;
+
+            g.setColor(Color.BLACK);
+            g.fillRect(0, y, size, rowH);
+
+            g.setColor(Color.WHITE);
+            g.fillRect(rowH, y, labelW, rowH);
+            g.setColor(Color.GRAY);
+            g.drawRect(rowH, y, labelW - 1, rowH - 1);
+
+            if (spec.grade != null) {
+                g.setColor(GRADE_GREEN);
+                g.fillRoundRect(rowH + labelW + 2, y + 2, rowH - 4, rowH - 4, 16, 16);
+                g.setColor(Color.BLACK);
+                g.setStroke(new BasicStroke(3));
+                g.drawRoundRect(rowH + labelW + 2, y + 2, rowH - 4, rowH - 4, 16, 16);
+            }
+
+            if (!spec.text.isEmpty()) {
+                g.setFont(fonts[Math.max(0, Math.min(spec.size, 2))]);
+                g.setColor(Color.BLACK);
+                FontMetrics fm = g.getFontMetrics();
+                int x = rowH + Math.max(0, (labelW - fm.stringWidth(spec.text)) / 2);
+                int base = y + (rowH - fm.getHeight()) / 2 + fm.getAscent();
+                g.setClip(rowH, y, labelW, rowH);
+                g.drawString(spec.text, x, base);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    public BufferedImage image() { return image; }
+
+    public void writePng(File file) throws IOException {
+        ImageIO.write(image, "png", file);
+    }
+}
@@ -0,0 +1,96 @@
+package ui;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Sprite Atlas (runtime side of AtlasPacker)
+* One PNG per device, decoded once on JavaFX's background loader straight to the size it is shown
+* at, then every frame is just a viewport into it: no per-frame decode, no ImageView scaling.
+*
+* Cached per (device, scale), so a second GUI in the same JVM asking for the same size shares it.
+* */
+
+
+/* USAGE
+* SpriteAtlas hose = SpriteAtlas.load("hose", 240.0 / 500.0);  // frames are 500 px, shown at 240
+* hose.show(imageView, "GN-C-3");                             // no setFitWidth on imageView
+* */
+
+
+public final class SpriteAtlas {
+    private static final String BASE = "/images/atlas/";
+    private static final Map<String, SpriteAtlas> CACHE = new ConcurrentHashMap<>();
+
+    private final Image image;
+    private final Map<String, Rectangle2D> viewports = new HashMap<>();
+
+    private SpriteAtlas(String device, double scale) {
+        URL png = SpriteAtlas.class.getResource(BASE + device + ".png");
+        URL index = SpriteAtlas.class.getResource(BASE + device + ".atlas");
+        if (png == null || index == null) throw new IllegalStateException("no atlas for " + device + " (run ui.AtlasPacker)");
+
+        int atlasW = 0, atlasH = 0;
+        Map<String, int[]> rects = new HashMap<>();
+        try (InputStream in = index.openStream();
+             BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                String[] f = line.trim().split("\\s+");
+                if (f[0].equals("atlas")) {
+                    atlasW = Integer.parseInt(f[2]);
+                    atlasH = Integer.parseInt(f[3]);
+                } else {
+                    rects.put(f[0], new int[]{ Integer.parseInt(f[1]), Integer.parseInt(f[2]),
+                            Integer.parseInt(f[3]), Integer.parseInt(f[4]) });
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Exact pixel size requested up front, so viewports are known before the decode finishes
+        int w = Math.max(1, (int) Math.round(atlasW * scale));
+        int h = Math.max(1, (int) Math.round(atlasH * scale));
+        double sx = (double) w / atlasW, sy = (double) h / atlasH;
+        image = new Image(png.toExternalForm(), w, h, false, true, /*backgroundLoading*/ true);
+        rects.forEach((name, q) -> viewports.put(name, new Rectangle2D(
+                Math.round(q[0] * sx), Math.round(q[1] * sy), Math.round(q[2] * sx), Math.round(q[3] * sy))));
+    }
+
+    /** Starts (or reuses) the background decode of {@code device}'s atlas at {@code scale} of its source size. */
+    public static SpriteAtlas load(String device, double scale) {
+        String key = device + "@" + String.format(Locale.ROOT, "%.4f", scale);
+        return CACHE.computeIfAbsent(key, k -> new SpriteAtlas(device, scale));
+    }
+
+    public boolean has(String name) { return viewports.containsKey(name); }
+
+    public Image image() { return image; }
+
+    public Rectangle2D viewport(String name) {
+        Rectangle2D v = viewports.get(name);
+        if (v == null) throw new IllegalArgumentException("no sprite " + name);
+        return v;
+    }
+
+    /** Points {@code view} at a frame; before the decode finishes the view just stays empty. */
+    public void show(ImageView view, String name) {
+        Rectangle2D v = viewport(name);
+        if (view.getImage() != image) view.setImage(image);
+        if (view.getViewport() != v) view.setViewport(v);
+    }
+}
@@ -0,0 +1,114 @@
+package ui;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+
+/* Sprite Canvas
+* A fixed-size Canvas that paints one SpriteAtlas frame, centred. Frame changes and looping
+* animations only mark a dirty rectangle, SpriteRenderer repaints that rectangle on the next
+* pulse. The node itself never changes, so an animating sprite costs no scene-graph or layout work.
+* */
+
+
+/* USAGE
+* SpriteCanvas c = new SpriteCanvas(SpriteAtlas.load("flowMeter", s), w, h);
+* c.show("FM-0-1");                          // still frame
+* c.animate(120, "FM-1-1", "FM-1-2");        // loop, advances on the FX pulse
+* */
+
+
+public final class SpriteCanvas extends Canvas {
+    private final SpriteAtlas atlas;
+
+    private String[] frames = new String[0];
+    private long periodNanos = 0L;     // 0 = still frame
+    private long startNanos = -1L;     // first pulse of the current animation
+    private String drawn = null;       // frame on the canvas now
+    private Rectangle2D drawnAt = null;
+
+    // Dirty region in canvas coordinates, empty when dirtyW <= 0
+    private double dirtyX, dirtyY, dirtyW, dirtyH;
+
+    public SpriteCanvas(SpriteAtlas atlas, double width, double height) {
+        super(width, height);
+        this.atlas = atlas;
+        SpriteRenderer.register(this);
+    }
+
+    /** Canvas sized to one frame of the atlas. */
+    public SpriteCanvas(SpriteAtlas atlas, String sizeFrom) {
+        this(atlas, atlas.viewport(sizeFrom).getWidth(), atlas.viewport(sizeFrom).getHeight());
+    }
+
+    /** Shows a still frame, stopping any animation. */
+    public void show(String frame) {
+        if (periodNanos == 0L && frames.length == 1 && frames[0].equals(frame)) return;
+        frames = new String[]{ frame };
+        periodNanos = 0L;
+        SpriteRenderer.wake();
+    }
+
+    /** Loops through {@code frames}, one every {@code periodMs}, timed by the FX pulse. */
+    public void animate(long periodMs, String... frames) {
+        if (frames.length == 0) throw new IllegalArgumentException("no frames");
+        if (periodNanos == periodMs * 1_000_000L && java.util.Arrays.equals(this.frames, frames)) return;
+        this.frames = frames.clone();
+        this.periodNanos = Math.max(1L, periodMs) * 1_000_000L;
+        this.startNanos = -1L;
+        SpriteRenderer.wake();
+    }
+
+    public boolean isAnimating() { return periodNanos != 0L && frames.length > 1; }
+
+    /** Stops drawing and leaves the shared renderer, for GUIs that throw the canvas away. */
+    public void dispose() { SpriteRenderer.unregister(this); }
+
+    // ---- Renderer side (FX thread) ---------------------------------------------
+    /** Returns true while this canvas still needs pulses. */
+    boolean renderPulse(long now) {
+        if (frames.length == 0) return false;
+        String want = frames[0];
+        if (isAnimating()) {
+            if (startNanos < 0) startNanos = now;
+            want = frames[(int) (((now - startNanos) / periodNanos) % frames.length)];
+        }
+
+        Image img = atlas.image();
+        if (img.isError()) return false;
+        if (img.getProgress() < 1.0) return true; // background decode still running, try next pulse
+
+        if (!want.equals(drawn)) {
+            Rectangle2D src = atlas.viewport(want);
+            Rectangle2D dst = new Rectangle2D((getWidth() - src.getWidth()) / 2, (getHeight() - src.getHeight()) / 2,
+                    src.getWidth(), src.getHeight());
+            markDirty(dst);
+            if (drawnAt != null) markDirty(drawnAt);
+            repaint(img, src, dst);
+            drawn = want;
+            drawnAt = dst;
+        }
+        return isAnimating();
+    }
+
+    private void markDirty(Rectangle2D r) {
+        if (dirtyW <= 0) {
+            dirtyX = r.getMinX(); dirtyY = r.getMinY(); dirtyW = r.getWidth(); dirtyH = r.getHeight();
+            return;
+        }
+        double x2 = Math.max(dirtyX + dirtyW, r.getMaxX()), y2 = Math.max(dirtyY + dirtyH, r.getMaxY());
+        dirtyX = Math.min(dirtyX, r.getMinX());
+        dirtyY = Math.min(dirtyY, r.getMinY());
+        dirtyW = x2 - dirtyX;
+        dirtyH = y2 - dirtyY;
+    }
+
+    private void repaint(Image img, Rectangle2D src, Rectangle2D dst) {
+        GraphicsContext g = getGraphicsContext2D();
+        g.clearRect(dirtyX, dirtyY, dirtyW, dirtyH);
+        g.drawImage(img, src.getMinX(), src.getMinY(), src.getWidth(), src.getHeight(),
+                dst.getMinX(), dst.getMinY(), dst.getWidth(), dst.getHeight());
+        dirtyW = 0;
+    }
+}
@@ -0,0 +1,50 @@
+package ui;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* Shared Sprite Renderer
+* One AnimationTimer for every SpriteCanvas in the JVM. Each pulse it advances the running
+* animations from the pulse timestamp and repaints only canvases with a dirty region.
+* The timer stops as soon as nothing is animating or dirty, and wake() restarts it.
+*
+* FX thread only.
+* */
+
+final class SpriteRenderer {
+    private static final List<SpriteCanvas> CANVASES = new ArrayList<>();
+    private static boolean running = false;
+
+    private static final AnimationTimer TIMER = new AnimationTimer() {
+        @Override public void handle(long now) { pulse(now); }
+    };
+
+    private SpriteRenderer() {}
+
+    static void register(SpriteCanvas c) {
+        if (!CANVASES.contains(c)) CANVASES.add(c);
+        wake();
+    }
+
+    static void unregister(SpriteCanvas c) { CANVASES.remove(c); }
+
+    // Something changed (new frame, animation started, atlas still decoding): render on the next pulse
+    static void wake() {
+        if (running) return;
+        running = true;
+        TIMER.start();
+    }
+
+    private static void pulse(long now) {
+        boolean busy = false;
+        for (int i = 0; i < CANVASES.size(); i++) {
+            busy |= CANVASES.get(i).renderPulse(now);
+        }
+        if (!busy) {
+            TIMER.stop();
+            running = false;
+        }
+    }
+}
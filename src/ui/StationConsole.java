@@ -0,0 +1,79 @@
+package ui;
+
+import io.bus.DeviceLink;
+import io.bus.DeviceManager;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Scene;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.Screen;
+import javafx.stage.Stage;
+
+import java.util.List;
+
+/* Station Console
+* Every device GUI as a pane of one window, in one JVM:
+*   one DeviceManager, one socket (sim mux port 5921), one reader thread,
+*   one FxUpdates dispatcher, one SpriteRenderer timer, one copy of each atlas.
+* The standalone GUIs still work unchanged, this only calls their createPane().
+* */
+
+
+/* USAGE
+* java -cp out sim.SimDevices
+* java -cp out Main
+* java -cp out:resources ui.StationConsole
+* */
+
+
+public class StationConsole extends Application {
+    private DeviceManager dm;
+
+    @Override
+    public void start(Stage stage) throws Exception {
+        Rectangle2D b = Screen.getPrimary().getVisualBounds();
+        double screenPx = b.getHeight() * 0.6;
+        double meterPx = b.getHeight() * 0.2;
+
+        // Atlases start decoding before the socket is up
+        SpriteAtlas.load("hose", 240.0 / 500.0);
+        SpriteAtlas.load("cardReader", 260.0 / 500.0);
+        SpriteAtlas.load("flowMeter", meterPx / 500.0);
+        SpriteAtlas.load("pump", 420.0 / 500.0);
+
+        dm = new DeviceManager(List.of(
+                new DeviceManager.Entry("mux", "127.0.0.1", 5921, "mux-01", "mux")
+        ));
+        DeviceLink mux = dm.link("mux");
+
+        GridPane devices = new GridPane();
+        devices.setHgap(8);
+        devices.setVgap(8);
+        devices.add(new CardReaderGUI().createPane(mux), 0, 0);
+        devices.add(new HoseGUI().createPane(mux), 1, 0);
+        devices.add(new FlowMeterGUI().createPane(mux, meterPx), 0, 1);
+        devices.add(new PumpGUI().createPane(mux), 1, 1);
+
+        HBox root = new HBox(8, new ScreenGUI().createPane(mux, screenPx), devices);
+        root.setPadding(new Insets(8));
+
+        stage.setTitle("Station Console");
+        stage.setScene(new Scene(root));
+        stage.sizeToScene();
+        stage.show();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (dm != null) dm.close();
+        Platform.exit();
+        System.exit(0);
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}